@@ -0,0 +1,45 @@
+package com.creclm.benchmark;
+
+import com.creclm.extension.loader.ServiceLoaderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *      ServiceLoaderFactory.getActivateProviders 命中缓存（每个请求构建过滤器链的开销）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActivateBenchmark {
+
+    private ServiceLoaderFactory<RouteService> loader;
+
+    private final String[] keys = {"token", "auth"};
+
+    @Setup
+    public void setup() {
+        loader = ServiceLoaderFactory.providersLoader(RouteService.class);
+        if (loader.getActivateProviders("consumer", keys).isEmpty()) {
+            throw new IllegalStateException("基准测试服务提供者加载失败");
+        }
+    }
+
+    @Benchmark
+    public List<RouteService> hit() {
+        return loader.getActivateProviders("consumer", keys);
+    }
+}
@@ -0,0 +1,63 @@
+package com.creclm.benchmark;
+
+import com.creclm.extension.adaptive.AdaptiveContext;
+import com.creclm.extension.loader.ServiceLoaderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *      自适应服务提供者：直接调用服务提供者 / 通过自适应服务提供者调用（默认别名、AdaptiveContext 给出别名）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdaptiveBenchmark {
+
+    private BenchService direct;
+
+    private BenchService adaptive;
+
+    private int value;
+
+    @Setup
+    public void setup() {
+        ServiceLoaderFactory<BenchService> loader = ServiceLoaderFactory.providersLoader(BenchService.class);
+        direct = loader.getProvider("bench");
+        adaptive = loader.getAdaptiveProvider();
+    }
+
+    @TearDown
+    public void tearDown() {
+        AdaptiveContext.clear();
+    }
+
+    @Benchmark
+    public int direct() {
+        return direct.call(value++);
+    }
+
+    @Benchmark
+    public int adaptiveDefault() {
+        return adaptive.call(value++);
+    }
+
+    @Benchmark
+    public int adaptiveContext() {
+        AdaptiveContext.set(BenchService.class, "bench");
+        return adaptive.call(value++);
+    }
+}
@@ -0,0 +1,14 @@
+package com.creclm.benchmark;
+
+import com.creclm.annotation.Adaptive;
+import com.creclm.annotation.SPI;
+
+/**
+ *      基准测试用的服务
+ */
+@SPI
+public interface BenchService {
+
+    @Adaptive("bench")
+    int call(int value);
+}
@@ -0,0 +1,83 @@
+package com.creclm.benchmark;
+
+import com.creclm.ALLBeanApplication;
+import com.creclm.extension.cache.BeanCacheFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *      ALLBeanApplication.run 端到端启动：生成 N 个Bean的依赖图（第i个Bean依赖第i/2个Bean）
+ *
+ *      Bean工厂是全局的，每次迭代生成新的包名和类名，保证Bean别名不重复
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BootstrapBenchmark {
+
+    private static final String OBJECT = "Ljava/lang/Object;";
+
+    @Param({"100", "1000", "10000"})
+    public int beans;
+
+    private int round;
+    private File root;
+    private URLClassLoader classLoader;
+    private Class<?> anchor;
+
+    @Setup(Level.Iteration)
+    public void generate() throws Exception {
+        round++;
+        root = Files.createTempDirectory("creclm-boot").toFile();
+        String prefix = "R" + round + "B";
+        String pkg = "com/creclm/benchmark/boot/b" + beans + "r" + round;
+        List<SyntheticClasses.FieldSpec> noFields = Collections.emptyList();
+        for (int i = 0; i < beans; i++) {
+            List<SyntheticClasses.FieldSpec> fields = i == 0 ? noFields : Collections.singletonList(
+                    new SyntheticClasses.FieldSpec("parent", OBJECT, "r" + round + "B" + (i / 2)));
+            String internalName = pkg + "/" + prefix + i;
+            SyntheticClasses.writeTo(root, internalName, SyntheticClasses.generate(internalName, true, fields, false));
+        }
+        String anchorName = pkg + "/Anchor";
+        SyntheticClasses.writeTo(root, anchorName, SyntheticClasses.generate(anchorName, false, noFields, false));
+        classLoader = new URLClassLoader(new URL[]{root.toURI().toURL()}, getClass().getClassLoader());
+        anchor = classLoader.loadClass(anchorName.replace('/', '.'));
+    }
+
+    @TearDown(Level.Iteration)
+    public void verify() throws IOException {
+        classLoader.close();
+        SyntheticClasses.delete(root);
+        if (BeanCacheFactory.getLoadedInstance("r" + round + "B" + (beans - 1)) == null) {
+            throw new IllegalStateException("Bean没有全部实例化");
+        }
+    }
+
+    @Benchmark
+    public void run() {
+        ALLBeanApplication.run(anchor, new String[0]);
+    }
+}
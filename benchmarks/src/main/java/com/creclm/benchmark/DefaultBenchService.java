@@ -0,0 +1,11 @@
+package com.creclm.benchmark;
+
+/**
+ *      基准测试用的服务提供者
+ */
+public class DefaultBenchService implements BenchService {
+
+    public int call(int value) {
+        return value + 1;
+    }
+}
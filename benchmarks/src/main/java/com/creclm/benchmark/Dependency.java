@@ -0,0 +1,7 @@
+package com.creclm.benchmark;
+
+/**
+ *      注入基准测试中被注入的依赖
+ */
+public class Dependency {
+}
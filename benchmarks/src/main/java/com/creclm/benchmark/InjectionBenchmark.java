@@ -0,0 +1,76 @@
+package com.creclm.benchmark;
+
+import com.creclm.extension.cache.BeanCacheFactory;
+import com.creclm.util.InjectionUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *      InjectionUtil.injection：N个setter / N个Autowired成员变量的Bean，
+ *      分别使用 MethodHandle赋值器和反射赋值器
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InjectionBenchmark {
+
+    private static final String DEPENDENCY = "Lcom/creclm/benchmark/Dependency;";
+
+    @Param({"1", "8", "32"})
+    public int properties;
+
+    @Param({"setter", "field"})
+    public String style;
+
+    @Param({"true", "false"})
+    public boolean generated;
+
+    private Class<?> beanClass;
+
+    @Setup
+    public void setup() throws Exception {
+        InjectionUtil.initInjection();
+        InjectionUtil.setGeneratedInjection(generated);
+        // 被注入的依赖 别名 benchDep0 .. benchDepN
+        for (int i = 0; i < properties; i++) {
+            if (BeanCacheFactory.getLoadedInstance("benchDep" + i) == null) {
+                BeanCacheFactory.addInstanceToCacheIfAbsent("benchDep" + i, new Dependency());
+            }
+        }
+        String internalName = "com/creclm/benchmark/gen/Injected" + style + properties;
+        byte[] bytes;
+        if ("setter".equals(style)) {
+            bytes = SyntheticClasses.generate(internalName, false,
+                    SyntheticClasses.fields(properties, DEPENDENCY, null, "benchDep"), true);
+        } else {
+            bytes = SyntheticClasses.generate(internalName, false,
+                    SyntheticClasses.fields(properties, DEPENDENCY, "benchDep", "benchDep"), false);
+        }
+        SyntheticClasses.MemoryClassLoader classLoader = new SyntheticClasses.MemoryClassLoader(getClass().getClassLoader());
+        classLoader.add(internalName, bytes);
+        beanClass = classLoader.loadClass(internalName.replace('/', '.'));
+        Object probe = InjectionUtil.injection(beanClass.newInstance());
+        if (beanClass.getField("benchDep0").get(probe) == null) {
+            throw new IllegalStateException("依赖注入失败");
+        }
+    }
+
+    @Benchmark
+    public Object inject() throws Exception {
+        return InjectionUtil.injection(beanClass.newInstance());
+    }
+}
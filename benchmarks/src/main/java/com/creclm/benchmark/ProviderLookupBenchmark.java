@@ -0,0 +1,59 @@
+package com.creclm.benchmark;
+
+import com.creclm.extension.loader.ServiceLoaderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *      ServiceLoaderFactory.getProvider 命中 / 未命中
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProviderLookupBenchmark {
+
+    private ServiceLoaderFactory<BenchService> loader;
+
+    @Setup
+    public void setup() {
+        loader = ServiceLoaderFactory.providersLoader(BenchService.class);
+        if (loader.getProvider("bench") == null) {
+            throw new IllegalStateException("基准测试服务提供者加载失败");
+        }
+    }
+
+    @Benchmark
+    public BenchService hit() {
+        return loader.getProvider("bench");
+    }
+
+    @Benchmark
+    public BenchService existHit() {
+        return loader.getExistProvider("bench");
+    }
+
+    /**
+     *      未命中：重新加载配置文件后仍然找不到时 getProvider 抛出异常
+     */
+    @Benchmark
+    public Object miss() {
+        try {
+            return loader.getProvider("missing");
+        } catch (IllegalStateException e) {
+            return e;
+        }
+    }
+}
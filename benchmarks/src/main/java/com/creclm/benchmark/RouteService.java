@@ -0,0 +1,45 @@
+package com.creclm.benchmark;
+
+import com.creclm.annotation.Activate;
+import com.creclm.annotation.Provider;
+import com.creclm.annotation.SPI;
+
+/**
+ *      选择策略和激活基准测试用的服务，服务提供者的权重不同
+ */
+@SPI
+public interface RouteService {
+
+    int route();
+
+    @Provider(weight = 100)
+    @Activate(group = "consumer")
+    class A implements RouteService {
+        public int route() {
+            return 0;
+        }
+    }
+
+    @Provider(weight = 200)
+    @Activate(group = "consumer", value = "token", order = -1)
+    class B implements RouteService {
+        public int route() {
+            return 1;
+        }
+    }
+
+    @Provider(weight = 300)
+    @Activate(group = "provider")
+    class C implements RouteService {
+        public int route() {
+            return 2;
+        }
+    }
+
+    @Provider(weight = 400)
+    class D implements RouteService {
+        public int route() {
+            return 3;
+        }
+    }
+}
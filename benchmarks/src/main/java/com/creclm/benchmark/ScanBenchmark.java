@@ -0,0 +1,98 @@
+package com.creclm.benchmark;
+
+import com.creclm.annotation.Bean;
+import com.creclm.util.PacketClassScanUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *      PacketClassScanUtil.scan：合成的目录 / jar（16个子包，10%的类标记Bean注解），
+ *      每次调用使用新的类加载器，避免命中已加载的Class对象
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+    private static final String PACKAGE = "com/creclm/benchmark/scan";
+
+    @Param({"directory", "jar"})
+    public String layout;
+
+    @Param({"1000", "10000"})
+    public int classes;
+
+    private File root;
+    private URL url;
+    private URLClassLoader classLoader;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        root = Files.createTempDirectory("creclm-scan").toFile();
+        Map<String, byte[]> generated = new LinkedHashMap<String, byte[]>();
+        List<SyntheticClasses.FieldSpec> noFields = Collections.emptyList();
+        for (int i = 0; i < classes; i++) {
+            String internalName = PACKAGE + "/p" + (i % 16) + "/C" + i;
+            generated.put(internalName, SyntheticClasses.generate(internalName, i % 10 == 0, noFields, false));
+        }
+        if ("jar".equals(layout)) {
+            File jar = new File(root, "scan.jar");
+            SyntheticClasses.writeJar(jar, generated);
+            url = jar.toURI().toURL();
+        } else {
+            for (Map.Entry<String, byte[]> entry : generated.entrySet()) {
+                SyntheticClasses.writeTo(root, entry.getKey(), entry.getValue());
+            }
+            url = root.toURI().toURL();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void newClassLoader() {
+        classLoader = new URLClassLoader(new URL[]{url}, getClass().getClassLoader());
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeClassLoader() throws IOException {
+        classLoader.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        SyntheticClasses.delete(root);
+    }
+
+    @Benchmark
+    public List<Class<?>> scan() {
+        List<Class<?>> result = new PacketClassScanUtil(Bean.class).scan(classLoader, PACKAGE.replace('/', '.'));
+        if (result.size() != (classes + 9) / 10) {
+            throw new IllegalStateException("扫描结果数量不正确：" + result.size());
+        }
+        return result;
+    }
+}
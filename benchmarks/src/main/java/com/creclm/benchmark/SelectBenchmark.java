@@ -0,0 +1,51 @@
+package com.creclm.benchmark;
+
+import com.creclm.extension.loader.ServiceLoaderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *      ServiceLoaderFactory.select：各个选择策略选择一次（leastactive 包含 release），4个线程同时选择
+ *      -prof gc 查看每次选择分配的内存（应该为0）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SelectBenchmark {
+
+    @Param({"roundrobin", "random", "leastactive", "consistenthash"})
+    public String strategy;
+
+    private ServiceLoaderFactory<RouteService> loader;
+
+    private final String key = "user-42";
+
+    @Setup
+    public void setup() {
+        loader = ServiceLoaderFactory.providersLoader(RouteService.class);
+        loader.release(loader.select(key, strategy));
+    }
+
+    @Benchmark
+    public RouteService select() {
+        RouteService provider = loader.select(key, strategy);
+        loader.release(provider);
+        return provider;
+    }
+}
@@ -0,0 +1,304 @@
+package com.creclm.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ *      基准测试用的合成class文件生成器
+ *
+ *      生成只包含 无参构造、成员变量（可选 Autowired注解）、setter 的类，
+ *      类上可选 Bean注解，用于构造任意规模的扫描目录 / jar 和 Bean依赖图
+ */
+final class SyntheticClasses {
+
+    static final String BEAN = "Lcom/creclm/annotation/Bean;";
+    static final String AUTOWIRED = "Lcom/creclm/annotation/Autowired;";
+
+    private SyntheticClasses() {
+    }
+
+    /**
+     *      成员变量定义
+     */
+    static final class FieldSpec {
+        final String name;
+        // 类型描述符 如 Lcom/aa/Bb;
+        final String descriptor;
+        // Autowired注解的value，null表示没有注解
+        final String autowired;
+
+        FieldSpec(String name, String descriptor, String autowired) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.autowired = autowired;
+        }
+    }
+
+    /**
+     * @param internalName 类的内部名 如 com/aa/Bb
+     * @param bean         是否标记Bean注解
+     * @param fields       成员变量
+     * @param setters      是否为每个成员变量生成public setter
+     */
+    static byte[] generate(String internalName, boolean bean, List<FieldSpec> fields, boolean setters) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(internalName);
+        int superClass = pool.classRef("java/lang/Object");
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int code = pool.utf8("Code");
+        int annotations = pool.utf8("RuntimeVisibleAnnotations");
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            out.writeShort(0x0021); // public super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(fields.size());
+            for (FieldSpec field : fields) {
+                out.writeShort(0x0001); // public
+                out.writeShort(pool.utf8(field.name));
+                out.writeShort(pool.utf8(field.descriptor));
+                if (field.autowired == null) {
+                    out.writeShort(0);
+                    continue;
+                }
+                out.writeShort(1);
+                out.writeShort(annotations);
+                if ("".equals(field.autowired)) {
+                    out.writeInt(6);
+                    out.writeShort(1);
+                    out.writeShort(pool.utf8(AUTOWIRED));
+                    out.writeShort(0);
+                } else {
+                    out.writeInt(11);
+                    out.writeShort(1);
+                    out.writeShort(pool.utf8(AUTOWIRED));
+                    out.writeShort(1);
+                    out.writeShort(pool.utf8("value"));
+                    out.writeByte('s');
+                    out.writeShort(pool.utf8(field.autowired));
+                }
+            }
+            out.writeShort(1 + (setters ? fields.size() : 0));
+            // public <init>() { super(); }
+            out.writeShort(0x0001);
+            out.writeShort(pool.utf8("<init>"));
+            out.writeShort(pool.utf8("()V"));
+            out.writeShort(1);
+            writeCode(out, code, 1, 1, new byte[]{0x2a, (byte) 0xb7, (byte) (objectInit >> 8), (byte) objectInit, (byte) 0xb1});
+            if (setters) {
+                for (FieldSpec field : fields) {
+                    // public void setXxx(T value) { this.xxx = value; }
+                    int fieldRef = pool.fieldRef(internalName, field.name, field.descriptor);
+                    out.writeShort(0x0001);
+                    out.writeShort(pool.utf8("set" + Character.toUpperCase(field.name.charAt(0)) + field.name.substring(1)));
+                    out.writeShort(pool.utf8("(" + field.descriptor + ")V"));
+                    out.writeShort(1);
+                    writeCode(out, code, 2, 2, new byte[]{0x2a, 0x2b, (byte) 0xb5,
+                            (byte) (fieldRef >> 8), (byte) fieldRef, (byte) 0xb1});
+                }
+            }
+            if (bean) {
+                out.writeShort(1);
+                out.writeShort(annotations);
+                out.writeInt(6);
+                out.writeShort(1);
+                out.writeShort(pool.utf8(BEAN));
+                out.writeShort(0);
+            } else {
+                out.writeShort(0);
+            }
+            out.flush();
+
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            DataOutputStream classFile = new DataOutputStream(result);
+            classFile.writeInt(0xCAFEBABE);
+            classFile.writeShort(0);
+            classFile.writeShort(52);
+            pool.write(classFile);
+            body.writeTo(classFile);
+            classFile.flush();
+            return result.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeCode(DataOutputStream out, int codeName, int maxStack, int maxLocals, byte[] code)
+            throws IOException {
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception_table
+        out.writeShort(0); // attributes
+    }
+
+    /**
+     *      写出到目录
+     */
+    static void writeTo(File root, String internalName, byte[] bytes) throws IOException {
+        File file = new File(root, internalName + ".class");
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     *      写出到jar（和打包工具一样写入目录条目，否则 ClassLoader.getResources 找不到包）
+     */
+    static void writeJar(File jar, Map<String, byte[]> classes) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            Set<String> directories = new HashSet<String>();
+            for (String internalName : classes.keySet()) {
+                int index = internalName.indexOf('/');
+                while (index > 0) {
+                    String directory = internalName.substring(0, index + 1);
+                    if (directories.add(directory)) {
+                        out.putNextEntry(new JarEntry(directory));
+                        out.closeEntry();
+                    }
+                    index = internalName.indexOf('/', index + 1);
+                }
+            }
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                out.putNextEntry(new JarEntry(entry.getKey() + ".class"));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     *      常量池
+     */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private int count = 1;
+
+        int utf8(String value) {
+            Integer index = indexes.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            indexes.put("U" + value, count);
+            return count++;
+        }
+
+        int classRef(String internalName) {
+            return entry("C" + internalName, 7, utf8(internalName), -1);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return entry("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return entry("F" + owner + "." + name + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        private int nameAndType(String name, String descriptor) {
+            return entry("N" + name + ":" + descriptor, 12, utf8(name), utf8(descriptor));
+        }
+
+        private int entry(String key, int tag, int first, int second) {
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second >= 0) {
+                    out.writeShort(second);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            indexes.put(key, count);
+            return count++;
+        }
+
+        void write(DataOutputStream classFile) throws IOException {
+            out.flush();
+            classFile.writeShort(count);
+            bytes.writeTo(classFile);
+        }
+    }
+
+    /**
+     *      直接从内存定义类的类加载器
+     */
+    static final class MemoryClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+
+        MemoryClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        void add(String internalName, byte[] bytes) {
+            classes.put(internalName.replace('/', '.'), bytes);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * @param autowiredPrefix Autowired注解value的前缀，null表示不标记注解
+     * @param namePrefix      成员变量名前缀
+     */
+    static List<FieldSpec> fields(int count, String descriptor, String autowiredPrefix, String namePrefix) {
+        List<FieldSpec> fields = new ArrayList<FieldSpec>();
+        for (int i = 0; i < count; i++) {
+            fields.add(new FieldSpec(namePrefix + i, descriptor, autowiredPrefix == null ? null : autowiredPrefix + i));
+        }
+        return fields;
+    }
+}
@@ -1,85 +1,393 @@
 package com.creclm;
 
 import com.creclm.annotation.Bean;
+import com.creclm.annotation.Provider;
+import com.creclm.annotation.SPI;
+import com.creclm.annotation.Scope;
 import com.creclm.extension.cache.BeanCacheFactory;
+import com.creclm.extension.cache.BeanContext;
+import com.creclm.extension.executor.ContainerExecutors;
+import com.creclm.extension.injection.InjectionPlan;
+import com.creclm.extension.injection.InjectionPoint;
+import com.creclm.extension.lifecycle.Lifecycle;
+import com.creclm.extension.monitor.Monitors;
+import com.creclm.extension.snapshot.BeanGroup;
+import com.creclm.extension.snapshot.ContainerSnapshot;
+import com.creclm.service.ContainerMonitor;
 import com.creclm.util.InjectionUtil;
 import com.creclm.util.PacketClassScanUtil;
+import com.sun.org.slf4j.internal.Logger;
+import com.sun.org.slf4j.internal.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  *      初始化Bean工厂
+ *
+ *      Bean的实例化和依赖注入按照依赖关系（Autowired成员变量和setter）分批进行：
+ *      同一批的Bean互不依赖，在执行器上并行实例化并注入；存在循环依赖的Bean最后统一处理
+ *
+ *      懒加载的Bean（Bean注解 lazy 或者全局懒加载模式）只缓存Class对象，第一次查询时才实例化；
+ *      非单例作用域（PROTOTYPE / THREAD / POOLED）的Bean也只缓存定义，查询时按作用域实例化
+ *
+ *      Bean注册到 BeanContext 中：可以在独立的 / 子上下文中启动，多个租户或者插件互不影响，关闭上下文释放所有Bean
+ *
+ *      包扫描和分批只解析出装配计划（BeanGroup），构建期可以通过 SnapshotGenerator 生成容器快照，
+ *      启动时存在快照就直接按快照装配，不再扫描类路径
+ *
+ *      Init注解的初始化方法在初始化执行器上并行执行（依赖的Bean先完成），BeanContext.ready 等待全部完成；
+ *      包扫描、配置文件、实例化和初始化使用的执行器见 ContainerExecutors（JDK 21+ 包扫描和配置文件默认使用虚拟线程）
  */
 public class ALLBeanApplication {
 
+    private static final Logger logger = LoggerFactory.getLogger(ALLBeanApplication.class);
+
+    // Bean实例化和依赖注入使用的执行器，见 ContainerExecutors
+    public static Executor getExecutor() {
+        return ContainerExecutors.getBeanExecutor();
+    }
+
+    /**
+     * 设置Bean实例化和依赖注入使用的执行器，传入 Runnable::run 则在调用线程上串行执行
+     */
+    public static void setExecutor(Executor executor) {
+        ContainerExecutors.setBeanExecutor(executor);
+    }
+
+    /**
+     * 开启/关闭全局懒加载模式（也可以通过 -Dcreclm.lazy=true 开启）
+     */
+    public static void setLazy(boolean lazy) {
+        BeanCacheFactory.setLazyMode(lazy);
+    }
+
     /**
-     * Dubbo启动入口
+     * Dubbo启动入口：Bean注册到当前线程绑定的上下文（没有绑定就是根上下文）
+     * Bean完成实例化和依赖注入就返回，初始化（Init注解的方法）通过返回上下文的 ready 等待
+     *
+     * @return Bean注册到的上下文
      */
-    public static void run(Class<?> clazz, String[] args) {
+    public static BeanContext run(Class<?> clazz, String[] args) {
+        BeanContext context = BeanCacheFactory.currentContext();
+        start(clazz, args);
+        return context;
+    }
+
+    /**
+     * 在新的Bean上下文中启动，Bean注册到新的上下文中，用完之后调用 close 释放
+     *
+     * @param parent 父上下文，null 表示和其他上下文互相隔离
+     * @return 新的上下文
+     */
+    public static BeanContext run(Class<?> clazz, String[] args, BeanContext parent) {
+        BeanContext context = new BeanContext(parent);
+        BeanContext previous = BeanCacheFactory.bindContext(context);
+        try {
+            start(clazz, args);
+        } finally {
+            BeanCacheFactory.bindContext(previous);
+        }
+        return context;
+    }
+
+    private static void start(Class<?> clazz, String[] args) {
         // 初始化依赖注入
         InjectionUtil.initInjection();
 
-        // 包扫描 以及Bean注入、依赖注入
+        // 存在容器快照就直接按快照装配，否则包扫描
+        List<BeanGroup> groups = ContainerSnapshot.getGroups(clazz);
+        if (groups == null) {
+            groups = resolve(clazz);
+        }
+        // Bean注入、依赖注入
+        for (BeanGroup group : groups) {
+            injectionBean(group);
+        }
+    }
+
+    /**
+     * 包扫描并解析Bean的装配计划（不实例化），先是本框架的包，再是启动类所在的包
+     *
+     * @param clazz 启动类
+     * @return
+     */
+    public static List<BeanGroup> resolve(Class<?> clazz) {
         ClassLoader ourLoader = ALLBeanApplication.class.getClassLoader();
         ClassLoader outerLoader = clazz.getClassLoader();
         String basePacket = ALLBeanApplication.class.getName();
         basePacket = basePacket.substring(0, basePacket.lastIndexOf("."));
-        List<Class<?>> ourClasses = new PacketClassScanUtil().scan(ourLoader, basePacket);
+        List<Class<?>> ourClasses = new PacketClassScanUtil(Bean.class, Provider.class, SPI.class).scan(ourLoader, basePacket);
         String outerBasePacket = clazz.getName().contains(".") ?
                 clazz.getName().substring(0, clazz.getName().lastIndexOf(".")) : "";
-        List<Class<?>> allClasses = new PacketClassScanUtil().scan(outerLoader, outerBasePacket);
+        List<Class<?>> allClasses = new PacketClassScanUtil(Bean.class, Provider.class, SPI.class).scan(outerLoader, outerBasePacket);
+        Set<Class<?>> ourClassSet = new HashSet<>(ourClasses);
         List<Class<?>> outerClasses = new ArrayList<>();
         for (Class<?> aClass : allClasses) {
-            if(!ourClasses.contains(aClass)){
+            if(!ourClassSet.contains(aClass)){
                 outerClasses.add(aClass);
             }
         }
-        injectionBean(outerLoader, ourClasses);
-        injectionBean(outerLoader, outerClasses);
+        List<BeanGroup> groups = new ArrayList<>();
+        groups.add(resolveGroup(ourClasses));
+        groups.add(resolveGroup(outerClasses));
+        return groups;
     }
 
-    private static void injectionBean(ClassLoader classLoader, List<Class<?>> classes) {
-        Map<String, Class<?>> beanClasses = new HashMap<>();
-        Map<String, Object> beans = new HashMap<>();
+    private static BeanGroup resolveGroup(List<Class<?>> classes) {
+        BeanGroup group = new BeanGroup();
+        Map<String, Class<?>> singletons = new LinkedHashMap<>();
         // 查询所有目录下的java文件，存在 .class
         for (Class<?> clazz : classes) {
+            if (clazz.isInterface() && clazz.isAnnotationPresent(SPI.class)) {
+                group.getServices().add(clazz);
+            }
             // 存在 Bean注解的类
             if (!clazz.isInterface() && !clazz.isEnum()
                     && clazz.isAnnotationPresent(Bean.class)) {
-                // 添加进入属性工厂 的Class对象中
                 String className = clazz.getName();
                 String simpleName = clazz.getName().contains(".") ?
                         clazz.getName().substring(clazz.getName().lastIndexOf(".") + 1) : className;
                 try {
                     // 普通的Bean就使用类名首字母小写来实现
                     simpleName = simpleName.substring(0, 1).toLowerCase() + simpleName.substring(1);
-                    if (BeanCacheFactory.getLoadedClass(simpleName) != null) {
+                    if (group.getBeans().containsKey(simpleName)) {
                         throw new IllegalStateException("存在同名Bean，配置出错了");
                     }
-                    BeanCacheFactory.addClassToCacheIfAbsent(simpleName, clazz);
-                    beanClasses.put(simpleName, clazz);
+                    group.getBeans().put(simpleName, clazz);
+                    if (clazz.getAnnotation(Bean.class).scope() == Scope.SINGLETON) {
+                        singletons.put(simpleName, clazz);
+                    }
                 } catch (Throwable e) {
                     e.printStackTrace();
                 }
             }
         }
-        // 将beans都实例化存入BeanUtil工厂
-        for (String simpleName : beanClasses.keySet()) {
+        // 按依赖关系分批：依赖的Bean先完成实例化和依赖注入（懒加载的单例也参与分批，启动时跳过）
+        group.getCyclic().addAll(sortBeans(singletons, group.getWaves()));
+        return group;
+    }
+
+    private static void injectionBean(BeanGroup group) {
+        Map<String, Class<?>> beanClasses = new HashMap<>();
+        for (Map.Entry<String, Class<?>> entry : group.getBeans().entrySet()) {
+            // 添加进入属性工厂 的Class对象中
+            String simpleName = entry.getKey();
+            Class<?> clazz = entry.getValue();
             try {
-                Object bean = beanClasses.get(simpleName).newInstance();
-                BeanCacheFactory.addInstanceToCacheIfAbsent(simpleName, bean);
-                beans.put(simpleName, bean);
+                if (BeanCacheFactory.getLoadedClass(simpleName) != null) {
+                    throw new IllegalStateException("存在同名Bean，配置出错了");
+                }
+                Bean bean = clazz.getAnnotation(Bean.class);
+                if (bean.scope() != Scope.SINGLETON) {
+                    // 非单例作用域的Bean只缓存定义，查询时按作用域实例化
+                    BeanCacheFactory.registerScopedBean(simpleName, clazz, bean.scope(), bean.poolSize());
+                    continue;
+                }
+                if (BeanCacheFactory.isLazyMode() || bean.lazy()) {
+                    // 懒加载Bean只缓存Class对象，第一次查询时实例化
+                    BeanCacheFactory.registerLazyBean(simpleName, clazz);
+                    continue;
+                }
+                BeanCacheFactory.addClassToCacheIfAbsent(simpleName, clazz);
+                beanClasses.put(simpleName, clazz);
             } catch (Throwable e) {
                 e.printStackTrace();
             }
         }
-        // 处理依赖注入问题  IOC注入
-        for (String simpleName : beans.keySet()) {
-            InjectionUtil.injection(beans.get(simpleName));
+        // 初始化（Init注解的方法）在依赖的Bean初始化完成后进行，不阻塞后面的实例化和依赖注入
+        Dependencies dependencies = new Dependencies(beanClasses);
+        Map<String, CompletableFuture<Object>> initializations = new ConcurrentHashMap<>();
+        for (List<String> wave : group.getWaves()) {
+            List<String> eager = eagerBeans(wave, beanClasses);
+            if (eager.isEmpty()) {
+                continue;
+            }
+            runAll(eager, simpleName -> {
+                Object bean = createBean(simpleName, beanClasses.get(simpleName));
+                if (bean != null) {
+                    // 处理依赖注入问题  IOC注入
+                    InjectionUtil.injection(bean);
+                    initialize(simpleName, bean, dependencies, initializations);
+                }
+            });
+        }
+        List<String> cyclic = eagerBeans(group.getCyclic(), beanClasses);
+        if (!cyclic.isEmpty()) {
+            // 循环依赖：先全部实例化存入BeanUtil工厂，再统一注入
+            logger.warn("存在循环依赖的Bean：" + cyclic);
+            Map<String, Object> beans = new ConcurrentHashMap<>();
+            runAll(cyclic, simpleName -> {
+                Object bean = createBean(simpleName, beanClasses.get(simpleName));
+                if (bean != null) {
+                    beans.put(simpleName, bean);
+                }
+            });
+            runAll(new ArrayList<>(beans.keySet()), simpleName -> InjectionUtil.injection(beans.get(simpleName)));
+            // 循环依赖的Bean互相不等待初始化
+            for (Map.Entry<String, Object> entry : beans.entrySet()) {
+                initialize(entry.getKey(), entry.getValue(), dependencies, initializations);
+            }
         }
+        BeanCacheFactory.currentContext().addInitialization(
+                CompletableFuture.allOf(initializations.values().toArray(new CompletableFuture<?>[0])));
     }
 
+    /**
+     * 依赖的Bean初始化完成后，在初始化执行器上初始化这个Bean
+     */
+    private static void initialize(String simpleName, Object bean, Dependencies dependencies,
+                                   Map<String, CompletableFuture<Object>> initializations) {
+        List<CompletableFuture<?>> after = new ArrayList<>();
+        for (String dependency : dependencies.of(simpleName, bean.getClass())) {
+            CompletableFuture<Object> initialization = initializations.get(dependency);
+            if (initialization != null) {
+                after.add(initialization);
+            }
+        }
+        CompletableFuture<Object> initialization = Lifecycle.initializeAsync(bean,
+                CompletableFuture.allOf(after.toArray(new CompletableFuture<?>[0])));
+        initialization.whenComplete((result, e) -> {
+            if (e != null) {
+                logger.error("Bean初始化失败：" + simpleName);
+                e.printStackTrace();
+            }
+        });
+        initializations.put(simpleName, initialization);
+    }
 
+    /**
+     * 一批Bean中需要立即实例化的Bean（跳过懒加载和注册失败的Bean）
+     */
+    private static List<String> eagerBeans(List<String> simpleNames, Map<String, Class<?>> beanClasses) {
+        List<String> eager = new ArrayList<>(simpleNames.size());
+        for (String simpleName : simpleNames) {
+            if (beanClasses.containsKey(simpleName)) {
+                eager.add(simpleName);
+            }
+        }
+        return eager;
+    }
+
+    /**
+     * 实例化Bean并存入BeanUtil工厂，失败返回null
+     */
+    private static Object createBean(String simpleName, Class<?> clazz) {
+        try {
+            long start = System.nanoTime();
+            Object bean = clazz.newInstance();
+            Monitors.get().phase(ContainerMonitor.INSTANTIATION, clazz.getName(), System.nanoTime() - start);
+            BeanCacheFactory.addInstanceToCacheIfAbsent(simpleName, bean);
+            return bean;
+        } catch (Throwable e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
+    /**
+     * 根据注入计划构建依赖图并拓扑排序（Kahn算法）
+     * @param beanClasses Bean别名 --> Class对象
+     * @param waves       输出：每一批互不依赖的Bean
+     * @return 存在循环依赖（无法排序）的Bean
+     */
+    private static List<String> sortBeans(Map<String, Class<?>> beanClasses, List<List<String>> waves) {
+        Dependencies dependencies = new Dependencies(beanClasses);
+        Map<String, Integer> inDegrees = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        for (Map.Entry<String, Class<?>> entry : beanClasses.entrySet()) {
+            String simpleName = entry.getKey();
+            Set<String> beanDependencies = dependencies.of(simpleName, entry.getValue());
+            inDegrees.put(simpleName, beanDependencies.size());
+            for (String dependency : beanDependencies) {
+                dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(simpleName);
+            }
+        }
+        List<String> wave = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : inDegrees.entrySet()) {
+            if (entry.getValue() == 0) {
+                wave.add(entry.getKey());
+            }
+        }
+        while (!wave.isEmpty()) {
+            waves.add(wave);
+            List<String> next = new ArrayList<>();
+            for (String simpleName : wave) {
+                inDegrees.remove(simpleName);
+                for (String dependent : dependents.getOrDefault(simpleName, Collections.emptyList())) {
+                    int inDegree = inDegrees.get(dependent) - 1;
+                    inDegrees.put(dependent, inDegree);
+                    if (inDegree == 0) {
+                        next.add(dependent);
+                    }
+                }
+            }
+            wave = next;
+        }
+        return new ArrayList<>(inDegrees.keySet());
+    }
 
+    /**
+     * 根据注入计划查询Bean依赖的其他Bean
+     */
+    private static final class Dependencies {
+
+        private final Map<String, Class<?>> beanClasses;
+        // 和Bean工厂一致：先按Class对象，再按父类/接口（只有唯一一个可以赋值的Bean时）查询
+        private final Map<Class<?>, String> classNames = new HashMap<>();
+        // 父类/接口  -->  唯一一个可以赋值的Bean，存在多个时为null（查询时抛出异常，不构成依赖）
+        private final Map<Class<?>, String> superTypeNames = new HashMap<>();
+
+        Dependencies(Map<String, Class<?>> beanClasses) {
+            this.beanClasses = beanClasses;
+            for (Map.Entry<String, Class<?>> entry : beanClasses.entrySet()) {
+                classNames.put(entry.getValue(), entry.getKey());
+                for (Class<?> superType : BeanCacheFactory.getSuperTypes(entry.getValue())) {
+                    // 第二个可以赋值的Bean：标记为存在多个
+                    superTypeNames.put(superType, superTypeNames.containsKey(superType) ? null : entry.getKey());
+                }
+            }
+        }
+
+        Set<String> of(String simpleName, Class<?> clazz) {
+            Set<String> dependencies = new HashSet<>();
+            for (InjectionPoint point : InjectionPlan.forClass(clazz).getPoints()) {
+                // 注入时先按别名查询，再按类型查询
+                String dependency = beanClasses.containsKey(point.getName()) ? point.getName()
+                        : classNames.containsKey(point.getType()) ? classNames.get(point.getType())
+                        : superTypeNames.get(point.getType());
+                if (dependency != null && !dependency.equals(simpleName)) {
+                    dependencies.add(dependency);
+                }
+            }
+            return dependencies;
+        }
+    }
+
+    /**
+     * 在执行器上并行处理一批Bean，等待全部完成
+     */
+    private static void runAll(List<String> simpleNames, Consumer<String> action) {
+        Executor current = ContainerExecutors.getBeanExecutor();
+        // 执行器线程绑定调用线程的Bean上下文
+        BeanContext context = BeanCacheFactory.currentContext();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[simpleNames.size()];
+        for (int i = 0; i < futures.length; i++) {
+            String simpleName = simpleNames.get(i);
+            futures[i] = CompletableFuture.runAsync(() -> {
+                BeanContext previous = BeanCacheFactory.bindContext(context);
+                try {
+                    action.accept(simpleName);
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                } finally {
+                    BeanCacheFactory.bindContext(previous);
+                }
+            }, current);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
 }
@@ -1,34 +1,143 @@
 package com.creclm.adapter;
 
 import com.creclm.annotation.Adapter;
+import com.creclm.extension.cache.BeanCacheFactory;
+import com.creclm.extension.cache.BeanContext;
+import com.creclm.extension.monitor.Monitors;
+import com.creclm.service.ContainerMonitor;
 import com.creclm.service.InjectionServiceFactory;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  *      依赖注入适配器的管理工厂
  *
+ *      按 (类型, 别名) 缓存是哪个具体实现查询到了依赖（或者都没有查询到），
+ *      重复注入时只需要一次Map查询；查询结果记录所在的Bean上下文，换了上下文
+ *      或者具体实现列表变化时缓存失效。
+ *
+ *      上下文有新的Bean注册（版本号变化）只影响 没有查询到 和 由后面的具体实现查询到 的结果
+ *      （前面的具体实现可能因为新注册的Bean而查询到）；第一个具体实现查询到的结果不受影响，
+ *      启动期间Bean不断注册时也能命中
  */
 @Adapter
 public class InjectionAdapter implements InjectionServiceFactory {
 
+    // 没有任何具体实现能查询到
+    private static final int NONE = -1;
+
     private List<InjectionServiceFactory> impls = new ArrayList<InjectionServiceFactory>();
 
+    // 查询缓存       类型  -->  别名  -->  查询结果
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, Resolution>> resolutions =
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<String, Resolution>>();
+
     public List<InjectionServiceFactory> getImpls() {
         return impls;
     }
 
     // 依次通过提供的 依赖注入具体实现来实现注入逻辑
     public <T> T getBeanInstance(Class<T> attributes, String name) {
+        T beanInstance = resolveCached(attributes, name);
+        Monitors.get().lookup(ContainerMonitor.BEAN_LOOKUP, name, beanInstance != null);
+        return beanInstance;
+    }
+
+    private <T> T resolveCached(Class<T> attributes, String name) {
+        if (attributes == null || name == null) {
+            return resolve(attributes, name);
+        }
+        ConcurrentMap<String, Resolution> names = resolutions.get(attributes);
+        if (names == null) {
+            resolutions.putIfAbsent(attributes, new ConcurrentHashMap<String, Resolution>());
+            names = resolutions.get(attributes);
+        }
+        BeanContext context = BeanCacheFactory.currentContext();
+        Resolution resolution = names.get(name);
+        if (resolution != null && resolution.context == context && resolution.delegates == impls.size()
+                && (resolution.index == 0 || resolution.version == context.getVersion())) {
+            if (resolution.index == NONE) {
+                return null;
+            }
+            T beanInstance = impls.get(resolution.index).getBeanInstance(attributes, name);
+            if (beanInstance != null) {
+                return beanInstance;
+            }
+        }
+        // 先读取版本号再查询，查询期间有新的Bean注册时，下次查询会重新查询
+        long version = context.getVersion();
+        T beanInstance;
+        for (int i = 0; i < impls.size(); i++) {
+            beanInstance = impls.get(i).getBeanInstance(attributes, name);
+            if (beanInstance != null) {
+                names.put(name, new Resolution(context, i, impls.size(), version));
+                return beanInstance;
+            }
+        }
+        // 没有 查询到注入的实例化对象
+        names.put(name, new Resolution(context, NONE, impls.size(), version));
+        return null;
+    }
+
+    /**
+     *      清空查询缓存
+     */
+    public void clearResolutions() {
+        resolutions.clear();
+    }
+
+    /**
+     *      清除某个Bean上下文的查询缓存（上下文关闭时调用，释放其中的Class对象引用）
+     */
+    public void evict(BeanContext context) {
+        Iterator<ConcurrentMap<String, Resolution>> iterator = resolutions.values().iterator();
+        while (iterator.hasNext()) {
+            ConcurrentMap<String, Resolution> names = iterator.next();
+            Iterator<Resolution> values = names.values().iterator();
+            while (values.hasNext()) {
+                if (values.next().context == context) {
+                    values.remove();
+                }
+            }
+            if (names.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // 不缓存的查询
+    private <T> T resolve(Class<T> attributes, String name) {
         T beanInstance;
         for (InjectionServiceFactory impl : impls) {
             beanInstance = impl.getBeanInstance(attributes, name);
-            if(beanInstance != null){
+            if (beanInstance != null) {
                 return beanInstance;
             }
         }
-        // 没有 查询到注入的实例化对象
         return null;
     }
+
+    /**
+     *      一次查询的结果：查询到依赖的具体实现下标（NONE 表示都没有查询到）
+     */
+    private static final class Resolution {
+        // 查询时的Bean上下文
+        private final BeanContext context;
+        private final int index;
+        // 查询时具体实现的数量
+        private final int delegates;
+        // 查询时Bean工厂的版本号
+        private final long version;
+
+        private Resolution(BeanContext context, int index, int delegates, long version) {
+            this.context = context;
+            this.index = index;
+            this.delegates = delegates;
+            this.version = version;
+        }
+    }
 }
@@ -0,0 +1,33 @@
+package com.creclm.adapter;
+
+import com.creclm.extension.cache.BeanCacheFactory;
+import com.creclm.service.InjectionServiceFactory;
+
+/**
+ *      懒加载的依赖注入服务提供者代理
+ *
+ *      适配器中先放入这个代理，第一次查询依赖时才通过Bean工厂实例化真正的服务提供者
+ */
+public class LazyInjectionFactory implements InjectionServiceFactory {
+
+    // 服务提供者在Bean工厂中的别名
+    private final String name;
+
+    private volatile InjectionServiceFactory target;
+
+    public LazyInjectionFactory(String name) {
+        this.name = name;
+    }
+
+    public <T> T getBeanInstance(Class<T> attributes, String name) {
+        InjectionServiceFactory factory = target;
+        if (factory == null) {
+            factory = (InjectionServiceFactory) BeanCacheFactory.getLoadedInstance(this.name);
+            if (factory == null) {
+                return null;
+            }
+            target = factory;
+        }
+        return factory.getBeanInstance(attributes, name);
+    }
+}
@@ -10,7 +10,6 @@ import com.creclm.service.InjectionServiceFactory;
 public class SpiInjectionFactory implements InjectionServiceFactory {
 
     public <T> T getBeanInstance(Class<T> attributes, String name) {
-        System.out.println("这是Spi提供的属性注入方法");
         // 这里实现通过Autowired实现注入
         return (T) BeanCacheFactory.getLoadedInstance(name, attributes);
     }
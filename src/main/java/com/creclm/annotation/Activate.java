@@ -0,0 +1,26 @@
+package com.creclm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Activate {
+    /**
+     *  激活的分组：ServiceLoaderFactory.getActivateProviders(group, keys...) 的 group 在其中时激活，
+     *  为空表示所有分组都激活
+     */
+    String[] group() default {};
+
+    /**
+     *  激活的key：keys 中存在其中任意一个时激活，为空表示不需要key
+     */
+    String[] value() default {};
+
+    /**
+     *  激活列表中的顺序，小的在前，相同时按别名排序
+     */
+    int order() default 0;
+}
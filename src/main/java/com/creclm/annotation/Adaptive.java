@@ -0,0 +1,32 @@
+package com.creclm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ *      自适应方法：ServiceLoaderFactory.getAdaptiveProvider 生成的自适应服务提供者，
+ *      每次调用这个方法时按 参数 --> 上下文（AdaptiveContext） --> 默认别名 的顺序确定服务提供者的别名，再调用它的同名方法
+ *
+ *      服务接口中没有标记这个注解的抽象方法，在自适应服务提供者上调用时抛出 UnsupportedOperationException
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Adaptive {
+
+    /**
+     *  默认的服务提供者别名：参数和上下文都没有给出别名时使用
+     */
+    String value() default "";
+
+    /**
+     *  给出别名的参数下标（参数必须是引用类型，取 toString，最好是String），-1表示不从参数中获取
+     */
+    int index() default -1;
+
+    /**
+     *  AdaptiveContext 中的key，默认是服务的全类名
+     */
+    String key() default "";
+}
@@ -22,4 +22,23 @@ public @interface Bean {
      */
     String value() default "";
 
+    /**
+     *      懒加载：启动时只缓存Class对象，第一次查询实例（依赖注入或者 BeanCacheFactory.getLoadedInstance）时
+     *      才实例化并依赖注入；全局懒加载模式见 BeanCacheFactory.setLazyMode
+     * @return
+     */
+    boolean lazy() default false;
+
+    /**
+     *      作用域：默认单例；非单例的Bean启动时只缓存Class对象，查询时按作用域实例化（lazy 对它们没有意义）
+     * @return
+     */
+    Scope scope() default Scope.SINGLETON;
+
+    /**
+     *      POOLED 作用域的对象池大小
+     * @return
+     */
+    int poolSize() default 8;
+
 }
@@ -0,0 +1,18 @@
+package com.creclm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ *          装饰类注解
+ *
+ *      标记的服务提供者（如指标、重试、过滤）必须存在一个参数是服务接口的public构造函数，不注册别名，
+ *      叠加在同一个服务的每个服务提供者外面，叠加顺序见 Order；
+ *      只有 getProvider / select / 自适应服务提供者得到装饰后的对象，依赖注入查询到的是原始的服务提供者
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Decorator {
+}
@@ -0,0 +1,18 @@
+package com.creclm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Init {
+    /**
+     *      初始化方法：Bean / 服务提供者实例化并依赖注入之后调用，方法没有参数，返回 void 或者 CompletionStage
+     *
+     *      返回 CompletionStage 表示异步初始化（如建立连接、预热缓存），阶段完成才算初始化完成；
+     *      启动时的Bean在初始化执行器上并行初始化，依赖的Bean先完成初始化，BeanContext.ready 等待全部完成；
+     *      ServiceLoaderFactory.getProvider 等待初始化完成后返回，getProviderAsync 不阻塞调用线程
+     */
+}
@@ -0,0 +1,17 @@
+package com.creclm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Order {
+    /**
+     *  顺序，小的在前：
+     *      装饰类（Decorator 注解）按这个顺序叠加，小的在外层，调用时先执行
+     *      没有标记这个注解的顺序为0，顺序相同时按全类名排序
+     */
+    int value() default 0;
+}
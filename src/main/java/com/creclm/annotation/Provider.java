@@ -17,4 +17,16 @@ public @interface Provider {
      *      （存在同名依赖Bean则报错）
      */
     String value() default "";
+
+    /**
+     *  懒加载：依赖注入服务（InjectionServiceFactory）的提供者在加载依赖注入工厂时不实例化，
+     *  第一次通过它查询依赖时再实例化；其他服务的提供者本来就在第一次 getProvider 时才实例化
+     */
+    boolean lazy() default false;
+
+    /**
+     *  权重：ServiceLoaderFactory.select 选择服务提供者时使用（轮询、随机按权重分配，一致性hash按权重分配虚拟节点），
+     *  小于等于0表示不参与选择
+     */
+    int weight() default 100;
 }
@@ -0,0 +1,28 @@
+package com.creclm.annotation;
+
+/**
+ *      Bean的作用域
+ */
+public enum Scope {
+
+    /**
+     *      单例：启动时（或者懒加载时第一次查询时）实例化一次
+     */
+    SINGLETON,
+
+    /**
+     *      原型：每次查询（包括每次依赖注入）都实例化并依赖注入一个新的对象
+     */
+    PROTOTYPE,
+
+    /**
+     *      线程：每个线程一个对象，同一线程多次查询返回同一个对象，线程之间没有竞争
+     */
+    THREAD,
+
+    /**
+     *      对象池：最多 poolSize 个对象，通过 BeanCacheFactory.borrowBean / returnBean 借用和归还，
+     *      getLoadedInstance 查询不到（返回null）
+     */
+    POOLED
+}
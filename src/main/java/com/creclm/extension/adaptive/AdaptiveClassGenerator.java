@@ -0,0 +1,391 @@
+package com.creclm.extension.adaptive;
+
+import com.creclm.annotation.Adaptive;
+import com.creclm.extension.loader.ServiceLoaderFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *      生成服务接口的自适应服务提供者（直接生成字节码，不使用 java.lang.reflect.Proxy）
+ *
+ *      生成的类实现服务接口，每个方法一个 AdaptiveDispatcher 成员变量，方法体只有：
+ *          return ((服务接口) this.mN.select(参数或null)).方法(参数...);
+ *      没有分支，不需要 StackMapTable；每个服务一个类加载器，定义在服务接口所在的类加载器之下
+ */
+public final class AdaptiveClassGenerator {
+
+    private static final String DISPATCHER = AdaptiveDispatcher.class.getName().replace('.', '/');
+    private static final String DISPATCHER_DESCRIPTOR = "L" + DISPATCHER + ";";
+    private static final String SELECT_DESCRIPTOR = "(Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private AdaptiveClassGenerator() {
+    }
+
+    /**
+     *      生成并实例化服务接口的自适应服务提供者
+     * @param service 标记了SPI注解的public接口
+     * @param factory 服务的加载工厂，自适应服务提供者从这里获取服务提供者
+     * @return
+     */
+    public static <T> T generate(Class<T> service, ServiceLoaderFactory<T> factory) {
+        if (!Modifier.isPublic(service.getModifiers())) {
+            throw new IllegalStateException("自适应服务提供者只支持public的服务接口：" + service.getName());
+        }
+        List<Method> methods = adaptiveMethods(service);
+        AdaptiveDispatcher[] dispatchers = new AdaptiveDispatcher[methods.size()];
+        for (int i = 0; i < dispatchers.length; i++) {
+            dispatchers[i] = new AdaptiveDispatcher(factory, service, methods.get(i));
+        }
+        String className = service.getName() + "$Adaptive";
+        try {
+            byte[] bytes = generateClass(className.replace('.', '/'), service, methods);
+            Class<?> clazz = new AdaptiveClassLoader(service.getClassLoader()).define(className, bytes);
+            return service.cast(clazz.getConstructor(AdaptiveDispatcher[].class).newInstance((Object) dispatchers));
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("生成服务 " + service.getName() + " 的自适应服务提供者失败", e);
+        }
+    }
+
+    /**
+     *      需要实现的方法：抽象方法（重复的签名只保留一个）和标记了 Adaptive 注解的默认方法
+     */
+    private static List<Method> adaptiveMethods(Class<?> service) {
+        Map<String, Method> methods = new LinkedHashMap<String, Method>();
+        for (Method method : service.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            boolean adaptive = method.isAnnotationPresent(Adaptive.class);
+            if (!Modifier.isAbstract(method.getModifiers()) && !adaptive) {
+                continue;
+            }
+            if (adaptive) {
+                int index = method.getAnnotation(Adaptive.class).index();
+                Class<?>[] parameters = method.getParameterTypes();
+                if (index >= parameters.length || (index >= 0 && parameters[index].isPrimitive())) {
+                    throw new IllegalStateException("Adaptive 注解的 index 必须是引用类型参数的下标：" + method);
+                }
+            }
+            String signature = method.getName() + methodDescriptor(method);
+            Method previous = methods.get(signature);
+            if (previous == null || (!previous.isAnnotationPresent(Adaptive.class) && adaptive)) {
+                methods.put(signature, method);
+            }
+        }
+        return new ArrayList<Method>(methods.values());
+    }
+
+    private static byte[] generateClass(String className, Class<?> service, List<Method> methods) throws IOException {
+        ConstantPool pool = new ConstantPool();
+        String serviceName = service.getName().replace('.', '/');
+        int thisClass = pool.classRef(className);
+        int superClass = pool.classRef("java/lang/Object");
+        int serviceClass = pool.classRef(serviceName);
+        int code = pool.utf8("Code");
+        int dispatcherDescriptor = pool.utf8(DISPATCHER_DESCRIPTOR);
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V", false);
+        int select = pool.methodRef(DISPATCHER, "select", SELECT_DESCRIPTOR, false);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        // 成员变量：private final AdaptiveDispatcher mN;
+        int[] fields = new int[methods.size()];
+        out.writeShort(methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            out.writeShort(Modifier.PRIVATE | Modifier.FINAL);
+            out.writeShort(pool.utf8("m" + i));
+            out.writeShort(dispatcherDescriptor);
+            out.writeShort(0);
+            fields[i] = pool.fieldRef(className, "m" + i, DISPATCHER_DESCRIPTOR);
+        }
+
+        out.writeShort(methods.size() + 1);
+        // 构造函数：public <init>(AdaptiveDispatcher[] dispatchers)
+        Bytecode init = new Bytecode();
+        init.op(0x2a).op(0xb7).u2(objectInit);
+        for (int i = 0; i < methods.size(); i++) {
+            // aload_0, aload_1, 下标, aaload, putfield
+            init.op(0x2a).op(0x2b).pushInt(i).op(0x32).op(0xb5).u2(fields[i]);
+        }
+        init.op(0xb1);
+        writeMethod(out, pool, "<init>", "([" + DISPATCHER_DESCRIPTOR + ")V", code, init, 3, 2);
+
+        for (int i = 0; i < methods.size(); i++) {
+            Method method = methods.get(i);
+            Class<?>[] parameters = method.getParameterTypes();
+            int[] slots = new int[parameters.length];
+            int slot = 1;
+            for (int p = 0; p < parameters.length; p++) {
+                slots[p] = slot;
+                slot += parameters[p] == long.class || parameters[p] == double.class ? 2 : 1;
+            }
+            if (slot > 255) {
+                throw new IllegalStateException("自适应方法的参数过多：" + method);
+            }
+            int index = method.isAnnotationPresent(Adaptive.class) ? method.getAnnotation(Adaptive.class).index() : -1;
+            String descriptor = methodDescriptor(method);
+            Bytecode bytecode = new Bytecode();
+            // this.mN.select(参数或null)
+            bytecode.op(0x2a).op(0xb4).u2(fields[i]);
+            if (index >= 0) {
+                bytecode.op(0x19).u1(slots[index]);
+            } else {
+                bytecode.op(0x01);
+            }
+            bytecode.op(0xb6).u2(select);
+            // ((服务接口) provider).方法(参数...)
+            bytecode.op(0xc0).u2(serviceClass);
+            for (int p = 0; p < parameters.length; p++) {
+                bytecode.op(loadOpcode(parameters[p])).u1(slots[p]);
+            }
+            bytecode.op(0xb9).u2(pool.methodRef(serviceName, method.getName(), descriptor, true)).u1(slot).u1(0);
+            bytecode.op(returnOpcode(method.getReturnType()));
+            writeMethod(out, pool, method.getName(), descriptor, code, bytecode, Math.max(2, slot), slot);
+        }
+        // 类的属性
+        out.writeShort(0);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream file = new DataOutputStream(bytes);
+        file.writeInt(0xCAFEBABE);
+        file.writeShort(0);
+        // Java 8
+        file.writeShort(52);
+        pool.writeTo(file);
+        // ACC_PUBLIC | ACC_FINAL | ACC_SUPER
+        file.writeShort(0x0001 | 0x0010 | 0x0020);
+        file.writeShort(thisClass);
+        file.writeShort(superClass);
+        file.writeShort(1);
+        file.writeShort(serviceClass);
+        file.write(body.toByteArray());
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, ConstantPool pool, String name, String descriptor,
+                                    int code, Bytecode bytecode, int maxStack, int maxLocals) throws IOException {
+        out.writeShort(Modifier.PUBLIC);
+        out.writeShort(pool.utf8(name));
+        out.writeShort(pool.utf8(descriptor));
+        out.writeShort(1);
+        byte[] instructions = bytecode.toByteArray();
+        out.writeShort(code);
+        out.writeInt(12 + instructions.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(instructions.length);
+        out.write(instructions);
+        // 异常表和属性
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private static int loadOpcode(Class<?> type) {
+        if (type == long.class) {
+            return 0x16;
+        } else if (type == float.class) {
+            return 0x17;
+        } else if (type == double.class) {
+            return 0x18;
+        } else if (type.isPrimitive()) {
+            return 0x15;
+        }
+        return 0x19;
+    }
+
+    private static int returnOpcode(Class<?> type) {
+        if (type == void.class) {
+            return 0xb1;
+        } else if (type == long.class) {
+            return 0xad;
+        } else if (type == float.class) {
+            return 0xae;
+        } else if (type == double.class) {
+            return 0xaf;
+        } else if (type.isPrimitive()) {
+            return 0xac;
+        }
+        return 0xb0;
+    }
+
+    private static String methodDescriptor(Method method) {
+        StringBuilder builder = new StringBuilder("(");
+        for (Class<?> parameter : method.getParameterTypes()) {
+            builder.append(descriptor(parameter));
+        }
+        return builder.append(')').append(descriptor(method.getReturnType())).toString();
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isArray()) {
+            return type.getName().replace('.', '/');
+        } else if (!type.isPrimitive()) {
+            return "L" + type.getName().replace('.', '/') + ";";
+        } else if (type == void.class) {
+            return "V";
+        } else if (type == boolean.class) {
+            return "Z";
+        } else if (type == byte.class) {
+            return "B";
+        } else if (type == char.class) {
+            return "C";
+        } else if (type == short.class) {
+            return "S";
+        } else if (type == int.class) {
+            return "I";
+        } else if (type == long.class) {
+            return "J";
+        } else if (type == float.class) {
+            return "F";
+        }
+        return "D";
+    }
+
+    /**
+     *      常量池（相同的常量只添加一次）
+     */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<String, Integer>();
+        private int count = 1;
+
+        int utf8(String value) throws IOException {
+            Integer index = entries.get("U" + value);
+            if (index == null) {
+                out.writeByte(1);
+                out.writeUTF(value);
+                index = add("U" + value);
+            }
+            return index;
+        }
+
+        int classRef(String internalName) throws IOException {
+            Integer index = entries.get("C" + internalName);
+            if (index == null) {
+                int name = utf8(internalName);
+                out.writeByte(7);
+                out.writeShort(name);
+                index = add("C" + internalName);
+            }
+            return index;
+        }
+
+        int fieldRef(String owner, String name, String descriptor) throws IOException {
+            return memberRef(9, owner, name, descriptor);
+        }
+
+        int methodRef(String owner, String name, String descriptor, boolean isInterface) throws IOException {
+            return memberRef(isInterface ? 11 : 10, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) throws IOException {
+            String key = tag + owner + "." + name + descriptor;
+            Integer index = entries.get(key);
+            if (index == null) {
+                int ownerIndex = classRef(owner);
+                int nameAndType = nameAndType(name, descriptor);
+                out.writeByte(tag);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+                index = add(key);
+            }
+            return index;
+        }
+
+        private int nameAndType(String name, String descriptor) throws IOException {
+            String key = "N" + name + ":" + descriptor;
+            Integer index = entries.get(key);
+            if (index == null) {
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+                index = add(key);
+            }
+            return index;
+        }
+
+        private int add(String key) {
+            int index = count++;
+            entries.put(key, index);
+            return index;
+        }
+
+        void writeTo(DataOutputStream file) throws IOException {
+            file.writeShort(count);
+            file.write(bytes.toByteArray());
+        }
+    }
+
+    /**
+     *      方法体的字节码
+     */
+    private static final class Bytecode {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Bytecode op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Bytecode u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Bytecode u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        Bytecode pushInt(int value) {
+            if (value <= 5) {
+                // iconst_N
+                return op(0x03 + value);
+            } else if (value <= Byte.MAX_VALUE) {
+                return op(0x10).u1(value);
+            }
+            return op(0x11).u2(value);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     *      每个服务一个，只定义生成的类；分发类直接返回框架中的类（服务接口的类加载器不一定能看到框架）
+     */
+    private static final class AdaptiveClassLoader extends ClassLoader {
+
+        private AdaptiveClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (AdaptiveDispatcher.class.getName().equals(name)) {
+                return AdaptiveDispatcher.class;
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.creclm.extension.adaptive;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *      自适应服务提供者的线程上下文：key（默认是服务的全类名，见 Adaptive 注解） --> 服务提供者别名
+ *
+ *      在一次请求的入口设置，请求结束后 remove / clear
+ */
+public final class AdaptiveContext {
+
+    private static final ThreadLocal<Map<String, String>> NAMES = new ThreadLocal<Map<String, String>>() {
+        @Override
+        protected Map<String, String> initialValue() {
+            return new HashMap<String, String>();
+        }
+    };
+
+    private AdaptiveContext() {
+    }
+
+    public static void set(String key, String name) {
+        NAMES.get().put(key, name);
+    }
+
+    public static void set(Class<?> service, String name) {
+        set(service.getName(), name);
+    }
+
+    public static String get(String key) {
+        return NAMES.get().get(key);
+    }
+
+    public static void remove(String key) {
+        NAMES.get().remove(key);
+    }
+
+    public static void remove(Class<?> service) {
+        remove(service.getName());
+    }
+
+    public static void clear() {
+        NAMES.remove();
+    }
+}
@@ -0,0 +1,76 @@
+package com.creclm.extension.adaptive;
+
+import com.creclm.annotation.Adaptive;
+import com.creclm.extension.loader.ServiceLoaderFactory;
+import com.creclm.extension.support.Holder;
+
+import java.lang.reflect.Method;
+
+/**
+ *      自适应服务提供者一个方法的分发：确定服务提供者的别名并返回服务提供者
+ *
+ *      生成的类每个方法持有一个分发对象，调用时只有一次 select；最近一次的别名和它的包装对象缓存在这里，
+ *      同一个别名再次调用时不查询加载工厂，热加载替换的是包装对象中的实例，不用清理缓存
+ */
+public final class AdaptiveDispatcher {
+
+    private final ServiceLoaderFactory<?> factory;
+    private final String method;
+    // 是否标记了 Adaptive 注解
+    private final boolean adaptive;
+    private final String key;
+    private final String defaultName;
+
+    // 最近一次使用的别名和包装对象
+    private volatile Cached cached;
+
+    AdaptiveDispatcher(ServiceLoaderFactory<?> factory, Class<?> service, Method method) {
+        Adaptive annotation = method.getAnnotation(Adaptive.class);
+        this.factory = factory;
+        this.method = service.getName() + "." + method.getName();
+        this.adaptive = annotation != null;
+        this.key = annotation == null || "".equals(annotation.key()) ? service.getName() : annotation.key();
+        this.defaultName = annotation == null || "".equals(annotation.value()) ? null : annotation.value();
+    }
+
+    /**
+     *      选择服务提供者
+     * @param argument Adaptive 注解的 index 对应的参数，没有配置时为null
+     * @return
+     */
+    public Object select(Object argument) {
+        if (!adaptive) {
+            throw new UnsupportedOperationException(method + " 没有标记 Adaptive 注解，不能在自适应服务提供者上调用");
+        }
+        String name = argument != null ? argument.toString() : AdaptiveContext.get(key);
+        if (name == null) {
+            name = defaultName;
+            if (name == null) {
+                throw new IllegalStateException(method + " 的参数和上下文都没有给出服务提供者别名，也没有默认别名");
+            }
+        }
+        Cached current = cached;
+        if (current != null && current.name.equals(name)) {
+            Object provider = current.holder.get();
+            if (provider != null) {
+                return provider;
+            }
+        }
+        Object provider = factory.getProvider(name);
+        if (provider == null) {
+            throw new IllegalStateException(method + " 没有别名为 " + name + " 的服务提供者");
+        }
+        cached = new Cached(name, factory.getProviderHolder(name));
+        return provider;
+    }
+
+    private static final class Cached {
+        private final String name;
+        private final Holder<Object> holder;
+
+        private Cached(String name, Holder<Object> holder) {
+            this.name = name;
+            this.holder = holder;
+        }
+    }
+}
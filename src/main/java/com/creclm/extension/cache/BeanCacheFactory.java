@@ -1,87 +1,104 @@
 package com.creclm.extension.cache;
 
 
+import com.creclm.annotation.Scope;
 import com.creclm.extension.support.Holder;
 
-import java.security.AlgorithmParameterGenerator;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * 功能：
- * 1、静态管理所有SPI服务工厂实例化对象 Bean的 的全局缓存
+ * 1、静态管理所有SPI服务工厂实例化对象 Bean的 的缓存
  * 2、以及所有的实例化对象Bean的缓存
  * 3、对外提供查询接口
+ * 4、懒加载Bean只缓存Class对象，第一次查询实例时再实例化并依赖注入
+ * 5、非单例作用域的Bean按作用域实例化，POOLED 作用域通过 borrowBean / returnBean 借用和归还
  * <p>
- * PS: 待实现属性依赖注入功能 ！！！
+ * 缓存保存在 BeanContext 中，这里的静态方法操作当前线程绑定的上下文，没有绑定就操作根上下文
  */
 public class BeanCacheFactory {
 
-    // 全局加载到的Class对象缓存           服务别名#服务提供者别名  -->  包装的Class对象
-    private static Map<String, Class<?>> globalCachedNames = new ConcurrentHashMap<String, Class<?>>();
-    // 全局加载到的Class对象缓存           Class对象  -->  服务别名#服务提供者别名
-    private static Map<Class<?>, String> globalCachedClasses = new ConcurrentHashMap<Class<?>, String>();
+    // 根上下文：没有绑定上下文的线程都使用它
+    private static final BeanContext ROOT = new BeanContext();
+
+    // 当前线程绑定的上下文
+    private static final ThreadLocal<BeanContext> CURRENT = new ThreadLocal<BeanContext>();
+
+    // 全局懒加载模式：所有Bean和依赖注入服务提供者都懒加载
+    private static volatile boolean lazyMode = Boolean.parseBoolean(System.getProperty("creclm.lazy", "false"));
+
+    public static BeanContext getRootContext() {
+        return ROOT;
+    }
+
+    // 当前线程绑定的上下文，没有绑定返回根上下文
+    public static BeanContext currentContext() {
+        BeanContext context = CURRENT.get();
+        return context == null ? ROOT : context;
+    }
+
+    /**
+     *      把上下文绑定到当前线程，返回之前绑定的上下文（没有绑定返回null），用完之后再绑定回去
+     * @param context null 表示解除绑定
+     * @return
+     */
+    public static BeanContext bindContext(BeanContext context) {
+        BeanContext previous = CURRENT.get();
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+        return previous;
+    }
 
-    // 全局Bean实例化对象缓存              服务别名#服务提供者别名  --> 实例化对象
-    private static Map<String, Object> globalCachedNameInstance = new ConcurrentHashMap<String, Object>();
-    // 全局Bean实例化对象缓存              Class对象    -->     实例化对象
-    // 注意： 这里一个Class对象只会存在最后一个实例化对象，要查询所有的实例化对象还是用别名查最好
-    // 因为ServiceLoaderFactory会覆盖
-    private static Map<Class<?>, Object> globalCachedClassInstance = new ConcurrentHashMap<Class<?>, Object>();
+    // 获取当前的注册版本号
+    public static long getVersion() {
+        return currentContext().getVersion();
+    }
 
-    // 缓存依赖注入适配器的 Class包装对象
-    private static volatile Holder<Class<?>> cacheInjectionAdapterClass = new Holder<Class<?>>();
+    public static boolean isLazyMode() {
+        return lazyMode;
+    }
 
-    // 缓存依赖注入适配器的实例包装对象
-    private static volatile Holder<Object> cacheInjectionAdapterInstance = new Holder<Object>();
+    public static void setLazyMode(boolean lazy) {
+        lazyMode = lazy;
+    }
 
     // 获取依赖注入适配器的 Class包装对象
     public static Holder<Class<?>> getCacheInjectionAdapterClass() {
-        return cacheInjectionAdapterClass;
+        return currentContext().getCacheInjectionAdapterClass();
     }
 
     // 获取依赖注入适配器的 实例包装对象
     public static Holder<Object> getCacheInjectionAdapterInstance() {
-        return cacheInjectionAdapterInstance;
+        return currentContext().getCacheInjectionAdapterInstance();
     }
 
     /**
-     *      不存在就将加载的类Class对象缓存到Bean工厂的全局静态缓存
+     *      不存在就将加载的类Class对象缓存到Bean工厂
      * @param name
      * @param clazz
      */
     public static void addClassToCacheIfAbsent(String name, Class<?> clazz) {
-        if(!globalCachedNames.containsKey(name) && !globalCachedNames.containsValue(clazz)){
-            globalCachedNames.put(name, clazz);
-            globalCachedClasses.put(clazz, name);
-        }
+        currentContext().addClassToCacheIfAbsent(name, clazz);
     }
 
     /**
-     *      globalCachedNameInstance: 将加载的类实例对象缓存到 Bean工厂的全局静态缓存
-     *      globalCachedClassInstance: 缓存之前没有加载过实例对象的Class对象和 实例对象
+     *      不存在就将加载的类实例对象缓存到 Bean工厂
      * @param name
      * @param bean
      */
     public static void addInstanceToCacheIfAbsent(String name, Object bean) {
-        if(!globalCachedNameInstance.containsKey(name) && !globalCachedNameInstance.containsValue(bean)){
-            globalCachedNameInstance.put(name, bean);
-        }
-        if(!globalCachedClassInstance.containsKey(bean.getClass())){
-            globalCachedClassInstance.put(bean.getClass(), bean);
-        }
+        currentContext().addInstanceToCacheIfAbsent(name, bean);
     }
 
+    // 查询实例化对象注册的别名，没有注册过返回null
+    public static String getInstanceName(Object bean) {
+        return currentContext().getInstanceName(bean);
+    }
 
     // 对外提供通过别名name以及Class对象查询 Bean Class对象是否存在缓存的接口 (不是实例化)
     public static Class<?> getLoadedClass(String name, Class<?> clazz) {
-        if (name != null && globalCachedNames.containsKey(name)) {
-            return globalCachedNames.get(name);
-        } else if (clazz != null && globalCachedClasses.containsKey(clazz)) {
-            return clazz;
-        } else {
-            return null;
-        }
+        return currentContext().getLoadedClass(name, clazz);
     }
 
     public static Class<?> getLoadedClass(Class<?> clazz) {
@@ -92,19 +109,58 @@ public class BeanCacheFactory {
         return getLoadedClass(name, null);
     }
 
+    /**
+     *      注册懒加载Bean：只缓存Class对象，第一次通过 getLoadedInstance 查询时才实例化并依赖注入
+     * @param name
+     * @param clazz
+     */
+    public static void registerLazyBean(String name, Class<?> clazz) {
+        currentContext().registerLazyBean(name, clazz);
+    }
+
+    /**
+     *      注册非单例作用域的Bean：只缓存Class对象，查询时按作用域实例化并依赖注入
+     * @param name
+     * @param clazz
+     * @param scope    PROTOTYPE / THREAD / POOLED
+     * @param poolSize POOLED 作用域的对象池大小
+     */
+    public static void registerScopedBean(String name, Class<?> clazz, Scope scope, int poolSize) {
+        currentContext().registerScopedBean(name, clazz, scope, poolSize);
+    }
+
+    // Bean的作用域，没有注册过返回null
+    public static Scope getScope(String name) {
+        return currentContext().getScope(name);
+    }
+
+    // POOLED 作用域Bean的对象池，不是 POOLED 作用域返回null
+    public static BeanPool getBeanPool(String name) {
+        return currentContext().getBeanPool(name);
+    }
+
+    // 从 POOLED 作用域Bean的对象池借用一个对象，对象池耗尽时等待其他线程归还
+    public static Object borrowBean(String name) throws InterruptedException {
+        return currentContext().borrowBean(name);
+    }
+
+    // 归还借用的对象
+    public static void returnBean(String name, Object bean) {
+        currentContext().returnBean(name, bean);
+    }
+
+    // 是否是还没有实例化的懒加载Bean
+    public static boolean isLazyBean(String name) {
+        return currentContext().isLazyBean(name);
+    }
+
     // 对外提供通过别名name查询Bean实例化对象
-    // 通过clazz查询，只能查询到最新的Class对象的实例化对象，最好使用name查询
+    // 通过clazz查询，先查这个Class对象的第一个实例化对象，再查第一个可以赋值给clazz（父类/接口）的实例化对象，最好使用name查询
     public static Object getLoadedInstance(String name, Class<?> clazz) {
-        if (name != null && globalCachedNameInstance.containsKey(name)) {
-            return globalCachedNameInstance.get(name);
-        } else if (clazz != null && globalCachedClassInstance.containsKey(clazz)) {
-            return globalCachedClassInstance.get(clazz);
-        } else {
-            return null;
-        }
+        return currentContext().getLoadedInstance(name, clazz);
     }
 
-    // 获取一个最新的Bean对象（通过clazz）,多次加载不同的这个对象会导致只返回最新的（覆盖问题）
+    // 获取一个Bean对象（通过clazz）,多次加载不同的这个对象只返回第一个
     public static Object getLoadedInstance(Class<?> clazz) {
         return getLoadedInstance(null, clazz);
     }
@@ -113,5 +169,12 @@ public class BeanCacheFactory {
         return getLoadedInstance(name, null);
     }
 
+    /**
+     *      所有的父类和接口（不包括自己和Object）
+     * @param clazz
+     * @return
+     */
+    public static Class<?>[] getSuperTypes(Class<?> clazz) {
+        return BeanContext.superTypes(clazz).clone();
+    }
 }
-
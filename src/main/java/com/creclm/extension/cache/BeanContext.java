@@ -0,0 +1,733 @@
+package com.creclm.extension.cache;
+
+
+import com.creclm.adapter.InjectionAdapter;
+import com.creclm.annotation.Scope;
+import com.creclm.extension.injection.InjectionPlan;
+import com.creclm.extension.lifecycle.Lifecycle;
+import com.creclm.extension.monitor.Monitors;
+import com.creclm.service.ContainerMonitor;
+import com.creclm.extension.support.Holder;
+import com.creclm.util.InjectionUtil;
+import com.sun.org.slf4j.internal.Logger;
+import com.sun.org.slf4j.internal.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bean上下文（容器）：
+ * 1、缓存SPI服务工厂实例化对象、Class对象、Bean实例化对象、懒加载Bean
+ * 2、可以有父上下文：查询时先查自己再查父上下文，注册只注册到自己
+ * 3、非单例作用域（PROTOTYPE / THREAD / POOLED）的Bean按作用域实例化
+ * 4、close 之后释放所有的实例化对象和Class对象引用，子上下文一起关闭
+ * <p>
+ * 一个JVM中可以同时存在多个互相隔离的上下文（parent 为null），BeanCacheFactory 的静态方法操作当前线程绑定的上下文
+ */
+public class BeanContext implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BeanContext.class);
+
+    // 当前线程正在创建的懒加载Bean的数量（依赖注入中查询其他懒加载Bean）
+    private static final ThreadLocal<int[]> CREATING_LAZY = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    // 每个Class对象的所有父类和接口（不包括自己和Object），只计算一次
+    private static final ClassValue<Class<?>[]> SUPER_TYPES = new ClassValue<Class<?>[]>() {
+        @Override
+        protected Class<?>[] computeValue(Class<?> type) {
+            Set<Class<?>> superTypes = new LinkedHashSet<Class<?>>();
+            collectSuperTypes(type, superTypes);
+            superTypes.remove(type);
+            superTypes.remove(Object.class);
+            return superTypes.toArray(new Class<?>[0]);
+        }
+    };
+
+    private final BeanContext parent;
+
+    // 子上下文，关闭时一起关闭
+    private final List<BeanContext> children = new CopyOnWriteArrayList<BeanContext>();
+
+    private volatile boolean closed;
+
+    // 加载到的Class对象缓存           服务别名#服务提供者别名  -->  包装的Class对象
+    private final ConcurrentMap<String, Class<?>> cachedNames = new ConcurrentHashMap<String, Class<?>>();
+    // 加载到的Class对象缓存           Class对象  -->  服务别名#服务提供者别名
+    private final ConcurrentMap<Class<?>, String> cachedClasses = new ConcurrentHashMap<Class<?>, String>();
+
+    // Bean实例化对象缓存              服务别名#服务提供者别名  --> 实例化对象
+    private final ConcurrentMap<String, Object> cachedNameInstance = new ConcurrentHashMap<String, Object>();
+    // Bean实例化对象缓存              实例化对象（按对象地址比较）  -->  服务别名#服务提供者别名
+    private final ConcurrentMap<InstanceKey, String> cachedInstanceNames = new ConcurrentHashMap<InstanceKey, String>();
+    // Bean实例化对象缓存              Class对象    -->     实例化对象
+    // 注意： 这里一个Class对象只会存在第一个实例化对象，要查询所有的实例化对象还是用别名查最好
+    private final ConcurrentMap<Class<?>, Object> cachedClassInstance = new ConcurrentHashMap<Class<?>, Object>();
+    // Bean实例化对象缓存              父类/接口    -->     所有可以赋值给它的实例化对象（按对象地址去重，数组不会修改）
+    // 只有一个时才能通过父类/接口查询到，多个时需要按别名查询，和注册顺序无关
+    private final ConcurrentMap<Class<?>, Object[]> cachedSuperTypeInstance = new ConcurrentHashMap<Class<?>, Object[]>();
+
+    // 懒加载Bean                        别名  -->  Class对象（第一次查询实例时实例化）
+    private final ConcurrentMap<String, Class<?>> lazyNames = new ConcurrentHashMap<String, Class<?>>();
+    // 懒加载Bean                        Class对象  -->  别名
+    private final ConcurrentMap<Class<?>, String> lazyClasses = new ConcurrentHashMap<Class<?>, String>();
+    // 非单例作用域Bean                 别名  -->  作用域Bean定义
+    private final ConcurrentMap<String, ScopedBean> scopedNames = new ConcurrentHashMap<String, ScopedBean>();
+    // 非单例作用域Bean                 Class对象  -->  作用域Bean定义
+    private final ConcurrentMap<Class<?>, ScopedBean> scopedClasses = new ConcurrentHashMap<Class<?>, ScopedBean>();
+    // 正在创建（实例化、依赖注入、初始化）的懒加载Bean，完成后放入缓存；只在持有 lazyLock 时访问
+    private final Map<String, LazyCreation> lazyCreations = new HashMap<String, LazyCreation>();
+    // 只保护 lazyCreations 的发布，实例化、依赖注入和初始化都不持有
+    private final Object lazyLock = new Object();
+
+    // 注册版本号：每次有新的Class对象 / 实例化对象 / 懒加载Bean注册进来都加一，依赖查询的缓存以此判断是否过期
+    private final AtomicLong version = new AtomicLong();
+
+    // 启动时Bean的初始化（Init注解的方法），全部完成后完成
+    private volatile CompletableFuture<Void> ready = CompletableFuture.completedFuture(null);
+
+    // 缓存依赖注入适配器的 Class包装对象
+    private final Holder<Class<?>> cacheInjectionAdapterClass = new Holder<Class<?>>();
+
+    // 缓存依赖注入适配器的实例包装对象
+    private final Holder<Object> cacheInjectionAdapterInstance = new Holder<Object>();
+
+    public BeanContext() {
+        this(null);
+    }
+
+    /**
+     * @param parent 父上下文，null 表示独立的上下文
+     */
+    public BeanContext(BeanContext parent) {
+        this.parent = parent;
+        if (parent != null) {
+            parent.checkOpen();
+            parent.children.add(this);
+        }
+    }
+
+    public BeanContext getParent() {
+        return parent;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     *      注册版本号，包含父上下文的注册（两者都单调递增，和也单调递增）
+     */
+    public long getVersion() {
+        return parent == null ? version.get() : version.get() + parent.getVersion();
+    }
+
+    /**
+     *      启动时Bean的初始化全部完成后完成，存在初始化失败的Bean则异常完成
+     */
+    public CompletableFuture<Void> ready() {
+        return ready;
+    }
+
+    /**
+     *      把一批Bean的初始化加入就绪阶段
+     * @param initialization
+     */
+    public synchronized void addInitialization(CompletableFuture<?> initialization) {
+        ready = CompletableFuture.allOf(ready, initialization);
+    }
+
+    // 获取依赖注入适配器的 Class包装对象（只属于这个上下文）
+    public Holder<Class<?>> getCacheInjectionAdapterClass() {
+        return cacheInjectionAdapterClass;
+    }
+
+    // 获取依赖注入适配器的 实例包装对象（只属于这个上下文）
+    public Holder<Object> getCacheInjectionAdapterInstance() {
+        return cacheInjectionAdapterInstance;
+    }
+
+    /**
+     *      依赖注入适配器：自己没有就使用父上下文的
+     */
+    public Object getInjectionAdapter() {
+        for (BeanContext context = this; context != null; context = context.parent) {
+            Object adapter = context.cacheInjectionAdapterInstance.get();
+            if (adapter != null) {
+                return adapter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     *      不存在就将加载的类Class对象缓存到这个上下文
+     * @param name
+     * @param clazz
+     */
+    public void addClassToCacheIfAbsent(String name, Class<?> clazz) {
+        checkOpen();
+        // 先占住Class对象，再占住别名，别名已经被占用就退回，两个步骤都是原子的
+        if (cachedClasses.putIfAbsent(clazz, name) == null) {
+            if (cachedNames.putIfAbsent(name, clazz) == null) {
+                version.incrementAndGet();
+            } else {
+                cachedClasses.remove(clazz, name);
+            }
+        }
+    }
+
+    /**
+     *      cachedNameInstance: 将加载的类实例对象缓存到这个上下文（别名和实例对象都没有注册过）
+     *      cachedClassInstance: 缓存之前没有加载过实例对象的Class对象和 实例对象
+     *      cachedSuperTypeInstance: 实例对象加入它的所有父类/接口的候选列表
+     * @param name
+     * @param bean
+     */
+    public void addInstanceToCacheIfAbsent(String name, Object bean) {
+        checkOpen();
+        boolean added = false;
+        InstanceKey key = new InstanceKey(bean);
+        if (cachedInstanceNames.putIfAbsent(key, name) == null) {
+            if (cachedNameInstance.putIfAbsent(name, bean) == null) {
+                added = true;
+            } else {
+                cachedInstanceNames.remove(key, name);
+            }
+        }
+        if (cachedClassInstance.putIfAbsent(bean.getClass(), bean) == null) {
+            added = true;
+        }
+        if (added) {
+            for (Class<?> superType : SUPER_TYPES.get(bean.getClass())) {
+                addCandidate(superType, bean);
+            }
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     *      热替换：用新的Class对象和实例化对象（已经完成依赖注入和初始化）替换别名对应的注册，
+     *      旧的Class对象和实例化对象从所有缓存中移除；先注册新的再移除旧的，每个缓存的替换都是原子的，
+     *      并发的查询只会看到旧的或者新的对象，不会查询不到
+     * @param name
+     * @param clazz
+     * @param bean
+     * @return 旧的实例化对象，没有返回null
+     */
+    public Object replaceInstance(String name, Class<?> clazz, Object bean) {
+        checkOpen();
+        Class<?> oldClass = cachedNames.get(name);
+        Object oldBean = cachedNameInstance.get(name);
+        cachedClasses.put(clazz, name);
+        cachedNames.put(name, clazz);
+        cachedInstanceNames.put(new InstanceKey(bean), name);
+        cachedNameInstance.put(name, bean);
+        cachedClassInstance.put(clazz, bean);
+        for (Class<?> superType : SUPER_TYPES.get(clazz)) {
+            replaceCandidate(superType, oldBean, bean);
+        }
+        lazyNames.remove(name);
+        if (oldClass != null && oldClass != clazz) {
+            cachedClasses.remove(oldClass, name);
+            lazyClasses.remove(oldClass, name);
+            InjectionPlan.evict(oldClass);
+        }
+        if (oldBean != null && oldBean != bean) {
+            cachedInstanceNames.remove(new InstanceKey(oldBean), name);
+            cachedClassInstance.remove(oldBean.getClass(), oldBean);
+            for (Class<?> superType : SUPER_TYPES.get(oldBean.getClass())) {
+                replaceCandidate(superType, oldBean, null);
+            }
+        }
+        version.incrementAndGet();
+        // 查询缓存中可能以旧的Class对象为key
+        evictResolutions();
+        return oldBean;
+    }
+
+    // 查询实例化对象注册的别名，没有注册过返回null
+    public String getInstanceName(Object bean) {
+        if (bean == null) {
+            return null;
+        }
+        for (BeanContext context = this; context != null; context = context.parent) {
+            String name = context.cachedInstanceNames.get(new InstanceKey(bean));
+            if (name != null) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    // 通过别名name以及Class对象查询 Bean Class对象是否存在缓存 (不是实例化)，自己没有就查父上下文
+    public Class<?> getLoadedClass(String name, Class<?> clazz) {
+        for (BeanContext context = this; context != null; context = context.parent) {
+            Class<?> loaded;
+            if (name != null && (loaded = context.cachedNames.get(name)) != null) {
+                return loaded;
+            } else if (clazz != null && context.cachedClasses.containsKey(clazz)) {
+                return clazz;
+            }
+        }
+        return null;
+    }
+
+    public Class<?> getLoadedClass(Class<?> clazz) {
+        return getLoadedClass(null, clazz);
+    }
+
+    public Class<?> getLoadedClass(String name) {
+        return getLoadedClass(name, null);
+    }
+
+    /**
+     *      注册懒加载Bean：只缓存Class对象，第一次通过 getLoadedInstance 查询时才实例化并依赖注入
+     * @param name
+     * @param clazz
+     */
+    public void registerLazyBean(String name, Class<?> clazz) {
+        addClassToCacheIfAbsent(name, clazz);
+        lazyNames.putIfAbsent(name, clazz);
+        lazyClasses.putIfAbsent(clazz, name);
+        version.incrementAndGet();
+    }
+
+    /**
+     *      注册非单例作用域的Bean：只缓存Class对象，查询时按作用域实例化并依赖注入
+     * @param name
+     * @param clazz
+     * @param scope    PROTOTYPE / THREAD / POOLED
+     * @param poolSize POOLED 作用域的对象池大小
+     */
+    public void registerScopedBean(String name, Class<?> clazz, Scope scope, int poolSize) {
+        if (scope == null || scope == Scope.SINGLETON) {
+            throw new IllegalArgumentException("单例Bean不需要注册作用域：" + name);
+        }
+        addClassToCacheIfAbsent(name, clazz);
+        ScopedBean scopedBean = new ScopedBean(this, name, clazz, scope, poolSize);
+        if (scopedNames.putIfAbsent(name, scopedBean) == null) {
+            scopedClasses.putIfAbsent(clazz, scopedBean);
+            version.incrementAndGet();
+        }
+    }
+
+    // Bean的作用域，没有注册过返回null
+    public Scope getScope(String name) {
+        for (BeanContext context = this; context != null; context = context.parent) {
+            ScopedBean scopedBean = context.scopedNames.get(name);
+            if (scopedBean != null) {
+                return scopedBean.getScope();
+            }
+            if (context.cachedNames.containsKey(name)) {
+                return Scope.SINGLETON;
+            }
+        }
+        return null;
+    }
+
+    /**
+     *      POOLED 作用域Bean的对象池，不是 POOLED 作用域返回null
+     */
+    public BeanPool getBeanPool(String name) {
+        for (BeanContext context = this; context != null; context = context.parent) {
+            ScopedBean scopedBean = context.scopedNames.get(name);
+            if (scopedBean != null) {
+                return scopedBean.getPool();
+            }
+        }
+        return null;
+    }
+
+    /**
+     *      从 POOLED 作用域Bean的对象池借用一个对象，对象池耗尽时等待其他线程归还
+     */
+    public Object borrowBean(String name) throws InterruptedException {
+        return requirePool(name).borrow();
+    }
+
+    /**
+     *      归还借用的对象
+     */
+    public void returnBean(String name, Object bean) {
+        requirePool(name).giveBack(bean);
+    }
+
+    private BeanPool requirePool(String name) {
+        BeanPool pool = getBeanPool(name);
+        if (pool == null) {
+            throw new IllegalArgumentException(name + "不是 POOLED 作用域的Bean");
+        }
+        return pool;
+    }
+
+    // 是否是还没有实例化的懒加载Bean
+    public boolean isLazyBean(String name) {
+        for (BeanContext context = this; context != null; context = context.parent) {
+            if (context.cachedNameInstance.containsKey(name)) {
+                return false;
+            }
+            if (context.lazyNames.containsKey(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 先通过别名name查询Bean实例化对象（单例、作用域Bean、懒加载Bean），自己没有就查父上下文；
+    // 所有上下文都没有这个别名时再通过clazz查询：先查这个Class对象的实例化对象（单例、作用域Bean、懒加载Bean），
+    // 再查唯一一个可以赋值给clazz（父类/接口）的实例化对象，存在多个可以赋值的实例化对象时抛出 IllegalStateException，需要使用name查询
+    public Object getLoadedInstance(String name, Class<?> clazz) {
+        Object instance;
+        if (name != null) {
+            for (BeanContext context = this; context != null; context = context.parent) {
+                if ((instance = context.getOwnInstance(name)) != null) {
+                    return instance;
+                }
+            }
+        }
+        if (clazz != null) {
+            for (BeanContext context = this; context != null; context = context.parent) {
+                if ((instance = context.getOwnInstance(clazz)) != null) {
+                    return instance;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Object getOwnInstance(String name) {
+        Object instance = cachedNameInstance.get(name);
+        if (instance != null) {
+            return instance;
+        }
+        ScopedBean scopedBean = scopedNames.get(name);
+        if (scopedBean != null) {
+            return scopedBean.get();
+        }
+        return lazyNames.containsKey(name) ? createLazyInstance(name) : null;
+    }
+
+    private Object getOwnInstance(Class<?> clazz) {
+        Object instance = cachedClassInstance.get(clazz);
+        if (instance != null) {
+            return instance;
+        }
+        ScopedBean scopedBean = scopedClasses.get(clazz);
+        if (scopedBean != null) {
+            return scopedBean.get();
+        }
+        String lazyName = lazyClasses.get(clazz);
+        if (lazyName != null && (instance = createLazyInstance(lazyName)) != null) {
+            return instance;
+        }
+        return uniqueCandidate(clazz);
+    }
+
+    // 获取一个Bean对象（通过clazz）,多次加载不同的这个对象只返回第一个
+    public Object getLoadedInstance(Class<?> clazz) {
+        return getLoadedInstance(null, clazz);
+    }
+
+    public Object getLoadedInstance(String name) {
+        return getLoadedInstance(name, null);
+    }
+
+    // 唯一一个可以赋值给clazz的实例化对象，没有返回null，存在多个抛出异常
+    private Object uniqueCandidate(Class<?> clazz) {
+        Object[] candidates = cachedSuperTypeInstance.get(clazz);
+        if (candidates == null) {
+            return null;
+        }
+        if (candidates.length > 1) {
+            throw new IllegalStateException("存在" + candidates.length + "个可以赋值给" + clazz.getName()
+                    + "的Bean，需要按别名查询");
+        }
+        return candidates[0];
+    }
+
+    // 实例化对象加入父类/接口的候选列表（已经存在就不加入）
+    private void addCandidate(Class<?> superType, Object bean) {
+        replaceCandidate(superType, null, bean);
+    }
+
+    /**
+     *      原子地替换父类/接口候选列表中的实例化对象
+     * @param oldBean 被替换的对象，null 或者不在列表中时只加入 bean
+     * @param bean    新的对象，null 表示只移除 oldBean
+     */
+    private void replaceCandidate(Class<?> superType, Object oldBean, Object bean) {
+        while (true) {
+            Object[] candidates = cachedSuperTypeInstance.get(superType);
+            Object[] updated = replaced(candidates == null ? new Object[0] : candidates, oldBean, bean);
+            if (updated == candidates) {
+                return;
+            }
+            boolean done;
+            if (candidates == null) {
+                done = updated.length == 0 || cachedSuperTypeInstance.putIfAbsent(superType, updated) == null;
+            } else if (updated.length == 0) {
+                done = cachedSuperTypeInstance.remove(superType, candidates);
+            } else {
+                done = cachedSuperTypeInstance.replace(superType, candidates, updated);
+            }
+            if (done) {
+                return;
+            }
+        }
+    }
+
+    // 替换后的新数组，没有变化返回原数组
+    private static Object[] replaced(Object[] candidates, Object oldBean, Object bean) {
+        int oldIndex = -1;
+        boolean present = false;
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i] == oldBean && oldBean != null) {
+                oldIndex = i;
+            }
+            if (candidates[i] == bean && bean != null) {
+                present = true;
+            }
+        }
+        if (oldIndex < 0 && (bean == null || present)) {
+            return candidates;
+        }
+        List<Object> updated = new ArrayList<Object>(Arrays.asList(candidates));
+        if (oldIndex >= 0 && (bean == null || present)) {
+            updated.remove(oldIndex);
+        } else if (oldIndex >= 0) {
+            updated.set(oldIndex, bean);
+        } else {
+            updated.add(bean);
+        }
+        return updated.toArray();
+    }
+
+    /**
+     *      实例化懒加载Bean：先实例化，再依赖注入，初始化完成后才放入缓存，
+     *      依赖注入时绑定这个上下文，懒加载Bean只能看到自己所在上下文（以及父上下文）的Bean
+     *
+     *      lazyLock 只用来发布每个别名的 LazyCreation，实例化、依赖注入和初始化都不持有锁，
+     *      不同别名的懒加载Bean互不阻塞，其他线程等待这个别名的 LazyCreation；
+     *      依赖注入期间，创建者自己以及同样正在创建懒加载Bean的线程（互相依赖）得到还没有完成依赖注入的对象，不会互相等待
+     * @param name
+     * @return
+     */
+    private Object createLazyInstance(String name) {
+        LazyCreation creation;
+        boolean created = false;
+        synchronized (lazyLock) {
+            Object instance = cachedNameInstance.get(name);
+            if (instance != null) {
+                return instance;
+            }
+            creation = lazyCreations.get(name);
+            if (creation == null) {
+                Class<?> clazz = lazyNames.get(name);
+                if (clazz == null) {
+                    return null;
+                }
+                creation = new LazyCreation(clazz);
+                lazyCreations.put(name, creation);
+                created = true;
+            }
+        }
+        if (created) {
+            return create(name, creation);
+        }
+        Object early = creation.early;
+        if (early != null && (creation.creator == Thread.currentThread() || CREATING_LAZY.get()[0] > 0)) {
+            return early;
+        }
+        if (creation.creator == Thread.currentThread() && !creation.isDone()) {
+            // 初始化方法中获取自己：还没有初始化完成，等待会死锁
+            logger.error(name + "别名的懒加载Bean还没有初始化完成");
+            return null;
+        }
+        return join(creation);
+    }
+
+    // 在调用线程上创建这个别名的懒加载Bean（已经发布 creation）
+    private Object create(String name, LazyCreation creation) {
+        BeanContext previous = BeanCacheFactory.bindContext(this);
+        int[] creating = CREATING_LAZY.get();
+        creating[0]++;
+        try {
+            long start = System.nanoTime();
+            Object instance = creation.clazz.newInstance();
+            Monitors.get().phase(ContainerMonitor.INSTANTIATION, creation.clazz.getName(), System.nanoTime() - start);
+            creation.early = instance;
+            InjectionUtil.injection(instance);
+            creation.early = null;
+            // 初始化完成后先放入缓存再移除 creation，查询不会看到两者都不存在
+            Lifecycle.initialize(instance).thenApply(initialized -> {
+                addInstanceToCacheIfAbsent(name, initialized);
+                return cachedNameInstance.get(name);
+            }).whenComplete((initialized, e) -> {
+                removeCreation(name, creation);
+                if (e != null) {
+                    creation.completeExceptionally(e);
+                } else {
+                    creation.complete(initialized);
+                }
+            });
+        } catch (Throwable e) {
+            // 失败时下次查询重新实例化
+            creation.early = null;
+            removeCreation(name, creation);
+            creation.completeExceptionally(e);
+        } finally {
+            creating[0]--;
+            BeanCacheFactory.bindContext(previous);
+        }
+        return join(creation);
+    }
+
+    private void removeCreation(String name, LazyCreation creation) {
+        synchronized (lazyLock) {
+            if (lazyCreations.get(name) == creation) {
+                lazyCreations.remove(name);
+            }
+        }
+    }
+
+    private static Object join(LazyCreation creation) {
+        try {
+            return creation.join();
+        } catch (Throwable e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     *      关闭上下文：先关闭子上下文，再释放所有的实例化对象和Class对象引用，
+     *      清除这些Class对象的注入计划和依赖注入适配器中这个上下文的查询缓存；关闭之后不能再注册
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (BeanContext child : children) {
+            child.close();
+        }
+        children.clear();
+        if (parent != null) {
+            parent.children.remove(this);
+        }
+        evictResolutions();
+        Set<Class<?>> classes = new HashSet<Class<?>>(cachedClasses.keySet());
+        classes.addAll(cachedClassInstance.keySet());
+        classes.addAll(lazyClasses.keySet());
+        classes.addAll(scopedClasses.keySet());
+        for (ScopedBean scopedBean : scopedNames.values()) {
+            scopedBean.close();
+        }
+        for (Class<?> clazz : classes) {
+            InjectionPlan.evict(clazz);
+        }
+        synchronized (lazyLock) {
+            lazyCreations.clear();
+        }
+        cachedNames.clear();
+        cachedClasses.clear();
+        cachedNameInstance.clear();
+        cachedInstanceNames.clear();
+        cachedClassInstance.clear();
+        cachedSuperTypeInstance.clear();
+        lazyNames.clear();
+        lazyClasses.clear();
+        scopedNames.clear();
+        scopedClasses.clear();
+        cacheInjectionAdapterClass.set(null);
+        cacheInjectionAdapterInstance.set(null);
+        version.incrementAndGet();
+    }
+
+    // 使用中的依赖注入适配器（可能属于父上下文）缓存了这个上下文的查询结果
+    private void evictResolutions() {
+        for (BeanContext context = this; context != null; context = context.parent) {
+            Object adapter = context.cacheInjectionAdapterInstance.get();
+            if (adapter instanceof InjectionAdapter) {
+                ((InjectionAdapter) adapter).evict(this);
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Bean上下文已经关闭");
+        }
+    }
+
+    /**
+     *      所有的父类和接口（不包括自己和Object），返回缓存的数组，调用方不能修改
+     */
+    static Class<?>[] superTypes(Class<?> clazz) {
+        return SUPER_TYPES.get(clazz);
+    }
+
+    private static void collectSuperTypes(Class<?> type, Set<Class<?>> superTypes) {
+        if (type == null || !superTypes.add(type)) {
+            return;
+        }
+        collectSuperTypes(type.getSuperclass(), superTypes);
+        for (Class<?> anInterface : type.getInterfaces()) {
+            collectSuperTypes(anInterface, superTypes);
+        }
+    }
+
+    /**
+     *      一个懒加载Bean的创建，记录创建线程和还没有完成依赖注入的对象
+     */
+    private static final class LazyCreation extends CompletableFuture<Object> {
+        private final Class<?> clazz;
+        private final Thread creator = Thread.currentThread();
+        // 已实例化、正在依赖注入的对象，依赖注入完成后清空
+        private volatile Object early;
+
+        private LazyCreation(Class<?> clazz) {
+            this.clazz = clazz;
+        }
+    }
+
+    /**
+     *      按对象地址比较的实例化对象包装（Bean可能重写了 equals / hashCode）
+     */
+    static final class InstanceKey {
+        private final Object instance;
+        private final int hash;
+
+        InstanceKey(Object instance) {
+            this.instance = instance;
+            this.hash = System.identityHashCode(instance);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof InstanceKey && ((InstanceKey) o).instance == instance;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
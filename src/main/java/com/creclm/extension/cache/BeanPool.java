@@ -0,0 +1,153 @@
+package com.creclm.extension.cache;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ *      POOLED 作用域Bean的有界对象池
+ *
+ *      空闲对象放在 ArrayBlockingQueue 中；没有空闲对象且没有达到上限时新建，达到上限时等待其他线程归还。
+ *      借出的对象按对象地址记录，只接受借出且还没有归还的对象；关闭时唤醒所有等待的线程。
+ *      归还和关闭持有 lock（等待借用时不持有），关闭之后不会再有对象放入空闲队列，关闭标记一定能放入
+ */
+public class BeanPool {
+
+    // 关闭标记：关闭时放入空闲队列唤醒等待的线程，取到的线程放回去再唤醒下一个
+    private static final Object CLOSED = new Object();
+
+    private final String name;
+    private final int size;
+    private final Supplier<Object> factory;
+    private final ArrayBlockingQueue<Object> idle;
+    // 已经创建的对象数量（包括借出的）
+    private final AtomicInteger created = new AtomicInteger();
+    // 借出还没有归还的对象（按对象地址比较）
+    private final Set<BeanContext.InstanceKey> borrowed =
+            Collections.newSetFromMap(new ConcurrentHashMap<BeanContext.InstanceKey, Boolean>());
+    private volatile boolean closed;
+    // 归还和关闭互斥
+    private final Object lock = new Object();
+
+    BeanPool(String name, int size, Supplier<Object> factory) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("对象池大小必须大于0：" + name);
+        }
+        this.name = name;
+        this.size = size;
+        this.factory = factory;
+        this.idle = new ArrayBlockingQueue<Object>(size);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // 当前空闲的对象数量
+    public int getIdleCount() {
+        return closed ? 0 : idle.size();
+    }
+
+    /**
+     *      借用一个对象，对象池耗尽时一直等待，等待期间关闭抛出 IllegalStateException
+     */
+    public Object borrow() throws InterruptedException {
+        Object instance = tryBorrow();
+        return instance != null ? instance : lend(idle.take());
+    }
+
+    /**
+     *      借用一个对象，对象池耗尽时最多等待 timeout，超时返回null，等待期间关闭抛出 IllegalStateException
+     */
+    public Object borrow(long timeout, TimeUnit unit) throws InterruptedException {
+        Object instance = tryBorrow();
+        return instance != null ? instance : lend(idle.poll(timeout, unit));
+    }
+
+    /**
+     *      不等待：有空闲对象或者还能新建时返回对象，否则返回null
+     */
+    public Object tryBorrow() {
+        checkOpen();
+        Object instance = idle.poll();
+        if (instance != null) {
+            return lend(instance);
+        }
+        int count;
+        while ((count = created.get()) < size) {
+            if (created.compareAndSet(count, count + 1)) {
+                instance = factory.get();
+                if (instance == null) {
+                    created.decrementAndGet();
+                    throw new IllegalStateException("对象池实例化对象失败：" + name);
+                }
+                return lend(instance);
+            }
+        }
+        return lend(idle.poll());
+    }
+
+    /**
+     *      归还借用的对象
+     * @throws IllegalArgumentException 不是这个对象池借出的对象，或者已经归还过
+     */
+    public void giveBack(Object instance) {
+        if (instance == null) {
+            return;
+        }
+        synchronized (lock) {
+            if (closed) {
+                // 关闭之后归还的对象直接丢弃
+                return;
+            }
+            if (!borrowed.remove(new BeanContext.InstanceKey(instance))) {
+                throw new IllegalArgumentException("不是对象池借出的对象或者已经归还：" + name);
+            }
+            if (!idle.offer(instance)) {
+                throw new IllegalStateException("归还的对象超过了对象池大小：" + name);
+            }
+        }
+    }
+
+    void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            idle.clear();
+            borrowed.clear();
+            // 空闲队列已经清空，之后也不会再有对象归还
+            idle.offer(CLOSED);
+        }
+    }
+
+    // 记录借出的对象；取到关闭标记时放回去（唤醒下一个等待的线程）并抛出异常
+    private Object lend(Object instance) {
+        if (instance == null) {
+            return null;
+        }
+        if (instance == CLOSED || closed) {
+            if (instance == CLOSED) {
+                idle.offer(CLOSED);
+            }
+            checkOpen();
+        }
+        borrowed.add(new BeanContext.InstanceKey(instance));
+        return instance;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("对象池已经关闭：" + name);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.creclm.extension.cache;
+
+import com.creclm.annotation.Scope;
+import com.creclm.extension.injection.InjectionPlan;
+import com.creclm.extension.lifecycle.Lifecycle;
+import com.creclm.extension.injection.PropertyAccessors;
+import com.creclm.extension.support.Holder;
+import com.creclm.service.InjectionServiceFactory;
+import com.creclm.util.InjectionUtil;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ *      非单例Bean的定义：注册时准备好构造器和注入计划，之后每次实例化只是调用构造器并重放注入点
+ */
+final class ScopedBean {
+
+    private final BeanContext context;
+    private final String name;
+    private final Class<?> clazz;
+    private final Scope scope;
+    // 无参构造器 ()Object，不能访问时为null，使用反射实例化
+    private final MethodHandle constructor;
+    private final InjectionPlan plan;
+    // THREAD 作用域：每个线程一个对象的包装对象，实例化失败时不缓存
+    private final ThreadLocal<Holder<Object>> threadInstances;
+    // THREAD 作用域：线程 --> 这个线程的包装对象，关闭时清空所有线程的对象；线程结束后随线程回收
+    private final Map<Thread, Holder<Object>> threadHolders;
+    private boolean closed;
+    // POOLED 作用域：对象池
+    private final BeanPool pool;
+
+    ScopedBean(BeanContext context, String name, Class<?> clazz, Scope scope, int poolSize) {
+        this.context = context;
+        this.name = name;
+        this.clazz = clazz;
+        this.scope = scope;
+        this.constructor = PropertyAccessors.constructor(clazz);
+        this.plan = InjectionPlan.forClass(clazz);
+        this.threadInstances = scope == Scope.THREAD ? ThreadLocal.withInitial(Holder::new) : null;
+        this.threadHolders = scope == Scope.THREAD ? new WeakHashMap<Thread, Holder<Object>>() : null;
+        this.pool = scope == Scope.POOLED ? new BeanPool(name, poolSize, this::create) : null;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Class<?> getBeanClass() {
+        return clazz;
+    }
+
+    Scope getScope() {
+        return scope;
+    }
+
+    BeanPool getPool() {
+        return pool;
+    }
+
+    /**
+     *      按作用域查询实例：PROTOTYPE 新建，THREAD 当前线程的对象，POOLED 返回null（需要借用）
+     */
+    Object get() {
+        switch (scope) {
+            case PROTOTYPE:
+                return create();
+            case THREAD:
+                return threadInstance();
+            default:
+                return null;
+        }
+    }
+
+    // 当前线程的对象，第一次查询时实例化；失败返回null，下次查询重新实例化
+    private Object threadInstance() {
+        Holder<Object> holder = threadInstances.get();
+        Object instance = holder.get();
+        if (instance != null) {
+            return instance;
+        }
+        instance = create();
+        if (instance != null) {
+            synchronized (threadHolders) {
+                // 关闭之后不再缓存
+                if (!closed) {
+                    threadHolders.put(Thread.currentThread(), holder);
+                    holder.set(instance);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     *      实例化并依赖注入，依赖注入时绑定Bean所在的上下文；失败返回null
+     */
+    Object create() {
+        BeanContext previous = BeanCacheFactory.bindContext(context);
+        try {
+            Object instance = constructor != null ? (Object) constructor.invokeExact() : clazz.newInstance();
+            InjectionServiceFactory factory = (InjectionServiceFactory) context.getInjectionAdapter();
+            if (factory != null) {
+                plan.inject(instance, factory, InjectionUtil.isGeneratedInjection());
+            }
+            return Lifecycle.initialize(instance).join();
+        } catch (Throwable e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            BeanCacheFactory.bindContext(previous);
+        }
+    }
+
+    /**
+     *      上下文关闭：清空对象池和所有线程的对象
+     */
+    void close() {
+        if (threadInstances != null) {
+            synchronized (threadHolders) {
+                closed = true;
+                for (Holder<Object> holder : threadHolders.values()) {
+                    holder.set(null);
+                }
+                threadHolders.clear();
+            }
+            threadInstances.remove();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+}
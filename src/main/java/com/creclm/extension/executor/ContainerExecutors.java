@@ -0,0 +1,179 @@
+package com.creclm.extension.executor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *      容器启动和异步服务提供者使用的执行器，集中管理，都可以替换：
+ *          scan      包扫描（每个classpath根路径一个任务），根路径内拆分的 ForkJoin 任务在扫描 ForkJoinPool 上执行
+ *          resource  读取 META-INF 下的服务配置文件
+ *          bean      Bean的实例化和依赖注入（按依赖关系分批）
+ *          init      Bean / 服务提供者的初始化（Init注解的方法）和 getProviderAsync
+ *
+ *      这些任务大多是I/O：运行在 JDK 21+ 时包扫描和配置文件默认使用虚拟线程（每个任务一个虚拟线程），
+ *      否则包扫描使用专用的 ForkJoinPool（读取jar和目录是阻塞I/O，不占用 commonPool），配置文件使用一个有界的I/O线程池；
+ *      bean 和 init 阶段会在 synchronized 中等待（如服务提供者分组的创建），JDK 24 之前虚拟线程在 synchronized 中阻塞
+ *      会占住载体线程（pinning），所以默认只在 JDK 24+ 使用虚拟线程，否则 Bean使用 ForkJoinPool.commonPool，
+ *      初始化使用一个有界的I/O线程池
+ *
+ *      -Dcreclm.executor=virtual / platform 强制所有阶段使用虚拟线程 / 平台线程，默认 auto；
+ *      virtual 而当前JDK不支持虚拟线程时抛出异常；虚拟线程执行器通过反射创建，编译级别依旧是 Java 8
+ */
+public final class ContainerExecutors {
+
+    // 执行器选择的系统属性：auto / virtual / platform
+    public static final String EXECUTOR_PROPERTY = "creclm.executor";
+
+    // I/O线程池的线程数（没有虚拟线程时使用）
+    private static final int IO_THREADS = Integer.getInteger("creclm.init.threads",
+            Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    private static final String MODE = System.getProperty(EXECUTOR_PROPERTY, "auto");
+
+    private static final Executor VIRTUAL = newVirtualThreadExecutor();
+
+    // bean / init 阶段是否使用虚拟线程：强制使用，或者 JDK 24+（synchronized 不再占住载体线程）
+    private static final boolean VIRTUAL_BLOCKING = VIRTUAL != null
+            && ("virtual".equalsIgnoreCase(MODE) || javaVersion() >= 24);
+
+    // 包扫描拆分任务使用的 ForkJoinPool
+    private static final ForkJoinPool SCAN_POOL = newForkJoinPool("creclm-scan-", IO_THREADS);
+
+    private static volatile Executor scanExecutor;
+    private static volatile Executor resourceExecutor;
+    private static volatile Executor beanExecutor;
+    private static volatile Executor initExecutor;
+
+    static {
+        scanExecutor = VIRTUAL != null ? VIRTUAL : SCAN_POOL;
+        // 初始化任务中可能加载服务提供者（读取配置文件），两者不能共用一个有界线程池
+        resourceExecutor = VIRTUAL != null ? VIRTUAL : newIoExecutor("creclm-resource-", IO_THREADS);
+        beanExecutor = VIRTUAL_BLOCKING ? VIRTUAL : ForkJoinPool.commonPool();
+        initExecutor = VIRTUAL_BLOCKING ? VIRTUAL : newIoExecutor("creclm-init-", IO_THREADS);
+    }
+
+    private ContainerExecutors() {
+    }
+
+    // 默认的包扫描和配置文件执行器是否使用虚拟线程
+    public static boolean isVirtualThreads() {
+        return VIRTUAL != null;
+    }
+
+    // 默认的 bean 和 init 执行器是否使用虚拟线程
+    public static boolean isVirtualBlockingThreads() {
+        return VIRTUAL_BLOCKING;
+    }
+
+    public static Executor getScanExecutor() {
+        return scanExecutor;
+    }
+
+    public static void setScanExecutor(Executor executor) {
+        scanExecutor = executor;
+    }
+
+    /**
+     * 包扫描中拆分的 ForkJoin 任务使用的线程池（扫描执行器不是 ForkJoinPool 时）
+     */
+    public static ForkJoinPool getScanForkJoinPool() {
+        return SCAN_POOL;
+    }
+
+    public static Executor getResourceExecutor() {
+        return resourceExecutor;
+    }
+
+    public static void setResourceExecutor(Executor executor) {
+        resourceExecutor = executor;
+    }
+
+    public static Executor getBeanExecutor() {
+        return beanExecutor;
+    }
+
+    public static void setBeanExecutor(Executor executor) {
+        beanExecutor = executor;
+    }
+
+    public static Executor getInitExecutor() {
+        return initExecutor;
+    }
+
+    public static void setInitExecutor(Executor executor) {
+        initExecutor = executor;
+    }
+
+    /**
+     * 所有阶段使用同一个执行器，传入 Runnable::run 则在调用线程上串行执行
+     */
+    public static void setAll(Executor executor) {
+        scanExecutor = executor;
+        resourceExecutor = executor;
+        beanExecutor = executor;
+        initExecutor = executor;
+    }
+
+    /**
+     *      JDK 21+ 的 Executors.newVirtualThreadPerTaskExecutor，不支持或者关闭了虚拟线程返回null
+     * @throws IllegalStateException 强制使用虚拟线程而当前JDK不支持
+     */
+    private static Executor newVirtualThreadExecutor() {
+        if ("platform".equalsIgnoreCase(MODE)) {
+            return null;
+        }
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) method.invoke(null);
+        } catch (Throwable e) {
+            if ("virtual".equalsIgnoreCase(MODE)) {
+                throw new IllegalStateException(EXECUTOR_PROPERTY + "=virtual，但是当前JDK不支持虚拟线程："
+                        + System.getProperty("java.version"), e);
+            }
+            return null;
+        }
+    }
+
+    // JDK的主版本号（1.8 为 8）
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version", "1.8");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 8;
+        }
+    }
+
+    private static ForkJoinPool newForkJoinPool(String prefix, int threads) {
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(prefix + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ForkJoinPool(threads, factory, null, false);
+    }
+
+    private static Executor newIoExecutor(String prefix, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
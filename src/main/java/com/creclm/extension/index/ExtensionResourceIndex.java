@@ -0,0 +1,288 @@
+package com.creclm.extension.index;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ *      服务配置文件的资源索引
+ *
+ *      每个服务加载工厂原本对4个 META-INF 目录各调用一次 getResources，K个服务就是 4×K 次类路径查找，
+ *      每次都要遍历所有jar；这里每个类加载器只遍历一次类路径的根路径（目录和jar），
+ *      列出4个目录下的所有配置文件并按资源名（目录 + 服务全类名）分组，之后所有服务都从内存中查询
+ *
+ *      配置文件的内容第一次读取后也缓存下来，同一个服务多次加载服务提供者不再重复读取
+ *
+ *      只有能够列出全部根路径的类加载器（URLClassLoader、系统类加载器）才建立索引，
+ *      其他类加载器（或者 -Dcreclm.resource.index=false）getResources 返回null，由调用方回退到 ClassLoader.getResources
+ */
+public final class ExtensionResourceIndex {
+
+    // 关闭资源索引的系统属性
+    public static final String INDEX_PROPERTY = "creclm.resource.index";
+
+    // 服务配置文件所在的目录
+    public static final String[] DIRECTORIES = {
+            "META-INF/creclm/internal/", "META-INF/creclm/", "META-INF/creclm/test/", "META-INF/services/"};
+
+    // 类加载器 --> 索引（弱引用，不阻止类加载器被回收）
+    private static final Map<ClassLoader, ExtensionResourceIndex> INDEXES =
+            Collections.synchronizedMap(new WeakHashMap<ClassLoader, ExtensionResourceIndex>());
+
+    // 资源名 --> 配置文件（按类加载器查找顺序），为null表示没有建立索引
+    private final Map<String, List<URL>> resources;
+
+    // 配置文件url --> 内容 [别名, 全限定名]
+    private final ConcurrentMap<String, List<String[]>> contents = new ConcurrentHashMap<String, List<String[]>>();
+
+    private ExtensionResourceIndex(Map<String, List<URL>> resources) {
+        this.resources = resources;
+    }
+
+    /**
+     *      获取类加载器对应的索引，不存在就遍历一次类路径并缓存
+     * @param classLoader 为null时使用系统类加载器
+     * @return
+     */
+    public static ExtensionResourceIndex getIndex(ClassLoader classLoader) {
+        ClassLoader loader = classLoader != null ? classLoader : ClassLoader.getSystemClassLoader();
+        ExtensionResourceIndex index = INDEXES.get(loader);
+        if (index == null) {
+            synchronized (INDEXES) {
+                index = INDEXES.get(loader);
+                if (index == null) {
+                    index = new ExtensionResourceIndex(build(loader));
+                    INDEXES.put(loader, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     *      丢弃类加载器的索引和缓存的配置文件内容（配置文件有变化时调用）
+     * @param classLoader
+     */
+    public static void evict(ClassLoader classLoader) {
+        INDEXES.remove(classLoader != null ? classLoader : ClassLoader.getSystemClassLoader());
+    }
+
+    /**
+     *      查询配置文件
+     * @param resourceName 资源名  如 META-INF/creclm/xxx.Service
+     * @return 和 ClassLoader.getResources 顺序一致的url，没有建立索引返回null
+     */
+    public List<URL> getResources(String resourceName) {
+        if (resources == null) {
+            return null;
+        }
+        List<URL> urls = resources.get(resourceName);
+        return urls == null ? Collections.<URL>emptyList() : urls;
+    }
+
+    /**
+     *      读取配置文件的内容（name=xxx.xxx.xxx，# 之后是注释），第一次读取后缓存
+     * @param url
+     * @return [别名, 全限定名]，没有等于号时别名为空字符串
+     * @throws IOException
+     */
+    public List<String[]> getEntries(URL url) throws IOException {
+        String key = url.toExternalForm();
+        List<String[]> entries = contents.get(key);
+        if (entries == null) {
+            entries = readEntries(url, true);
+            List<String[]> previous = contents.putIfAbsent(key, entries);
+            if (previous != null) {
+                entries = previous;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     *      直接读取配置文件的内容，不经过缓存
+     * @param url
+     * @param useCaches 为false时不使用jar文件缓存（读取之后要关闭的类加载器中的资源）
+     * @return [别名, 全限定名]
+     * @throws IOException
+     */
+    public static List<String[]> readEntries(URL url, boolean useCaches) throws IOException {
+        List<String[]> entries = new ArrayList<String[]>();
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(useCaches);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "utf-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // 解析抛弃注释信息   name=xxx.xxx.xxx(全限定名)
+                int index = line.indexOf('#');
+                if (index >= 0) {
+                    line = line.substring(0, index);
+                }
+                if (line.length() == 0) {
+                    continue;
+                }
+                // 可以没有等于号，就是在Provider注解上备注了别名
+                index = line.indexOf('=');
+                String name = index < 0 ? "" : line.substring(0, index).trim();
+                String qualifiedName = index < 0 ? line.trim() : line.substring(index + 1).trim();
+                if (qualifiedName.length() > 0) {
+                    entries.add(new String[]{name, qualifiedName});
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     *      遍历类加载器的全部根路径，列出配置文件
+     * @return 无法列出全部根路径时返回null
+     */
+    private static Map<String, List<URL>> build(ClassLoader classLoader) {
+        if ("false".equalsIgnoreCase(System.getProperty(INDEX_PROPERTY))) {
+            return null;
+        }
+        try {
+            List<URL> roots = roots(classLoader);
+            if (roots == null) {
+                return null;
+            }
+            Map<String, List<URL>> resources = new HashMap<String, List<URL>>();
+            Set<String> visited = new HashSet<String>();
+            Deque<URL> pending = new ArrayDeque<URL>(roots);
+            while (!pending.isEmpty()) {
+                URL root = pending.pollFirst();
+                if (!"file".equals(root.getProtocol())) {
+                    // 网络等其他协议的根路径无法列出
+                    return null;
+                }
+                File file = new File(root.toURI());
+                if (!visited.add(file.getCanonicalPath()) || !file.exists()) {
+                    continue;
+                }
+                if (file.isDirectory()) {
+                    indexDirectory(resources, root, file);
+                } else {
+                    // jar的 Class-Path 紧跟在这个jar之后查找
+                    List<URL> classPath = indexJar(resources, root, file);
+                    for (int i = classPath.size() - 1; i >= 0; i--) {
+                        pending.addFirst(classPath.get(i));
+                    }
+                }
+            }
+            return resources;
+        } catch (Throwable e) {
+            // 索引只是加速手段，失败时回退到 getResources
+            return null;
+        }
+    }
+
+    /**
+     *      类加载器的根路径，父加载器在前（和双亲委派的查找顺序一致）
+     */
+    private static List<URL> roots(ClassLoader classLoader) throws IOException {
+        LinkedList<ClassLoader> chain = new LinkedList<ClassLoader>();
+        for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+            chain.addFirst(loader);
+        }
+        ClassLoader system = ClassLoader.getSystemClassLoader();
+        ClassLoader platform = system.getParent();
+        List<URL> roots = new ArrayList<URL>();
+        for (ClassLoader loader : chain) {
+            if (loader instanceof URLClassLoader) {
+                Collections.addAll(roots, ((URLClassLoader) loader).getURLs());
+            } else if (loader == system) {
+                // JDK 9+ 的系统类加载器不是 URLClassLoader，根路径就是 java.class.path
+                for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+                    if (path.length() > 0) {
+                        roots.add(new File(path).getCanonicalFile().toURI().toURL());
+                    }
+                }
+            } else if (loader != platform) {
+                // 自定义的类加载器无法列出根路径
+                return null;
+            }
+        }
+        return roots;
+    }
+
+    private static void indexDirectory(Map<String, List<URL>> resources, URL root, File file) throws IOException {
+        String base = root.toExternalForm().endsWith("/") ? root.toExternalForm() : root.toExternalForm() + "/";
+        for (String dir : DIRECTORIES) {
+            File[] files = new File(file, dir).listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File resource : files) {
+                if (resource.isFile()) {
+                    add(resources, dir + resource.getName(), new URL(base + dir + resource.getName()));
+                }
+            }
+        }
+    }
+
+    private static List<URL> indexJar(Map<String, List<URL>> resources, URL root, File file) throws IOException {
+        List<URL> classPath = new ArrayList<URL>();
+        JarFile jar = new JarFile(file);
+        try {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || !name.startsWith("META-INF/")) {
+                    continue;
+                }
+                for (String dir : DIRECTORIES) {
+                    if (name.startsWith(dir) && name.indexOf('/', dir.length()) < 0) {
+                        add(resources, name, new URL("jar:" + root.toExternalForm() + "!/" + name));
+                    }
+                }
+            }
+            Manifest manifest = jar.getManifest();
+            String value = manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH);
+            if (value != null) {
+                for (String path : value.trim().split("\\s+")) {
+                    if (path.length() > 0) {
+                        classPath.add(new URL(root, path));
+                    }
+                }
+            }
+        } finally {
+            jar.close();
+        }
+        return classPath;
+    }
+
+    private static void add(Map<String, List<URL>> resources, String resourceName, URL url) {
+        List<URL> urls = resources.get(resourceName);
+        if (urls == null) {
+            urls = new ArrayList<URL>(1);
+            resources.put(resourceName, urls);
+        }
+        urls.add(url);
+    }
+}
@@ -0,0 +1,296 @@
+package com.creclm.extension.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+
+/**
+ *      编译期生成的服务提供者索引（由 ProviderIndexProcessor 生成）
+ *
+ *      每个jar（或class输出目录）最多存在一个 META-INF/creclm.index 资源，格式与服务配置文件一致，
+ *      只是通过 [服务全类名] 分段：
+ *          [com.creclm.service.InjectionServiceFactory]
+ *          spi = com.creclm.adapter.impl.SpiInjectionFactory
+ *
+ *      一个类加载器的所有索引资源只解析一次；某个根路径的索引声明了某个服务后，
+ *      加载器就不再读取这个根路径下该服务的 META-INF 配置文件，没有索引的根路径依旧走配置文件
+ *
+ *      [+服务全类名] 的分段只补充条目，不代替配置文件
+ *
+ *      [服务全类名] 的分段用 @配置文件资源名 = crc32 记录生成时读取的配置文件，
+ *      只有这些配置文件内容没有变化、并且这个根路径没有新增配置文件时才代替配置文件；
+ *      配置文件修改后索引没有重新生成时丢弃这个分段的条目，依旧读取配置文件；
+ *      旧版本生成的索引（没有记录配置文件、存在没有别名的条目）当作 [+服务全类名] 处理
+ */
+public final class ProviderIndex {
+
+    // 索引资源路径
+    public static final String INDEX_RESOURCE = "META-INF/creclm.index";
+
+    // 只补充条目、不代替配置文件的分段前缀
+    public static final String PARTIAL_PREFIX = "+";
+
+    // 记录生成索引时读取的配置文件的条目前缀
+    public static final String INPUT_PREFIX = "@";
+
+    // 与 ServiceLoaderFactory 的配置文件加载顺序保持一致
+    static final String[] SERVICE_DIRECTORIES = {
+            "META-INF/creclm/internal/",
+            "META-INF/creclm/",
+            "META-INF/creclm/test/",
+            "META-INF/services/"
+    };
+
+    // 类加载器 --> 索引（弱引用，不阻止类加载器被回收）
+    private static final Map<ClassLoader, ProviderIndex> INDEXES =
+            Collections.synchronizedMap(new WeakHashMap<ClassLoader, ProviderIndex>());
+
+    // 服务全类名 --> 服务提供者条目（按资源顺序）
+    private final Map<String, List<Entry>> providers = new LinkedHashMap<String, List<Entry>>();
+
+    // 根路径 + 服务全类名：已经被索引覆盖的服务配置
+    private final Set<String> indexedServices = new HashSet<String>();
+
+    private ProviderIndex() {
+    }
+
+    /**
+     *      获取类加载器对应的索引，不存在就解析一次并缓存
+     * @param classLoader 为null时使用系统类加载器的资源
+     * @return
+     */
+    public static ProviderIndex getIndex(ClassLoader classLoader) {
+        ProviderIndex index = INDEXES.get(classLoader);
+        if (index == null) {
+            synchronized (INDEXES) {
+                index = INDEXES.get(classLoader);
+                if (index == null) {
+                    index = new ProviderIndex();
+                    index.load(classLoader);
+                    INDEXES.put(classLoader, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     *      获取索引中的服务提供者，不存在返回空集合
+     * @param service 服务全类名
+     * @return
+     */
+    public List<Entry> getProviders(String service) {
+        List<Entry> entries = providers.get(service);
+        return entries == null ? Collections.<Entry>emptyList() : entries;
+    }
+
+    /**
+     *      判断服务配置文件所在的根路径是否已经被索引覆盖
+     * @param url          服务配置文件的url
+     * @param resourceName 服务配置文件的资源名  如 META-INF/creclm/xxx.Service
+     * @param service      服务全类名
+     * @return
+     */
+    public boolean isIndexed(URL url, String resourceName, String service) {
+        if (indexedServices.isEmpty()) {
+            return false;
+        }
+        String external = url.toExternalForm();
+        if (!external.endsWith(resourceName)) {
+            return false;
+        }
+        String root = external.substring(0, external.length() - resourceName.length());
+        return indexedServices.contains(root + service);
+    }
+
+    private void load(ClassLoader classLoader) {
+        try {
+            Enumeration<URL> urls = classLoader != null ? classLoader.getResources(INDEX_RESOURCE)
+                    : ClassLoader.getSystemResources(INDEX_RESOURCE);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                String external = url.toExternalForm();
+                String root = external.substring(0, external.length() - INDEX_RESOURCE.length());
+                loadIndexResource(url, root);
+            }
+        } catch (Throwable e) {
+            // 索引只是加速手段，读取失败时全部回退到配置文件
+            providers.clear();
+            indexedServices.clear();
+        }
+    }
+
+    private void loadIndexResource(URL url, String root) throws Exception {
+        List<Section> sections = new ArrayList<Section>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "utf-8"));
+        try {
+            String line;
+            Section section = null;
+            while ((line = reader.readLine()) != null) {
+                int index = line.indexOf('#');
+                if (index >= 0) {
+                    line = line.substring(0, index);
+                }
+                line = line.trim();
+                if (line.length() == 0) {
+                    continue;
+                }
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    // 新的服务分段
+                    String service = line.substring(1, line.length() - 1).trim();
+                    boolean partial = service.startsWith(PARTIAL_PREFIX);
+                    if (partial) {
+                        service = service.substring(PARTIAL_PREFIX.length()).trim();
+                    }
+                    section = new Section(service, partial);
+                    sections.add(section);
+                    continue;
+                }
+                if (section == null) {
+                    continue;
+                }
+                index = line.indexOf('=');
+                String name = index < 0 ? "" : line.substring(0, index).trim();
+                String value = index < 0 ? line : line.substring(index + 1).trim();
+                if (name.startsWith(INPUT_PREFIX)) {
+                    section.inputs.put(name.substring(INPUT_PREFIX.length()).trim(), value);
+                    continue;
+                }
+                if (name.length() == 0) {
+                    // 没有别名的条目运行时只能从配置文件或者注解中取得别名，这个根路径依旧读取配置文件
+                    section.unnamed = true;
+                    continue;
+                }
+                section.entries.add(new Entry(name, value));
+            }
+        } finally {
+            reader.close();
+        }
+        for (Section section : sections) {
+            boolean recorded = !section.partial && !section.inputs.isEmpty();
+            if (recorded && !matchesInputs(root, section)) {
+                // 配置文件已经变化，这个分段的条目不再可信
+                continue;
+            }
+            boolean full = recorded && !section.unnamed;
+            List<Entry> entries = providers.get(section.service);
+            if (entries == null) {
+                entries = new ArrayList<Entry>();
+                providers.put(section.service, entries);
+            }
+            entries.addAll(section.entries);
+            if (full) {
+                indexedServices.add(root + section.service);
+            }
+        }
+    }
+
+    /**
+     *      根路径下这个服务的配置文件是否与生成索引时一致：记录的配置文件内容不变，没有记录的配置文件不存在
+     */
+    private static boolean matchesInputs(String root, Section section) {
+        int matched = 0;
+        for (String dir : SERVICE_DIRECTORIES) {
+            String resourceName = dir + section.service;
+            String expected = section.inputs.get(resourceName);
+            String actual = checksum(root + resourceName);
+            if (expected == null ? actual != null : !expected.equals(actual)) {
+                return false;
+            }
+            if (expected != null) {
+                matched++;
+            }
+        }
+        // 记录了不在配置目录中的资源
+        return matched == section.inputs.size();
+    }
+
+    /**
+     *      资源内容的crc32（十六进制），资源不存在时返回null
+     */
+    private static String checksum(String resource) {
+        InputStream in;
+        try {
+            in = new URL(resource).openStream();
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            return checksum(in);
+        } catch (IOException e) {
+            // 读取失败时当作已经变化
+            return "";
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     *      计算输入流内容的crc32（十六进制），生成索引和运行时校验使用同一种计算方式
+     */
+    static String checksum(InputStream in) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            crc.update(buffer, 0, read);
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     *      索引资源中的一个服务分段
+     */
+    private static final class Section {
+
+        private final String service;
+        private final boolean partial;
+        private final List<Entry> entries = new ArrayList<Entry>();
+        // 配置文件资源名 --> crc32
+        private final Map<String, String> inputs = new LinkedHashMap<String, String>();
+        // 存在没有别名的条目（旧版本生成的索引）
+        private boolean unnamed;
+
+        private Section(String service, boolean partial) {
+            this.service = service;
+            this.partial = partial;
+        }
+    }
+
+    /**
+     *      索引条目： 别名 = 服务提供者全限定名
+     */
+    public static final class Entry {
+
+        private final String name;
+        private final String qualifiedName;
+
+        public Entry(String name, String qualifiedName) {
+            this.name = name;
+            this.qualifiedName = qualifiedName;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getQualifiedName() {
+            return qualifiedName;
+        }
+    }
+}
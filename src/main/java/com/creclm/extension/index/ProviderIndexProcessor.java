@@ -0,0 +1,252 @@
+package com.creclm.extension.index;
+
+import com.creclm.annotation.Provider;
+import com.creclm.annotation.SPI;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *      编译期服务提供者索引生成器
+ *
+ *      收集当前编译单元中标记了 Provider 注解的类，找到其实现的 SPI 接口，
+ *      再合并 class输出目录中这些服务的 META-INF 配置文件，最终写出一个 META-INF/creclm.index，
+ *      运行时 ServiceLoaderFactory 一次读取索引即可，不用再逐个目录查找配置文件
+ *
+ *      资源文件不一定在编译前拷贝到输出目录（Gradle、IDE），读取不到配置文件时不知道配置文件中还有什么：
+ *      只有服务的全部条目都来自读取到的配置文件、并且都有别名时才写 [服务全类名]（运行时不再读取配置文件），
+ *      否则写 [+服务全类名]，只包含注解中声明了别名的条目，运行时依旧读取这个根路径的配置文件
+ *
+ *      [服务全类名] 中同时记录读取的配置文件及其crc32，运行时配置文件变化后不再使用这个分段
+ */
+@SupportedAnnotationTypes("com.creclm.annotation.Provider")
+public class ProviderIndexProcessor extends AbstractProcessor {
+
+    // 服务全类名 --> [别名, 服务提供者全限定名]（注解中的别名可以为空）
+    private final Map<String, List<String[]>> annotatedProviders = new LinkedHashMap<String, List<String[]>>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(Provider.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+            TypeElement provider = (TypeElement) element;
+            String qualifiedName = processingEnv.getElementUtils().getBinaryName(provider).toString();
+            String name = provider.getAnnotation(Provider.class).value();
+            collectServices(provider.asType(), qualifiedName, name);
+        }
+        return false;
+    }
+
+    /**
+     *      递归查找实现的 SPI 接口
+     */
+    private void collectServices(TypeMirror type, String qualifiedName, String name) {
+        for (TypeMirror superType : processingEnv.getTypeUtils().directSupertypes(type)) {
+            if (!(superType instanceof DeclaredType)) {
+                continue;
+            }
+            TypeElement superElement = (TypeElement) ((DeclaredType) superType).asElement();
+            if (superElement.getKind() == ElementKind.INTERFACE && superElement.getAnnotation(SPI.class) != null) {
+                String service = processingEnv.getElementUtils().getBinaryName(superElement).toString();
+                List<String[]> providers = annotatedProviders.get(service);
+                if (providers == null) {
+                    providers = new ArrayList<String[]>();
+                    annotatedProviders.put(service, providers);
+                }
+                if (!contains(providers, name, qualifiedName)) {
+                    providers.add(new String[]{name, qualifiedName});
+                }
+            }
+            collectServices(superType, qualifiedName, name);
+        }
+    }
+
+    private void writeIndex() {
+        if (annotatedProviders.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject index = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", ProviderIndex.INDEX_RESOURCE);
+            Writer writer = index.openWriter();
+            try {
+                writer.write("# generated by " + ProviderIndexProcessor.class.getName() + "\n");
+                for (Map.Entry<String, List<String[]>> service : annotatedProviders.entrySet()) {
+                    Map<String, String> inputs = new LinkedHashMap<String, String>();
+                    List<String[]> files = readServiceFiles(service.getKey(), inputs);
+                    List<String[]> complete = files == null ? null : completeEntries(files, service.getValue());
+                    if (complete != null) {
+                        // 配置文件的全部条目（和运行时的加载顺序一致），配置文件不变时这个根路径不再读取配置文件
+                        writer.write("[" + service.getKey() + "]\n");
+                        for (Map.Entry<String, String> input : inputs.entrySet()) {
+                            writer.write(ProviderIndex.INPUT_PREFIX + input.getKey() + " = " + input.getValue() + "\n");
+                        }
+                        write(writer, complete);
+                    } else {
+                        // 只有注解中声明了别名的条目，运行时依旧读取配置文件
+                        List<String[]> named = new ArrayList<String[]>();
+                        for (String[] provider : service.getValue()) {
+                            if (provider[0].length() > 0) {
+                                named.add(provider);
+                            }
+                        }
+                        writer.write("[" + ProviderIndex.PARTIAL_PREFIX + service.getKey() + "]\n");
+                        write(writer, named);
+                    }
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "写出服务提供者索引失败：" + e.getMessage());
+        }
+    }
+
+    private static void write(Writer writer, List<String[]> providers) throws IOException {
+        for (String[] provider : providers) {
+            writer.write(provider[0] + " = " + provider[1] + "\n");
+        }
+    }
+
+    /**
+     *      配置文件能否完整地代替这个服务：每个注解的服务提供者都在配置文件中，并且每个条目都有别名
+     *      （配置文件中没有别名的条目使用注解的别名）
+     * @return 索引的条目，不能代替时返回null
+     */
+    private static List<String[]> completeEntries(List<String[]> files, List<String[]> annotated) {
+        for (String[] provider : annotated) {
+            boolean found = false;
+            for (String[] entry : files) {
+                found |= entry[1].equals(provider[1]);
+            }
+            if (!found) {
+                return null;
+            }
+        }
+        List<String[]> entries = new ArrayList<String[]>();
+        for (String[] entry : files) {
+            String name = entry[0];
+            for (int i = 0; i < annotated.size() && name.length() == 0; i++) {
+                if (annotated.get(i)[1].equals(entry[1])) {
+                    name = annotated.get(i)[0];
+                }
+            }
+            if (name.length() == 0) {
+                return null;
+            }
+            if (!contains(entries, name, entry[1])) {
+                entries.add(new String[]{name, entry[1]});
+            }
+        }
+        return entries;
+    }
+
+    private static boolean contains(List<String[]> providers, String name, String qualifiedName) {
+        for (String[] provider : providers) {
+            if (provider[0].equals(name) && provider[1].equals(qualifiedName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *      读取 class输出目录中某个服务的全部配置文件
+     * @param inputs 读取到的配置文件资源名 --> crc32
+     * @return [别名, 服务提供者全限定名]（按配置文件顺序），一个配置文件都没有读取到时返回null
+     */
+    private List<String[]> readServiceFiles(String service, Map<String, String> inputs) {
+        List<String[]> providers = new ArrayList<String[]>();
+        boolean read = false;
+        for (String dir : ProviderIndex.SERVICE_DIRECTORIES) {
+            BufferedReader reader;
+            try {
+                FileObject file = processingEnv.getFiler()
+                        .getResource(StandardLocation.CLASS_OUTPUT, "", dir + service);
+                byte[] content = readFully(file);
+                inputs.put(dir + service, ProviderIndex.checksum(new ByteArrayInputStream(content)));
+                reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), "utf-8"));
+                read = true;
+            } catch (Exception e) {
+                // 不存在这个配置文件
+                continue;
+            }
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int index = line.indexOf('#');
+                    if (index >= 0) {
+                        line = line.substring(0, index);
+                    }
+                    if (line.trim().length() == 0) {
+                        continue;
+                    }
+                    index = line.indexOf('=');
+                    String name = index < 0 ? "" : line.substring(0, index).trim();
+                    String qualifiedName = index < 0 ? line.trim() : line.substring(index + 1).trim();
+                    if (qualifiedName.length() > 0 && !contains(providers, name, qualifiedName)) {
+                        providers.add(new String[]{name, qualifiedName});
+                    }
+                }
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "读取服务配置文件失败：" + dir + service);
+            } finally {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        return read ? providers : null;
+    }
+
+    private static byte[] readFully(FileObject file) throws IOException {
+        InputStream in = file.openInputStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
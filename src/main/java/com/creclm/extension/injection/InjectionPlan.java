@@ -0,0 +1,180 @@
+package com.creclm.extension.injection;
+
+import com.creclm.annotation.Autowired;
+import com.creclm.annotation.DisableInject;
+import com.creclm.extension.loader.ServiceLoaderFactory;
+import com.creclm.extension.snapshot.ContainerSnapshot;
+import com.creclm.service.InjectionServiceFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *      每个Bean类的依赖注入计划（不可变）
+ *
+ *      第一次注入某个类时计算一次：查找setter和Autowired成员变量、计算注入别名、检查包装类、
+ *      解析包装类的泛型参数，并为每个注入点准备好 MethodHandle赋值器和反射赋值器。
+ *      之后同类实例的注入只是重放注入点，不再创建 Method[] / Field[] 数组和别名字符串；
+ *      类在容器快照中时，直接按快照记录的方法名和成员变量名定位注入点
+ */
+public final class InjectionPlan {
+
+    // 每个Class只计算一次注入计划
+    private static final ClassValue<InjectionPlan> PLANS = new ClassValue<InjectionPlan>() {
+        @Override
+        protected InjectionPlan computeValue(Class<?> type) {
+            return new InjectionPlan(type);
+        }
+    };
+
+    // 注入顺序：先setter注入，再Autowired注入
+    private final InjectionPoint[] points;
+
+    private InjectionPlan(Class<?> clazz) {
+        List<InjectionPoint> points = new ArrayList<InjectionPoint>();
+        List<ContainerSnapshot.Point> snapshot = ContainerSnapshot.getInjectionPoints(clazz);
+        if (snapshot == null || !snapshotPoints(clazz, snapshot, points)) {
+            setterPoints(clazz, points);
+            autowiredPoints(clazz, points);
+        }
+        this.points = points.toArray(new InjectionPoint[0]);
+    }
+
+    public static InjectionPlan forClass(Class<?> clazz) {
+        return PLANS.get(clazz);
+    }
+
+    /**
+     *      清除这个类的注入计划（Bean上下文关闭时调用）
+     */
+    public static void evict(Class<?> clazz) {
+        PLANS.remove(clazz);
+    }
+
+    /**
+     *      所有的注入点（只读）
+     */
+    public List<InjectionPoint> getPoints() {
+        return Collections.unmodifiableList(Arrays.asList(points));
+    }
+
+    /**
+     *      依赖注入
+     * @param instance  被注入的Bean对象
+     * @param factory   依赖查询工厂
+     * @param generated true 使用 MethodHandle赋值器，false 使用反射赋值器
+     */
+    public void inject(Object instance, InjectionServiceFactory factory, boolean generated) {
+        for (InjectionPoint point : points) {
+            point.inject(instance, factory, generated);
+        }
+    }
+
+    private static void setterPoints(Class<?> clazz, List<InjectionPoint> points) {
+        for (Method method : clazz.getMethods()) {
+            // 方法以set开头、长度大于3、修饰符是公共的、不存在 DisableInject注解
+            if (method.getName().startsWith("set") && method.getName().length() > 3
+                    && method.getParameterTypes().length == 1
+                    && Modifier.isPublic(method.getModifiers())
+                    && !method.isAnnotationPresent(DisableInject.class)) {
+                setterPoint(method, points);
+            }
+        }
+    }
+
+    private static void autowiredPoints(Class<?> clazz, List<InjectionPoint> points) {
+        for (Field field : clazz.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Autowired.class)) {
+                autowiredPoint(field, points);
+            }
+        }
+    }
+
+    /**
+     *      按容器快照中记录的注入点直接定位setter和成员变量，不再遍历所有方法和成员变量
+     * @return 快照中的注入点已经失效（方法或成员变量不存在）返回false
+     */
+    private static boolean snapshotPoints(Class<?> clazz, List<ContainerSnapshot.Point> snapshot,
+                                          List<InjectionPoint> points) {
+        try {
+            for (ContainerSnapshot.Point point : snapshot) {
+                if (point.isSetter()) {
+                    setterPoint(clazz.getMethod(point.getMember(),
+                            ContainerSnapshot.forName(point.getTypeName(), clazz.getClassLoader())), points);
+                } else {
+                    autowiredPoint(clazz.getDeclaredField(point.getMember()), points);
+                }
+            }
+            return true;
+        } catch (Throwable e) {
+            points.clear();
+            return false;
+        }
+    }
+
+    private static void setterPoint(Method method, List<InjectionPoint> points) {
+        try {
+            // 提取方法对应参数的属性名和类型
+            String paramName = method.getName().substring(3, 4).toLowerCase() + method.getName().substring(4);
+            Class<?> type = method.getParameterTypes()[0];
+            PropertyAccessor accessor = PropertyAccessors.generated(method);
+            PropertyAccessor reflective = PropertyAccessors.reflective(method);
+            if (ServiceLoaderFactory.isWrapperClass(type)) {
+                // 这里type虽然是包装Class对象，但是 getBeanInstance 是先通过别名获取对象的
+                points.add(wrapperPoint(method, type, type, paramName, accessor, reflective));
+            } else {
+                points.add(new InjectionPoint(method, type, paramName, accessor, reflective, null, null, null));
+            }
+        } catch (Throwable e) {
+        }
+    }
+
+    private static void autowiredPoint(Field field, List<InjectionPoint> points) {
+        try {
+            Class<?> type = field.getType();
+            PropertyAccessor accessor = PropertyAccessors.generated(field);
+            PropertyAccessor reflective = PropertyAccessors.reflective(field);
+            if (ServiceLoaderFactory.isWrapperClass(type)) {
+                // 包装类按泛型参数的类名首字母小写查询
+                ParameterizedType parameterizedType = (ParameterizedType) field.getGenericType();
+                Class<?> aclass = (Class<?>) parameterizedType.getActualTypeArguments()[0];
+                String paramName = aclass.getSimpleName().substring(0, 1).toLowerCase() + aclass.getSimpleName().substring(1);
+                points.add(wrapperPoint(field, type, aclass, paramName, accessor, reflective));
+            } else {
+                String paramName;
+                if (field.getAnnotation(Autowired.class).value().equals("")) {
+                    paramName = type.getName().substring(0, 1).toLowerCase()
+                            + type.getName().substring(1);
+                } else {
+                    paramName = field.getAnnotation(Autowired.class).value();
+                }
+                points.add(new InjectionPoint(field, type, paramName, accessor, reflective, null, null, null));
+            }
+        } catch (Throwable e) {
+        }
+    }
+
+    private static InjectionPoint wrapperPoint(Member member, Class<?> wrapperType, Class<?> lookupType, String name,
+                                               PropertyAccessor accessor, PropertyAccessor reflective) {
+        Method set = null;
+        for (Method md : wrapperType.getDeclaredMethods()) {
+            if (md.getName().equals("set")) {
+                set = md;
+            }
+        }
+        MethodHandle constructor = PropertyAccessors.constructor(wrapperType);
+        if (set == null || constructor == null) {
+            throw new IllegalStateException("包装类" + wrapperType.getName() + "不能实例化或者不存在set方法");
+        }
+        return new InjectionPoint(member, lookupType, name, accessor, reflective, constructor,
+                PropertyAccessors.generated(set), PropertyAccessors.reflective(set));
+    }
+}
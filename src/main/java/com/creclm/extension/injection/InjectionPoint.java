@@ -0,0 +1,74 @@
+package com.creclm.extension.injection;
+
+import com.creclm.service.InjectionServiceFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Member;
+
+/**
+ *      注入计划中的一个注入点（一个setter方法或者一个Autowired成员变量）
+ */
+public final class InjectionPoint {
+
+    // 注入的setter方法或者成员变量
+    private final Member member;
+    // 查询依赖使用的类型和别名
+    private final Class<?> type;
+    private final String name;
+    // 写入目标Bean
+    private final PropertyAccessor accessor;
+    private final PropertyAccessor reflectiveAccessor;
+    // 包装类的构造器和set方法，非包装类为null
+    private final MethodHandle wrapperConstructor;
+    private final PropertyAccessor wrapperAccessor;
+    private final PropertyAccessor reflectiveWrapperAccessor;
+
+    InjectionPoint(Member member, Class<?> type, String name, PropertyAccessor accessor,
+                   PropertyAccessor reflectiveAccessor, MethodHandle wrapperConstructor,
+                   PropertyAccessor wrapperAccessor, PropertyAccessor reflectiveWrapperAccessor) {
+        this.member = member;
+        this.type = type;
+        this.name = name;
+        this.accessor = accessor;
+        this.reflectiveAccessor = reflectiveAccessor;
+        this.wrapperConstructor = wrapperConstructor;
+        this.wrapperAccessor = wrapperAccessor;
+        this.reflectiveWrapperAccessor = reflectiveWrapperAccessor;
+    }
+
+    // 注入的setter方法（Method）或者Autowired成员变量（Field）
+    public Member getMember() {
+        return member;
+    }
+
+    // 查询依赖的类型（包装类注入点为包装的泛型参数类型或包装类本身）
+    public Class<?> getType() {
+        return type;
+    }
+
+    // 查询依赖的别名
+    public String getName() {
+        return name;
+    }
+
+    public boolean isWrapper() {
+        return wrapperConstructor != null;
+    }
+
+    void inject(Object instance, InjectionServiceFactory factory, boolean generated) {
+        try {
+            Object object = factory.getBeanInstance(type, name);
+            if (object == null) {
+                return;
+            }
+            if (wrapperConstructor != null) {
+                // 先注入包装类，再注入内部
+                Object wrapper = (Object) wrapperConstructor.invokeExact();
+                (generated ? wrapperAccessor : reflectiveWrapperAccessor).set(wrapper, object);
+                object = wrapper;
+            }
+            (generated ? accessor : reflectiveAccessor).set(instance, object);
+        } catch (Throwable e) {
+        }
+    }
+}
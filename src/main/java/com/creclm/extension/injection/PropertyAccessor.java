@@ -0,0 +1,14 @@
+package com.creclm.extension.injection;
+
+/**
+ *      属性赋值器：把依赖对象写入目标Bean的一个setter方法或者成员变量
+ */
+@FunctionalInterface
+public interface PropertyAccessor {
+
+    /**
+     * @param target 被注入的Bean对象
+     * @param value  注入的依赖对象
+     */
+    void set(Object target, Object value) throws Throwable;
+}
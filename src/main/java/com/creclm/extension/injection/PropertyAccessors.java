@@ -0,0 +1,94 @@
+package com.creclm.extension.injection;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ *      属性赋值器工厂
+ *
+ *      generated： 通过 MethodHandle 直接调用 setter / 写成员变量，只在第一次生成时做访问检查，
+ *                  之后每次注入不再经过反射的参数数组封装和访问检查
+ *      reflective： 通过 Method.invoke / Field.set 反射注入，生成失败时回退到这种方式
+ */
+public final class PropertyAccessors {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private PropertyAccessors() {
+    }
+
+    /**
+     *      生成setter方法的赋值器
+     */
+    public static PropertyAccessor generated(Method method) {
+        try {
+            method.setAccessible(true);
+            MethodHandle handle = LOOKUP.unreflect(method).asType(ACCESSOR_TYPE);
+            return (target, value) -> {
+                handle.invokeExact(target, value);
+            };
+        } catch (Throwable e) {
+            // 静态方法、模块不开放等情况
+            return reflective(method);
+        }
+    }
+
+    /**
+     *      生成成员变量的赋值器
+     */
+    public static PropertyAccessor generated(Field field) {
+        try {
+            field.setAccessible(true);
+            MethodHandle handle = LOOKUP.unreflectSetter(field).asType(ACCESSOR_TYPE);
+            return (target, value) -> {
+                handle.invokeExact(target, value);
+            };
+        } catch (Throwable e) {
+            // final 变量等情况
+            return reflective(field);
+        }
+    }
+
+    /**
+     *      反射调用setter方法的赋值器
+     */
+    public static PropertyAccessor reflective(Method method) {
+        return (target, value) -> {
+            try {
+                method.invoke(target, value);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        };
+    }
+
+    /**
+     *      反射写成员变量的赋值器
+     */
+    public static PropertyAccessor reflective(Field field) {
+        field.setAccessible(true);
+        return field::set;
+    }
+
+    /**
+     *      生成无参构造函数的调用句柄（用于创建包装类），不存在可访问的无参构造返回null
+     */
+    public static MethodHandle constructor(Class<?> clazz) {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return LOOKUP.unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.creclm.extension.lifecycle;
+
+import com.creclm.annotation.Init;
+import com.creclm.extension.executor.ContainerExecutors;
+import com.creclm.extension.monitor.Monitors;
+import com.creclm.service.ContainerMonitor;
+import com.sun.org.slf4j.internal.Logger;
+import com.sun.org.slf4j.internal.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ *      Bean / 服务提供者的初始化（Init注解的方法）
+ *
+ *      初始化方法按类缓存，父类的先调用；返回 CompletionStage 的初始化方法，阶段完成后才调用下一个
+ *      异步初始化在初始化执行器（见 ContainerExecutors）上进行，慢的I/O初始化互相重叠，不再串行阻塞启动
+ */
+public final class Lifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(Lifecycle.class);
+
+    // 类 --> Init注解的方法（父类在前）
+    private static final ClassValue<Method[]> INIT_METHODS = new ClassValue<Method[]>() {
+        @Override
+        protected Method[] computeValue(Class<?> type) {
+            return findInitMethods(type);
+        }
+    };
+
+    private Lifecycle() {
+    }
+
+    // 初始化使用的执行器，见 ContainerExecutors
+    public static Executor getInitExecutor() {
+        return ContainerExecutors.getInitExecutor();
+    }
+
+    /**
+     * 设置初始化使用的执行器，传入 Runnable::run 则在完成依赖初始化的线程上执行
+     */
+    public static void setInitExecutor(Executor executor) {
+        ContainerExecutors.setInitExecutor(executor);
+    }
+
+    // 类是否存在初始化方法
+    public static boolean hasInit(Class<?> clazz) {
+        return INIT_METHODS.get(clazz).length > 0;
+    }
+
+    /**
+     *      在调用线程上调用初始化方法
+     * @param bean
+     * @return 初始化完成后完成（结果为bean），初始化方法抛出异常则异常完成
+     */
+    public static CompletableFuture<Object> initialize(Object bean) {
+        Method[] methods = INIT_METHODS.get(bean.getClass());
+        if (methods.length == 0) {
+            return CompletableFuture.completedFuture(bean);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Object> future = invoke(bean, methods, 0);
+        future.whenComplete((result, e) ->
+                Monitors.get().phase(ContainerMonitor.INIT, bean.getClass().getName(), System.nanoTime() - start));
+        return future;
+    }
+
+    /**
+     *      依赖的初始化完成后，在初始化执行器上调用初始化方法
+     * @param bean
+     * @param after 依赖的初始化（依赖初始化失败不影响这个Bean的初始化）
+     * @return
+     */
+    public static CompletableFuture<Object> initializeAsync(Object bean, CompletableFuture<?> after) {
+        if (!hasInit(bean.getClass())) {
+            // 没有初始化方法：依赖初始化完成就算完成，不用切换线程
+            return after.handle((result, e) -> bean);
+        }
+        Executor executor = ContainerExecutors.getInitExecutor();
+        return after.handle((result, e) -> bean)
+                .thenComposeAsync(Lifecycle::initialize, executor);
+    }
+
+    private static CompletableFuture<Object> invoke(Object bean, Method[] methods, int from) {
+        for (int i = from; i < methods.length; i++) {
+            Object result;
+            try {
+                result = methods[i].invoke(bean);
+            } catch (InvocationTargetException e) {
+                return failed(e.getCause());
+            } catch (Throwable e) {
+                return failed(e);
+            }
+            if (result instanceof CompletionStage) {
+                // 异步初始化：阶段完成后再调用后面的初始化方法
+                int next = i + 1;
+                return ((CompletionStage<?>) result).toCompletableFuture()
+                        .thenCompose(r -> invoke(bean, methods, next));
+            }
+        }
+        return CompletableFuture.completedFuture(bean);
+    }
+
+    private static CompletableFuture<Object> failed(Throwable e) {
+        CompletableFuture<Object> future = new CompletableFuture<Object>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static Method[] findInitMethods(Class<?> type) {
+        List<Method> methods = new ArrayList<Method>();
+        // 子类重写的初始化方法只调用一次
+        Set<String> names = new HashSet<String>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            List<Method> declared = new ArrayList<Method>();
+            for (Method method : c.getDeclaredMethods()) {
+                if (!method.isAnnotationPresent(Init.class)) {
+                    continue;
+                }
+                if (method.getParameterTypes().length != 0 || Modifier.isStatic(method.getModifiers())
+                        || (method.getReturnType() != void.class
+                        && !CompletionStage.class.isAssignableFrom(method.getReturnType()))) {
+                    logger.error("Init注解的方法必须是没有参数的实例方法，返回void或者CompletionStage：" + method);
+                    continue;
+                }
+                if (names.add(method.getName())) {
+                    method.setAccessible(true);
+                    declared.add(method);
+                }
+            }
+            methods.addAll(0, declared);
+        }
+        return methods.toArray(new Method[0]);
+    }
+}
@@ -1,25 +1,49 @@
 package com.creclm.extension.loader;
 
 import com.creclm.adapter.InjectionAdapter;
+import com.creclm.adapter.LazyInjectionFactory;
 import com.creclm.annotation.*;
+import com.creclm.extension.adaptive.AdaptiveClassGenerator;
 import com.creclm.service.InjectionServiceFactory;
 import com.creclm.extension.cache.BeanCacheFactory;
+import com.creclm.extension.cache.BeanContext;
+import com.creclm.extension.executor.ContainerExecutors;
+import com.creclm.extension.index.ExtensionResourceIndex;
+import com.creclm.extension.index.ProviderIndex;
+import com.creclm.extension.lifecycle.Lifecycle;
+import com.creclm.extension.monitor.Monitors;
+import com.creclm.extension.select.ProviderGroup;
+import com.creclm.extension.snapshot.ContainerSnapshot;
+import com.creclm.service.ContainerMonitor;
+import com.creclm.service.SelectStrategy;
 import com.creclm.extension.support.Holder;
 import com.creclm.util.SystemResourcesUtil;
 import com.sun.org.slf4j.internal.Logger;
 import com.sun.org.slf4j.internal.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.TypeVariable;
+import java.io.IOException;
 import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 import static com.creclm.util.InjectionUtil.injection;
 
@@ -45,22 +69,85 @@ public class ServiceLoaderFactory<T> {
 
     private static final String INJECTION_ADAPTER_MANAGER_NAME = "injectionManager";
 
+    // 查询激活缓存时使用的key（每个线程一个，查询时不分配对象）
+    private static final ThreadLocal<ActivateKey> ACTIVATE_PROBES = new ThreadLocal<ActivateKey>() {
+        @Override
+        protected ActivateKey initialValue() {
+            return new ActivateKey();
+        }
+    };
+
+    // 是否是装饰类（Decorator 注解），每个类只判断一次
+    private static final ClassValue<Boolean> DECORATOR_CLASSES = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return type.isAnnotationPresent(Decorator.class);
+        }
+    };
+
+    // select(key) 默认选择策略的系统属性
+    public static final String SELECT_PROPERTY = "creclm.select";
+
     // 依赖注入模块实现的目标工厂
     private final Holder<InjectionServiceFactory> injectionProviderFactory = new Holder<InjectionServiceFactory>();
 
     // 当前扩展加载器服务类Class对象  始终是一个标记了@SPI的 接口类型
     private final Holder<Class<?>> service = new Holder<Class<?>>();
 
+    // 创建这个加载工厂时的Bean上下文，服务提供者的Class对象和实例化对象都缓存在这个上下文中
+    private final BeanContext context;
+
+    // 外部别名 --> 服务提供者实例的包装对象，每个别名一个包装对象，实例化时只锁这个包装对象
+    private final ConcurrentMap<String, Holder<Object>> cachedInstances = new ConcurrentHashMap<String, Holder<Object>>();
+
+    // 外部别名 --> 热加载的服务提供者所在的类加载器
+    private final ConcurrentMap<String, URLClassLoader> reloadedLoaders = new ConcurrentHashMap<String, URLClassLoader>();
+
+    // 外部别名 --> 正在创建（实例化、依赖注入、初始化）的服务提供者
+    private final ConcurrentMap<String, Creation> pendingInstances = new ConcurrentHashMap<String, Creation>();
+
+    // 加载过的服务提供者的外部别名（包括热加载的），select 从这些服务提供者中选择
+    private final Set<String> providerNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // select 使用的全部服务提供者，第一次选择时创建，热加载之后重新创建
+    private volatile ProviderGroup<T> providerGroup;
+
+    // 策略别名 --> 选择策略
+    private final ConcurrentMap<String, SelectStrategy> strategies = new ConcurrentHashMap<String, SelectStrategy>();
+
+    // 装饰类的构造函数（参数是服务接口），外层在前，见 Order 注解
+    private volatile Constructor<?>[] decorators = new Constructor<?>[0];
+
+    // 是否读取过一次全部服务提供者（装饰类在读取时发现）
+    private volatile boolean providersLoaded;
+
+    // 激活缓存，版本号与 reloads 不一致时（热加载之后）整体重建
+    private volatile ActivateCache<T> activateCache;
+
+    // 热加载的次数
+    private volatile int reloads;
+
+    // 自适应服务提供者，第一次获取时生成
+    private final Holder<T> adaptiveInstance = new Holder<T>();
+
+    // select(key) 使用的策略别名
+    private volatile String defaultStrategy = System.getProperty(SELECT_PROPERTY, SelectStrategy.ROUND_ROBIN);
+
     public Holder<InjectionServiceFactory> getInjectionProviderFactory() {
         return injectionProviderFactory;
     }
 
     // 服务加载器工厂构造函数
-    private ServiceLoaderFactory(Class<?> service) {
+    private ServiceLoaderFactory(Class<?> service, BeanContext context) {
+        this(service, context, true);
+    }
+
+    private ServiceLoaderFactory(Class<?> service, BeanContext context, boolean initInjection) {
         this.service.set(service);
+        this.context = context;
 
         // 任何服务工厂的初始化之前都要先初始化这个依赖注入的服务工厂
-        if (service != InjectionServiceFactory.class) {
+        if (initInjection && service != InjectionServiceFactory.class) {
             ServiceLoaderFactory<InjectionServiceFactory> factory =
                     ServiceLoaderFactory.providersLoader(InjectionServiceFactory.class);
             InjectionAdapter adapter = (InjectionAdapter)
@@ -75,13 +162,26 @@ public class ServiceLoaderFactory<T> {
      * @return
      */
     public T loadInjectionInstance() {
+        if (context.getCacheInjectionAdapterInstance().get() != null) {
+            return (T) context.getCacheInjectionAdapterInstance().get();
+        }
+        // 服务提供者的依赖注入在这个加载工厂的上下文中进行
+        BeanContext previous = BeanCacheFactory.bindContext(context);
+        try {
+            return createInjectionInstance();
+        } finally {
+            BeanCacheFactory.bindContext(previous);
+        }
+    }
+
+    private T createInjectionInstance() {
         String adapterName = null;
         InjectionAdapter ret;
         // 获取依赖注入适配器实例对象
-        Holder<Object> instance = BeanCacheFactory.getCacheInjectionAdapterInstance();
+        Holder<Object> instance = context.getCacheInjectionAdapterInstance();
         if (instance.get() == null) {
             synchronized (this) {
-                instance = BeanCacheFactory.getCacheInjectionAdapterInstance();
+                instance = context.getCacheInjectionAdapterInstance();
                 if (instance.get() == null) {
                     Map<String, Class<?>> providerClasses = this.loadAllProviders();
                     Class<?> clazz = null;
@@ -89,32 +189,40 @@ public class ServiceLoaderFactory<T> {
                         // 需要缓存 适配器 的Class和实例以及全局实例（全局Class不用缓存）
                         for (String name : providerClasses.keySet()) {
                             clazz = providerClasses.get(name);
-                            if (clazz == null) continue;
+                            if (clazz == null || isDecoratorClass(clazz)) continue;
                             // 缓存实例化的provider对象 （这里是依赖注入的对象）
                             if (clazz.isAnnotationPresent(Adapter.class)
-                                    && BeanCacheFactory.getCacheInjectionAdapterInstance().get() == null) {
-                                BeanCacheFactory.getCacheInjectionAdapterClass().set(clazz);
+                                    && context.getCacheInjectionAdapterInstance().get() == null) {
+                                context.getCacheInjectionAdapterClass().set(clazz);
                                 Object instanceTmp = injection(clazz.newInstance());
                                 instance.set(instanceTmp);
                                 adapterName = name;
-                                BeanCacheFactory.addInstanceToCacheIfAbsent(adapterName, instanceTmp);
+                                context.addInstanceToCacheIfAbsent(adapterName, instanceTmp);
                             } else if (clazz.isAnnotationPresent(Adapter.class)
-                                    && BeanCacheFactory.getCacheInjectionAdapterInstance().get().getClass() != clazz) {
+                                    && context.getCacheInjectionAdapterInstance().get().getClass() != clazz) {
                                 logger.error("不能实例化两个不同的依赖注入适配者实例对象");
                                 throw new IllegalStateException("不能实例化两个不同的依赖注入适配者实例对象");
+                            } else if (!clazz.isAnnotationPresent(Adapter.class) && isLazyProvider(clazz)) {
+                                // 懒加载的provider只缓存Class对象，第一次使用时实例化
+                                context.registerLazyBean(name, clazz);
                             } else if (!clazz.isAnnotationPresent(Adapter.class)
-                                    && BeanCacheFactory.getLoadedInstance(clazz) == null) {
-                                BeanCacheFactory.addInstanceToCacheIfAbsent(name, injection(clazz.newInstance()));
+                                    && context.getLoadedInstance(clazz) == null) {
+                                context.addInstanceToCacheIfAbsent(name, injection(clazz.newInstance()));
                             } else if (!clazz.isAnnotationPresent(Adapter.class)
-                                    && BeanCacheFactory.getLoadedInstance(clazz).getClass() != clazz) {
+                                    && context.getLoadedInstance(clazz).getClass() != clazz) {
                                 logger.debug("已经实例化过了这个对象哦" + clazz.getName());
                             }
                         }
-                        ret = (InjectionAdapter) BeanCacheFactory.getCacheInjectionAdapterInstance().get();
+                        ret = (InjectionAdapter) context.getCacheInjectionAdapterInstance().get();
                         // 将其他的服务提供者缓存进入adapter适配器进行管理（依赖注入）
                         for (String name : providerClasses.keySet()) {
-                            if (!name.equals(adapterName)) {
-                                Object implTmp = BeanCacheFactory.getLoadedInstance(providerClasses.get(name));
+                            if (isDecoratorClass(providerClasses.get(name))) {
+                                continue;
+                            }
+                            if (!name.equals(adapterName) && context.isLazyBean(name)) {
+                                ret.getImpls().add(new LazyInjectionFactory(name));
+                            } else if (!name.equals(adapterName)) {
+                                Object implTmp = context.getLoadedInstance(providerClasses.get(name));
                                 ret.getImpls().add((InjectionServiceFactory) implTmp);
                             }
                         }
@@ -124,7 +232,18 @@ public class ServiceLoaderFactory<T> {
                 }
             }
         }
-        return (T) BeanCacheFactory.getCacheInjectionAdapterInstance().get();
+        return (T) context.getCacheInjectionAdapterInstance().get();
+    }
+
+    /**
+     * 是否懒加载这个服务提供者：全局懒加载模式 或者 Provider注解配置了懒加载
+     *
+     * @param clazz
+     * @return
+     */
+    private static boolean isLazyProvider(Class<?> clazz) {
+        return BeanCacheFactory.isLazyMode()
+                || (clazz.isAnnotationPresent(Provider.class) && clazz.getAnnotation(Provider.class).lazy());
     }
 
     /**
@@ -134,12 +253,41 @@ public class ServiceLoaderFactory<T> {
      * @return
      */
     private <T> Map<String, Class<?>> loadAllProviders() {
+        long start = System.nanoTime();
         Map<String, Class<?>> providerClasses = new HashMap<String, Class<?>>();
-        this.loadServiceDirectory(providerClasses, ServiceLoaderFactory.CRECLM_INTERNAL_DIRECTORY);
-        this.loadServiceDirectory(providerClasses, ServiceLoaderFactory.CRECLM_DIRECTORY);
-        this.loadServiceDirectory(providerClasses, ServiceLoaderFactory.CRECLM_TEST_DIRECTORY);
-        this.loadServiceDirectory(providerClasses, ServiceLoaderFactory.SERVICES_DIRECTORY);
-        if (providerClasses.size() == 0) {
+        ClassLoader classLoader = SystemResourcesUtil.getClassLoader(this.getClass());
+        // 容器快照记录了这个服务的提供者，就不再读取索引和配置文件
+        List<String[]> snapshot = ContainerSnapshot.getProviders(classLoader, this.service.get().getName());
+        if (snapshot != null) {
+            for (String[] provider : snapshot) {
+                this.loadProviderClass(providerClasses, provider[0], provider[1], classLoader);
+            }
+        } else {
+            // 先读取编译期生成的索引，被索引覆盖的根路径不再读取配置文件
+            ProviderIndex index = ProviderIndex.getIndex(classLoader);
+            this.loadServiceIndex(providerClasses, index, classLoader);
+            List<URL> urls = new ArrayList<URL>();
+            this.findServiceResources(urls, ServiceLoaderFactory.CRECLM_INTERNAL_DIRECTORY, index, classLoader);
+            this.findServiceResources(urls, ServiceLoaderFactory.CRECLM_DIRECTORY, index, classLoader);
+            this.findServiceResources(urls, ServiceLoaderFactory.CRECLM_TEST_DIRECTORY, index, classLoader);
+            this.findServiceResources(urls, ServiceLoaderFactory.SERVICES_DIRECTORY, index, classLoader);
+            // 配置文件在资源执行器上并行读取，按目录顺序加载服务提供者
+            for (List<String[]> entries : this.readServiceResources(urls)) {
+                for (String[] entry : entries) {
+                    this.loadProviderClass(providerClasses, entry[0], entry[1], classLoader);
+                }
+            }
+        }
+        Monitors.get().phase(ContainerMonitor.RESOURCE_DISCOVERY, this.service.get().getName(), System.nanoTime() - start);
+        providersLoaded = true;
+        // 装饰类不注册，每次都会重新读取到，不算新的服务提供者
+        int decoratorCount = 0;
+        for (Class<?> clazz : providerClasses.values()) {
+            if (isDecoratorClass(clazz)) {
+                decoratorCount++;
+            }
+        }
+        if (providerClasses.size() == decoratorCount) {
             throw new IllegalStateException("初始化加载依赖注入provider错误");
         }
         logger.debug("加载" + providerClasses.size() + "个依赖注入provider");
@@ -148,35 +296,56 @@ public class ServiceLoaderFactory<T> {
     }
 
     /**
-     * 加载对应服务 dir 的服务提供商（providers）资源 到 extensionClasses中
+     * 加载编译期索引中对应服务的服务提供商（providers） 到 extensionClasses中
      *
      * @param providerClasses
+     * @param index
+     * @param classLoader
+     */
+    private void loadServiceIndex(Map<String, Class<?>> providerClasses, ProviderIndex index, ClassLoader classLoader) {
+        for (ProviderIndex.Entry entry : index.getProviders(this.service.get().getName())) {
+            this.loadProviderClass(providerClasses, entry.getName(), entry.getQualifiedName(), classLoader);
+        }
+    }
+
+    /**
+     * 查找对应服务 dir 的服务提供商（providers）资源，跳过被索引覆盖的资源
+     * 优先从资源索引（每个类加载器只遍历一次类路径）中查询，没有建立索引才调用 getResources
+     *
+     * @param urls
      * @param dir
+     * @param index
+     * @param classLoader
      */
-    private void loadServiceDirectory(Map<String, Class<?>> providerClasses, String dir) {
+    private void findServiceResources(List<URL> urls, String dir, ProviderIndex index, ClassLoader classLoader) {
         // 读取 dir目录下的的 type服务Service接口的内容，查询是否存在服务提供商 Provider
         // this.service.getName获取当前type的Class对象的全限定名
         String fileName = dir + this.service.get().getName();
         try {
-            ClassLoader classLoader = SystemResourcesUtil.getClassLoader(this.getClass());
-            // Enumeration是一种特殊的枚举抽象接口，实现类会实现迭代器
-            Enumeration<URL> urls;
-            if (classLoader != null) {
-                // 根据fileName查找 类输出目录（target）下面的资源
-                urls = classLoader.getResources(fileName);
-            } else {
-                // 直接用 Java 运行时环境(JRE)提供的系统类加载器
-                urls = ClassLoader.getSystemResources(fileName);
-            }
-            if (urls != null) {
-                // 存在多个资源时, 遍历所有的资源url
-                while (urls.hasMoreElements()) {
-                    URL url = urls.nextElement();
-                    logger.debug("存在这个资源文件 url：" + url);
-                    this.loadServiceResource(providerClasses, url, classLoader);
+            List<URL> resources = ExtensionResourceIndex.getIndex(classLoader).getResources(fileName);
+            if (resources == null) {
+                resources = new ArrayList<URL>();
+                // Enumeration是一种特殊的枚举抽象接口，实现类会实现迭代器
+                Enumeration<URL> enumeration;
+                if (classLoader != null) {
+                    // 根据fileName查找 类输出目录（target）下面的资源
+                    enumeration = classLoader.getResources(fileName);
+                } else {
+                    // 直接用 Java 运行时环境(JRE)提供的系统类加载器
+                    enumeration = ClassLoader.getSystemResources(fileName);
                 }
-            } else {
-                logger.error(fileName + " 文件不存在");
+                while (enumeration.hasMoreElements()) {
+                    resources.add(enumeration.nextElement());
+                }
+            }
+            // 存在多个资源时, 遍历所有的资源url
+            for (URL url : resources) {
+                if (index.isIndexed(url, fileName, this.service.get().getName())) {
+                    logger.debug("资源文件已被索引覆盖 url：" + url);
+                    continue;
+                }
+                logger.debug("存在这个资源文件 url：" + url);
+                urls.add(url);
             }
         } catch (Throwable e) {
             logger.error("加载扩展服务 " + this.service.get().getName() + " 的Providers失败");
@@ -184,49 +353,42 @@ public class ServiceLoaderFactory<T> {
     }
 
     /**
-     * 加载 url 对应服务的服务提供商（providers）资源到 extensionClasses中
+     * 读取所有资源，多个资源时在资源执行器上并行读取，结果和资源顺序一致
+     *
+     * @param urls
+     * @return
+     */
+    private List<List<String[]>> readServiceResources(List<URL> urls) {
+        List<List<String[]>> contents = new ArrayList<List<String[]>>(urls.size());
+        if (urls.size() <= 1) {
+            for (URL url : urls) {
+                contents.add(this.readServiceResource(url));
+            }
+            return contents;
+        }
+        Executor executor = ContainerExecutors.getResourceExecutor();
+        List<CompletableFuture<List<String[]>>> futures = new ArrayList<CompletableFuture<List<String[]>>>(urls.size());
+        for (URL url : urls) {
+            futures.add(CompletableFuture.supplyAsync(() -> this.readServiceResource(url), executor));
+        }
+        for (CompletableFuture<List<String[]>> future : futures) {
+            contents.add(future.join());
+        }
+        return contents;
+    }
+
+    /**
+     * 读取 url 对应服务的服务提供商（providers）资源，内容缓存在资源索引中
      *
-     * @param providerClasses
      * @param url
-     * @param classLoader
+     * @return [别名, 全限定名]，读取失败时返回空集合
      */
-    private void loadServiceResource(Map<String, Class<?>> providerClasses, URL url, ClassLoader classLoader) {
+    private List<String[]> readServiceResource(URL url) {
         try {
-            // 使用 url 打开一个文件输出流
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(url.openStream(), "utf-8"));
-            String line;
-            try {
-                // 逐行读取
-                String name;
-                String qualifiedName;
-                while ((line = reader.readLine()) != null) {
-                    // 解析抛弃注释信息   name=xxx.xxx.xxx(全限定名)
-                    int index = line.indexOf(35);  // 注释信息 # 的索引
-                    if (index >= 0) {
-                        line = line.substring(0, index); // 截断注释信息
-                    }
-                    if (line.length() > 0) {
-                        index = line.indexOf(61); // 等于号 =
-                        // 可以没有等于号，就是在Provider注解上备注了别名
-                        if (index < 0) {
-                            name = "";
-                            qualifiedName = line.trim();
-                        } else {
-                            name = line.substring(0, index).trim();
-                            qualifiedName = line.substring(index + 1).trim();
-                        }
-
-                        if (qualifiedName.length() > 0) {
-                            this.loadProviderClass(providerClasses, name, qualifiedName, classLoader);
-                        }
-                    }
-                }
-            } catch (Throwable e) {
-                logger.error("读取服务扩展文件" + this.service.toString() + "失败，class文件资源在" + url + "这个url中");
-            }
+            return ExtensionResourceIndex.getIndex(SystemResourcesUtil.getClassLoader(this.getClass())).getEntries(url);
         } catch (Throwable e) {
-            logger.error("打开服务扩展文件" + this.service.toString() + "失败，class文件资源在" + url + "这个url中");
+            logger.error("读取服务扩展文件" + this.service.toString() + "失败，class文件资源在" + url + "这个url中");
+            return Collections.emptyList();
         }
     }
 
@@ -242,12 +404,15 @@ public class ServiceLoaderFactory<T> {
                                    String qualifiedName, ClassLoader classLoader) {
         // 查询缓存是否存在这个Class对象
         String aliasName = getAliasName(name);
-        if (BeanCacheFactory.getLoadedClass(aliasName) != null) {
+        if (context.getLoadedClass(aliasName) != null) {
+            providerNames.add(name);
             return;
         }
         Class<?> clazz;
         try {
+            long start = System.nanoTime();
             clazz = Class.forName(qualifiedName, true, classLoader);
+            Monitors.get().phase(ContainerMonitor.CLASS_LOADING, qualifiedName, System.nanoTime() - start);
             // 进行类的检查
             if (!this.service.get().isAssignableFrom(clazz)) {
                 throw new IllegalStateException("提供商" + clazz.getName() + "不是服务"
@@ -255,15 +420,15 @@ public class ServiceLoaderFactory<T> {
             }
             // 检查类是否是依赖注入自适应扩展工厂 即标记了InjectionAdapter注解的类
             if (clazz.isAnnotationPresent(Adapter.class)) {
-                Holder<Class<?>> adapterClass = BeanCacheFactory.getCacheInjectionAdapterClass();
+                Holder<Class<?>> adapterClass = context.getCacheInjectionAdapterClass();
                 if (adapterClass.get() == null) {
                     // adapterClass为null，就加载为这个clazz
                     synchronized (this) {
-                        adapterClass = BeanCacheFactory.getCacheInjectionAdapterClass();
+                        adapterClass = context.getCacheInjectionAdapterClass();
                         if (adapterClass.get() == null) {
                             // 将这个Clazz对象也注入到Bean工厂的adapterClass和全局Class中
                             adapterClass.set(clazz);
-                            BeanCacheFactory.addClassToCacheIfAbsent(aliasName, adapterClass.get());
+                            context.addClassToCacheIfAbsent(aliasName, adapterClass.get());
                         }
                     }
                 } else if (clazz.equals(adapterClass.get())) {
@@ -271,11 +436,17 @@ public class ServiceLoaderFactory<T> {
                     throw new IllegalStateException("不能同时存在多个适配器类，请检查 " +
                             adapterClass.get() + "和" + clazz + "是否同时注解了InjectionAdapter");
                 }
+            } else if (isDecoratorClass(clazz)) {
+                // 装饰类不注册别名，实例化服务提供者时叠加在外面；没有别名时用全类名（容器快照需要记录）
+                this.addDecorator(clazz);
+                if ("".equals(name)) {
+                    aliasName = getAliasName(clazz.getName());
+                }
             } else if (isWrapperClass(clazz)) {
                 // 如果是包装类，就将这个包装类的value存入Class对象中
                 Class<?> type = clazz.getField("value").getType();
                 String nameTmp = type.getName().substring(0, 1).toLowerCase() + type.getName().substring(1);
-                BeanCacheFactory.addClassToCacheIfAbsent(nameTmp, type);
+                context.addClassToCacheIfAbsent(nameTmp, type);
             }else if (clazz.isAnnotationPresent(other.class)) {
                 // TODO 功能扩充点
 
@@ -293,13 +464,13 @@ public class ServiceLoaderFactory<T> {
                 }
 
                 // 全局不存在这者服务提供者Class对象
-                Class<?> loadedClass = BeanCacheFactory.getLoadedClass(aliasName, clazz);
+                Class<?> loadedClass = context.getLoadedClass(aliasName, clazz);
                 if (loadedClass == null) {
                     synchronized (this) {
-                        loadedClass = BeanCacheFactory.getLoadedClass(aliasName, clazz);
+                        loadedClass = context.getLoadedClass(aliasName, clazz);
                         if (loadedClass == null) {
                             // 进入Bean池缓存记录
-                            BeanCacheFactory.addClassToCacheIfAbsent(aliasName, clazz);
+                            context.addClassToCacheIfAbsent(aliasName, clazz);
                         }
                     }
                 }
@@ -307,6 +478,9 @@ public class ServiceLoaderFactory<T> {
             // 统一进行处理 providerClasses
             if (!providerClasses.containsValue(clazz)) {
                 providerClasses.put(aliasName, clazz);
+                if (!isDecoratorClass(clazz)) {
+                    providerNames.add(aliasName.substring(this.service.get().getName().length() + 1));
+                }
             } else {
                 // 重复别名不会进行覆盖
                 for (String key : providerClasses.keySet()) {
@@ -335,60 +509,894 @@ public class ServiceLoaderFactory<T> {
         if (service == null || !service.isInterface() || !service.isAnnotationPresent(SPI.class)) {
             throw new IllegalArgumentException("传入的服务类型出错，检查是否为null/不是接口/不存在SPI注解");
         }
-        // 从Bean工厂中加载这个 service的实例对象
-        ServiceLoaderFactory<T> instance = (ServiceLoaderFactory<T>) BeanCacheFactory.getLoadedInstance(service);
+        // 容器监控本身也是服务，在创建任何加载工厂之前加载
+        Monitors.init();
+        // 从Bean工厂中加载这个 service的实例对象（按别名查询，按类型会查询到服务提供者）
+        String name = service.getName() + "@";
+        BeanContext context = BeanCacheFactory.currentContext();
+        ServiceLoaderFactory<T> instance = (ServiceLoaderFactory<T>) context.getLoadedInstance(name);
         if (instance == null) {  // 不存在这个缓存
             synchronized (service) {
-                String name = service.getName() + "@";
-                instance = (ServiceLoaderFactory<T>) BeanCacheFactory.getLoadedInstance(name);
+                instance = (ServiceLoaderFactory<T>) context.getLoadedInstance(name);
                 if (instance == null) {
-                    instance = new ServiceLoaderFactory<T>(service);
+                    instance = new ServiceLoaderFactory<T>(service, context);
                     // 服务对象别名为 全限定名 + @
-                    BeanCacheFactory.addInstanceToCacheIfAbsent(service.getName() + "@", instance);
-                    BeanCacheFactory.addClassToCacheIfAbsent(service.getName() + "@", service);
+                    context.addInstanceToCacheIfAbsent(service.getName() + "@", instance);
+                    context.addClassToCacheIfAbsent(service.getName() + "@", service);
                 }
             }
         }
         return instance;
     }
 
+    /**
+     * 只解析服务的全部服务提供者（外部别名 --> Class对象），不实例化，也不注册到当前上下文
+     * 用于构建期生成容器快照
+     *
+     * @param service
+     * @return
+     */
+    public static Map<String, Class<?>> resolveProviders(Class<?> service) {
+        if (service == null || !service.isInterface() || !service.isAnnotationPresent(SPI.class)) {
+            throw new IllegalArgumentException("传入的服务类型出错，检查是否为null/不是接口/不存在SPI注解");
+        }
+        // 在一个隔离的上下文中加载，用完丢弃
+        BeanContext context = new BeanContext(null);
+        BeanContext previous = BeanCacheFactory.bindContext(context);
+        try {
+            ServiceLoaderFactory<?> factory = new ServiceLoaderFactory<Object>(service, context, false);
+            Map<String, Class<?>> providers = new LinkedHashMap<String, Class<?>>();
+            int prefix = service.getName().length() + 1;
+            for (Map.Entry<String, Class<?>> entry : factory.loadAllProviders().entrySet()) {
+                providers.put(entry.getKey().substring(prefix), entry.getValue());
+            }
+            return providers;
+        } finally {
+            BeanCacheFactory.bindContext(previous);
+            context.close();
+        }
+    }
+
     /**
      * 通过别名获取实现服务对象
+     * 已经实例化过的别名只需要一次Map查询和一次volatile读取，不同别名的首次实例化互不阻塞
+     * 服务提供者存在初始化方法（Init注解）时，初始化完成后才返回；正在异步创建时等待异步创建完成
+     * 没有这个别名的服务提供者时返回null（不缓存，第一次查询不到时读取一次全部服务提供者）
      *
      * @param name
      * @return
      */
     public T getProvider(String name) {
+        Holder<Object> holder = getOrCreateHolder(name);
+        if (holder == null) {
+            Monitors.get().lookup(ContainerMonitor.PROVIDER_LOOKUP, name, false);
+            return null;
+        }
+        Object instance = holder.get();
+        Monitors.get().lookup(ContainerMonitor.PROVIDER_LOOKUP, name, instance != null);
+        if (instance == null) {
+            // 在调用线程上创建（初始化可能异步完成），不持有任何锁等待
+            Creation pending = creation(name, holder, false);
+            if (pending.creator == Thread.currentThread() && !pending.isDone()) {
+                // 初始化方法中获取自己：还没有初始化完成，等待会死锁
+                logger.error(name + "别名的对象还没有初始化完成");
+                return null;
+            }
+            instance = join(name, pending);
+        }
+        return (T) instance;
+    }
+
+    /**
+     * 通过别名异步获取实现服务对象：实例化、依赖注入和初始化在初始化执行器上进行，不阻塞调用线程
+     * 同一个别名同时只有一个异步创建，失败时异常完成（下次获取时重试）
+     *
+     * @param name
+     * @return
+     */
+    public CompletableFuture<T> getProviderAsync(String name) {
+        Holder<Object> holder = getOrCreateHolder(name);
+        if (holder == null) {
+            Monitors.get().lookup(ContainerMonitor.PROVIDER_LOOKUP, name, false);
+            CompletableFuture<T> missing = new CompletableFuture<T>();
+            missing.completeExceptionally(new IllegalStateException("没有这个实现Provider类，别名为：" + name));
+            return missing;
+        }
+        Object instance = holder.get();
+        Monitors.get().lookup(ContainerMonitor.PROVIDER_LOOKUP, name, instance != null);
+        if (instance != null) {
+            return CompletableFuture.completedFuture((T) instance);
+        }
+        return (CompletableFuture<T>) (CompletableFuture<?>) creation(name, holder, true);
+    }
+
+    /**
+     * 别名的创建：先在 pendingInstances 中发布（同一个别名同时只有一个创建），再在锁外创建，等待也在锁外
+     *
+     * @param async 在初始化执行器上创建，否则在调用线程上创建
+     * @return 进行中的创建，或者新发布的创建
+     */
+    private Creation creation(String name, Holder<Object> holder, boolean async) {
+        Creation pending = pendingInstances.get(name);
+        if (pending != null) {
+            return pending;
+        }
+        Creation created = new Creation(async ? null : Thread.currentThread());
+        pending = pendingInstances.putIfAbsent(name, created);
+        if (pending != null) {
+            return pending;
+        }
+        if (async) {
+            Lifecycle.getInitExecutor().execute(() -> createProviderAsync(name, holder, created));
+        } else {
+            createProviderAsync(name, holder, created);
+        }
+        return created;
+    }
+
+    private void createProviderAsync(String name, Holder<Object> holder, Creation created) {
+        CompletableFuture<Object> creation;
+        // 发布创建之前可能已经有创建完成了
+        Object current = holder.get();
+        if (current != null) {
+            creation = CompletableFuture.completedFuture(current);
+        } else {
+            // 服务提供者的依赖注入在这个加载工厂的上下文中进行
+            BeanContext previous = BeanCacheFactory.bindContext(context);
+            try {
+                creation = createProvider(name).thenApply(this::decorate);
+            } catch (Throwable e) {
+                creation = new CompletableFuture<Object>();
+                creation.completeExceptionally(e);
+            } finally {
+                BeanCacheFactory.bindContext(previous);
+            }
+        }
+        creation.whenComplete((instance, e) -> {
+            // 先发布实例再移除异步创建，同步获取不会看到两者都不存在
+            Object published = instance;
+            if (instance != null) {
+                synchronized (holder) {
+                    if (pendingInstances.get(name) == created) {
+                        holder.set(instance);
+                    } else if (holder.get() != null) {
+                        // 创建期间被热加载取代：不覆盖热加载的服务提供者
+                        published = holder.get();
+                    }
+                }
+            }
+            pendingInstances.remove(name, created);
+            if (published != null) {
+                created.complete(published);
+            } else {
+                created.completeExceptionally(e != null ? e
+                        : new IllegalStateException(name + "别名的对象实例化失败"));
+            }
+        });
+    }
+
+    /**
+     * 获取服务的自适应服务提供者：每次调用时按 Adaptive 注解从参数或者 AdaptiveContext 中取得别名，
+     * 再调用这个别名的服务提供者；生成的类每个服务只生成一次，调用时直接分发，不经过反射
+     *
+     * @return
+     */
+    public T getAdaptiveProvider() {
+        T instance = adaptiveInstance.get();
+        if (instance == null) {
+            synchronized (adaptiveInstance) {
+                instance = adaptiveInstance.get();
+                if (instance == null) {
+                    instance = AdaptiveClassGenerator.generate((Class<T>) this.service.get(), this);
+                    adaptiveInstance.set(instance);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 别名对应的包装对象（不实例化），服务提供者实例化或者热加载之后这个包装对象中就是最新的实例
+     *
+     * @param name
+     * @return 没有这个别名的服务提供者时返回null
+     */
+    public Holder<Object> getProviderHolder(String name) {
+        return getOrCreateHolder(name);
+    }
+
+    private Object join(String name, CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (Throwable e) {
+            logger.error(name + "别名的对象初始化失败");
+            return null;
+        }
+    }
+
+    /**
+     * 别名的包装对象，只为加载过的服务提供者创建（查询不到的别名不会留下包装对象）
+     *
+     * @param name
+     * @return 没有这个别名的服务提供者时返回null
+     */
+    private Holder<Object> getOrCreateHolder(String name) {
+        Holder<Object> holder = cachedInstances.get(name);
+        if (holder != null) {
+            return holder;
+        }
+        if (!providersLoaded) {
+            BeanContext previous = BeanCacheFactory.bindContext(context);
+            try {
+                loadAllProviders();
+            } catch (IllegalStateException e) {
+                // 服务提供者已经由其他途径注册（如父上下文），别名已经记录
+            } finally {
+                BeanCacheFactory.bindContext(previous);
+            }
+        }
+        if (!providerNames.contains(name) && context.getLoadedInstance(getAliasName(name)) == null) {
+            return null;
+        }
+        return holder(name);
+    }
+
+    private Holder<Object> holder(String name) {
+        Holder<Object> holder = cachedInstances.get(name);
+        if (holder == null) {
+            cachedInstances.putIfAbsent(name, new Holder<Object>());
+            holder = cachedInstances.get(name);
+        }
+        return holder;
+    }
+
+    /**
+     * 实例化别名对应的服务提供者并进行依赖注入，再调用初始化方法，初始化完成后才加入缓存
+     * 失败时结果为null（下次获取时重试）
+     *
+     * @param name
+     * @return
+     */
+    private CompletableFuture<Object> createProvider(String name) {
         String aliasName = getAliasName(name);
-        // 查询缓存是否存在这个Class对象，存在的话再查询是否存在实例对象
-        Class<?> clazz = BeanCacheFactory.getLoadedClass(aliasName);
+        // 其他途径（如依赖注入工厂的加载）已经实例化过了
+        Object instance = context.getLoadedInstance(aliasName);
+        if (instance != null) {
+            return CompletableFuture.completedFuture(instance);
+        }
+        // 查询缓存是否存在这个Class对象
+        Class<?> clazz = context.getLoadedClass(aliasName);
         if (clazz == null) {
             // 加载Class对象先
             loadAllProviders();
-            clazz = BeanCacheFactory.getLoadedClass(aliasName);
+            clazz = context.getLoadedClass(aliasName);
         }
-        // 存在Class对象，查询是否存在实例对象
-        Object instance = BeanCacheFactory.getLoadedInstance(aliasName);
-        if (instance == null) {
+        // 获取实例化对象
+        try {
+            if (clazz == null) {
+                logger.error("没有这个实现Provider类，别名为：" + name);
+                throw new IllegalStateException("没有这个实现Provider类，别名为：" + name);
+            }
+            long start = System.nanoTime();
+            instance = clazz.newInstance();
+            Monitors.get().phase(ContainerMonitor.INSTANTIATION, clazz.getName(), System.nanoTime() - start);
+            instance = injection(instance);
+        } catch (Throwable e) {
+            logger.error(name + "别名的对象实例化失败");
+            return CompletableFuture.completedFuture(null);
+        }
+        return Lifecycle.initialize(instance).thenApply(initialized -> {
+            // 添加实例化缓存
+            context.addInstanceToCacheIfAbsent(aliasName, initialized);
+            return context.getLoadedInstance(aliasName);
+        });
+    }
+
+    /**
+     * 用默认策略（-Dcreclm.select，默认加权轮询）从全部服务提供者中选择一个
+     * 选择时不加锁、不分配对象，可以直接用于请求分发
+     *
+     * @param key 选择的key，一致性hash使用，可以为null
+     * @return
+     */
+    public T select(String key) {
+        return select(key, defaultStrategy);
+    }
+
+    /**
+     * 用指定的策略从全部服务提供者中选择一个
+     * 参与选择的服务提供者按别名排序，权重见 Provider注解；第一次选择时实例化全部服务提供者
+     *
+     * @param key      选择的key，一致性hash使用，可以为null
+     * @param strategy 选择策略的别名，见 SelectStrategy
+     * @return
+     */
+    public T select(String key, String strategy) {
+        SelectStrategy selectStrategy = strategies.get(strategy);
+        if (selectStrategy == null) {
+            selectStrategy = loadStrategy(strategy);
+        }
+        ProviderGroup<T> group = providerGroup;
+        if (group == null) {
+            group = getProviderGroup();
+        }
+        return group.getProvider(selectStrategy.select(group, key));
+    }
+
+    /**
+     * 请求完成：减少服务提供者的在途请求数（leastactive 策略使用，不在当前选择范围内的服务提供者忽略）
+     *
+     * @param provider select 选中的服务提供者
+     */
+    public void release(T provider) {
+        ProviderGroup<T> group = providerGroup;
+        int index = group == null ? -1 : group.indexOf(provider);
+        if (index >= 0) {
+            group.release(index);
+        }
+    }
+
+    public String getDefaultStrategy() {
+        return defaultStrategy;
+    }
+
+    public void setDefaultStrategy(String strategy) {
+        loadStrategy(strategy);
+        this.defaultStrategy = strategy;
+    }
+
+    private SelectStrategy loadStrategy(String strategy) {
+        SelectStrategy selectStrategy = strategies.get(strategy);
+        if (selectStrategy == null) {
+            BeanContext previous = BeanCacheFactory.bindContext(context);
+            try {
+                selectStrategy = ServiceLoaderFactory.providersLoader(SelectStrategy.class).getProvider(strategy);
+            } catch (IllegalStateException e) {
+                // 没有这个别名时加载工厂重新读取服务提供者，读取不到新的服务提供者会抛出异常
+                selectStrategy = null;
+            } finally {
+                BeanCacheFactory.bindContext(previous);
+            }
+            if (selectStrategy == null) {
+                throw new IllegalArgumentException("没有这个选择策略：" + strategy);
+            }
+            strategies.putIfAbsent(strategy, selectStrategy);
+        }
+        return selectStrategy;
+    }
+
+    private ProviderGroup<T> getProviderGroup() {
+        ProviderGroup<T> group = providerGroup;
+        if (group == null) {
             synchronized (this) {
-                instance = BeanCacheFactory.getLoadedInstance(aliasName);
-                if (instance == null) {
-                    // 获取实例化对象
+                group = providerGroup;
+                if (group == null) {
+                    group = createProviderGroup();
+                    providerGroup = group;
+                }
+            }
+        }
+        return group;
+    }
+
+    /**
+     * 实例化全部服务提供者（跳过适配器、包装类和权重不大于0的），按别名排序
+     *
+     * @return
+     */
+    private ProviderGroup<T> createProviderGroup() {
+        if (providerNames.isEmpty()) {
+            BeanContext previous = BeanCacheFactory.bindContext(context);
+            try {
+                loadAllProviders();
+            } finally {
+                BeanCacheFactory.bindContext(previous);
+            }
+        }
+        List<String> sorted = new ArrayList<String>(providerNames);
+        Collections.sort(sorted);
+        List<String> names = new ArrayList<String>();
+        List<Object> providers = new ArrayList<Object>();
+        List<Integer> weights = new ArrayList<Integer>();
+        for (String name : sorted) {
+            Class<?> clazz = context.getLoadedClass(getAliasName(name));
+            if (clazz == null || clazz.isAnnotationPresent(Adapter.class) || isWrapperClass(clazz)) {
+                continue;
+            }
+            int weight = clazz.isAnnotationPresent(Provider.class) ? clazz.getAnnotation(Provider.class).weight() : 100;
+            Object provider = weight > 0 ? getProvider(name) : null;
+            if (provider != null) {
+                names.add(name);
+                providers.add(provider);
+                weights.add(weight);
+            }
+        }
+        if (names.isEmpty()) {
+            throw new IllegalStateException("服务" + this.service.get().getName() + "没有可以选择的服务提供者");
+        }
+        int[] weightArray = new int[weights.size()];
+        for (int i = 0; i < weightArray.length; i++) {
+            weightArray[i] = weights.get(i);
+        }
+        return new ProviderGroup<T>(names.toArray(new String[0]), providers.toArray(), weightArray);
+    }
+
+    /**
+     * 获取分组和key激活的全部服务提供者（见 Activate 注解），按 order 和别名排序，用于构建过滤器链
+     * 结果是不可修改的列表，按 (分组, key集合) 缓存（key的顺序和重复不影响），热加载之后重新计算；
+     * 缓存前分组和key只保留 Activate 注解中声明过的（其他的不影响结果），缓存的大小与调用方传入的key无关
+     *
+     * @param group 分组，为null时不按分组过滤
+     * @param keys  请求中存在的key
+     * @return
+     */
+    public List<T> getActivateProviders(String group, String... keys) {
+        if (keys == null) {
+            keys = new String[0];
+        }
+        ActivateCache<T> cache = activateCache();
+        ActivateKey probe = ACTIVATE_PROBES.get().set(cache, group, keys);
+        List<T> providers = cache.providers.get(probe);
+        // 不持有调用方的数组
+        probe.set(null, null, null);
+        if (providers == null) {
+            // 不持有锁创建服务提供者（创建中可能等待其他线程，见 getProvider），重复创建的结果相同
+            providers = createActivateProviders(group, keys);
+            List<T> previous = cache.providers.putIfAbsent(
+                    new ActivateKey().set(cache, group, keys).normalize(cache), providers);
+            if (previous != null) {
+                providers = previous;
+            }
+        }
+        return providers;
+    }
+
+    // 当前的激活缓存，热加载之后重新读取 Activate 注解
+    private ActivateCache<T> activateCache() {
+        ActivateCache<T> cache = activateCache;
+        if (cache != null && cache.version == reloads) {
+            return cache;
+        }
+        // 先读取版本号再读取服务提供者，期间有热加载时下次查询会再次重建
+        int version = reloads;
+        if (providerNames.isEmpty()) {
+            BeanContext previous = BeanCacheFactory.bindContext(context);
+            try {
+                loadAllProviders();
+            } finally {
+                BeanCacheFactory.bindContext(previous);
+            }
+        }
+        cache = new ActivateCache<T>(version);
+        for (String name : providerNames) {
+            Activate activate = activateOf(name);
+            if (activate != null) {
+                cache.groups.addAll(Arrays.asList(activate.group()));
+                cache.keys.addAll(Arrays.asList(activate.value()));
+            }
+        }
+        activateCache = cache;
+        return cache;
+    }
+
+    // 服务提供者的 Activate 注解，适配器、包装类和没有注解的返回null
+    private Activate activateOf(String name) {
+        Class<?> clazz = context.getLoadedClass(getAliasName(name));
+        if (clazz == null || !clazz.isAnnotationPresent(Activate.class)
+                || clazz.isAnnotationPresent(Adapter.class) || isWrapperClass(clazz)) {
+            return null;
+        }
+        return clazz.getAnnotation(Activate.class);
+    }
+
+    private List<T> createActivateProviders(String group, String[] keys) {
+        List<String> names = new ArrayList<String>();
+        Map<String, Integer> orders = new HashMap<String, Integer>();
+        for (String name : providerNames) {
+            Activate activate = activateOf(name);
+            if (activate != null && matches(activate.group(), group == null ? null : new String[]{group})
+                    && matches(activate.value(), keys)) {
+                names.add(name);
+                orders.put(name, activate.order());
+            }
+        }
+        names.sort(Comparator.<String>comparingInt(orders::get).thenComparing(Comparator.<String>naturalOrder()));
+        List<T> providers = new ArrayList<T>(names.size());
+        for (String name : names) {
+            T provider = getProvider(name);
+            if (provider != null) {
+                providers.add(provider);
+            }
+        }
+        return Collections.unmodifiableList(providers);
+    }
+
+    /**
+     * 注解的值为空，或者查询条件为null，或者两者存在相同的值
+     */
+    private static boolean matches(String[] declared, String[] values) {
+        if (declared.length == 0 || values == null) {
+            return true;
+        }
+        for (String value : values) {
+            for (String item : declared) {
+                if (item.equals(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一个别名的创建，记录在调用线程上创建时的线程（初始化方法中获取自己时不能等待）
+     */
+    private static final class Creation extends CompletableFuture<Object> {
+        private final Thread creator;
+
+        private Creation(Thread creator) {
+            this.creator = creator;
+        }
+    }
+
+    /**
+     * 一次热加载之间的激活缓存：Activate 注解中声明过的分组和key，(分组, key集合) --> 激活的服务提供者
+     */
+    private static final class ActivateCache<T> {
+        private final int version;
+        private final Set<String> groups = new HashSet<String>();
+        private final Set<String> keys = new HashSet<String>();
+        private final ConcurrentMap<ActivateKey, List<T>> providers = new ConcurrentHashMap<ActivateKey, List<T>>();
+
+        private ActivateCache(int version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * 激活缓存的key：分组 + key集合（与顺序、重复无关），没有声明过的分组都相同，没有声明过的key忽略
+     * 缓存中的key只保存声明过的、不重复的key，创建后不再修改；查询时使用线程的 probe，直接包装调用方的数组
+     */
+    private static final class ActivateKey {
+        // 声明过的分组，为null时见 undeclared
+        private String group;
+        // 分组不为null但没有声明过
+        private boolean undeclared;
+        private String[] keys;
+        // 声明过的、不重复的key的数量
+        private int count;
+        // keys 是否只有声明过的、不重复的key（缓存中的key）
+        private boolean normalized;
+        private int hash;
+
+        private ActivateKey set(ActivateCache<?> cache, String group, String[] keys) {
+            if (cache == null) {
+                this.group = null;
+                this.keys = null;
+                return this;
+            }
+            this.undeclared = group != null && !cache.groups.contains(group);
+            this.group = undeclared ? null : group;
+            this.keys = keys;
+            int h = 0;
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && cache.keys.contains(keys[i]) && indexOf(keys, keys[i], i) == i) {
+                    h += keys[i].hashCode();
+                    n++;
+                }
+            }
+            this.count = n;
+            this.normalized = n == keys.length;
+            this.hash = (this.group == null ? (undeclared ? 1 : 0) : this.group.hashCode()) * 31 + h;
+            return this;
+        }
+
+        /**
+         * 缓存中使用的key：复制声明过的、不重复的key，调用方之后修改数组不影响缓存
+         */
+        private ActivateKey normalize(ActivateCache<?> cache) {
+            String[] declared = new String[count];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && cache.keys.contains(keys[i]) && indexOf(keys, keys[i], i) == i) {
+                    declared[n++] = keys[i];
+                }
+            }
+            ActivateKey key = new ActivateKey();
+            key.group = group;
+            key.undeclared = undeclared;
+            key.keys = declared;
+            key.count = count;
+            key.normalized = true;
+            key.hash = hash;
+            return key;
+        }
+
+        private static int indexOf(String[] keys, String key, int to) {
+            for (int i = 0; i < to; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+            return to;
+        }
+
+        // 这个key集合（只有声明过的、不重复的key）都在 others 中
+        private boolean containedIn(String[] others) {
+            for (String key : keys) {
+                if (indexOf(others, key, others.length) == others.length) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ActivateKey)) {
+                return false;
+            }
+            ActivateKey other = (ActivateKey) o;
+            if (hash != other.hash || count != other.count || undeclared != other.undeclared
+                    || !(group == null ? other.group == null : group.equals(other.group))) {
+                return false;
+            }
+            // 声明过的key数量相同，缓存中的key都在另一个key集合中就相等（两个 probe 之间不比较）
+            return normalized ? containedIn(other.keys) : other.containedIn(keys);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 热加载服务提供者：把jar（或者目录）加载到一个新的子类加载器中，只读取其中这个服务的配置文件，
+     * 先实例化、依赖注入并初始化所有新的服务提供者，全部成功后再逐个别名原子地替换查询缓存，
+     * 失败时不替换任何服务提供者；替换之后不再被任何别名使用的旧类加载器被关闭，可以被回收
+     * <p>
+     * getProvider 不会阻塞，只会查询到旧的或者新的（已经完成依赖注入和初始化的）服务提供者；
+     * 替换时进行中的创建被取代，完成后不会覆盖新的服务提供者；已经注入到其他对象中的旧服务提供者不会被替换。
+     * 服务提供者所在的包优先从热加载的jar中加载（即使父类加载器的类路径中也存在），服务接口始终来自父类加载器
+     *
+     * @param urls 新的服务提供者所在的jar / 目录
+     * @return 外部别名 --> 新的服务提供者
+     */
+    public synchronized Map<String, T> reload(URL... urls) {
+        ReloadClassLoader loader = new ReloadClassLoader(urls, SystemResourcesUtil.getClassLoader(this.getClass()),
+                this.service.get().getName());
+        Map<String, Object> providers = new LinkedHashMap<String, Object>();
+        Map<String, Object> decorated = new LinkedHashMap<String, Object>();
+        BeanContext previous = BeanCacheFactory.bindContext(context);
+        try {
+            List<String[]> entries = new ArrayList<String[]>();
+            for (String dir : ExtensionResourceIndex.DIRECTORIES) {
+                Enumeration<URL> resources = loader.findResources(dir + this.service.get().getName());
+                while (resources.hasMoreElements()) {
+                    // 不使用jar文件缓存，类加载器关闭后不会留下打开的jar
+                    entries.addAll(ExtensionResourceIndex.readEntries(resources.nextElement(), false));
+                }
+            }
+            // 先确定服务提供者所在的包，再加载类
+            for (String[] entry : entries) {
+                loader.addPackage(entry[1]);
+            }
+            for (String[] entry : entries) {
+                this.reloadProvider(providers, entry[0], Class.forName(entry[1], true, loader));
+            }
+            if (providers.isEmpty()) {
+                throw new IllegalStateException("热加载的资源中没有服务" + this.service.get().getName() + "的服务提供者");
+            }
+            for (Map.Entry<String, Object> provider : providers.entrySet()) {
+                decorated.put(provider.getKey(), this.decorate(provider.getValue()));
+            }
+        } catch (Throwable e) {
+            closeQuietly(loader);
+            logger.error("热加载服务 " + this.service.get().getName() + " 的Providers失败");
+            throw e instanceof IllegalStateException ? (IllegalStateException) e
+                    : new IllegalStateException("热加载服务提供者失败：" + Arrays.toString(urls), e);
+        } finally {
+            BeanCacheFactory.bindContext(previous);
+        }
+        // 全部就绪后再替换：先替换Bean上下文（依赖查询），再替换别名的包装对象（getProvider）
+        Set<ClassLoader> replaced = new HashSet<ClassLoader>();
+        for (Map.Entry<String, Object> provider : providers.entrySet()) {
+            String name = provider.getKey();
+            Object instance = provider.getValue();
+            context.replaceInstance(getAliasName(name), instance.getClass(), instance);
+            Holder<Object> holder = holder(name);
+            synchronized (holder) {
+                holder.set(decorated.get(name));
+                // 进行中的创建被取代（见 createProviderAsync）
+                pendingInstances.remove(name);
+            }
+            providerNames.add(name);
+            URLClassLoader old = reloadedLoaders.put(name, loader);
+            if (old != null) {
+                replaced.add(old);
+            }
+        }
+        for (ClassLoader old : replaced) {
+            if (!reloadedLoaders.containsValue(old)) {
+                closeQuietly((URLClassLoader) old);
+            }
+        }
+        // 下次选择时按新的服务提供者重新创建
+        providerGroup = null;
+        reloads++;
+        // 不再持有旧的服务提供者（并发重建的旧缓存版本号不一致，下次查询时重建）
+        activateCache = null;
+        return (Map<String, T>) decorated;
+    }
+
+    /**
+     * 实例化、依赖注入并初始化一个热加载的服务提供者（不注册）
+     *
+     * @param providers
+     * @param name
+     * @param clazz
+     * @throws Exception
+     */
+    private void reloadProvider(Map<String, Object> providers, String name, Class<?> clazz) throws Exception {
+        if (!this.service.get().isAssignableFrom(clazz)) {
+            throw new IllegalStateException("提供商" + clazz.getName() + "不是服务"
+                    + this.service.get().getName() + "的实现");
+        }
+        if (clazz.isAnnotationPresent(Adapter.class) || isWrapperClass(clazz) || isDecoratorClass(clazz)) {
+            throw new IllegalStateException("适配器、包装类和装饰类不支持热加载：" + clazz.getName());
+        }
+        // 存在Provider注解且备注了别名的话就用这个别名
+        if (clazz.isAnnotationPresent(Provider.class) && !"".equals(clazz.getAnnotation(Provider.class).value())) {
+            name = clazz.getAnnotation(Provider.class).value();
+        }
+        if (name == null || "".equals(name)) {
+            throw new IllegalStateException("没有配置服务提供者别名，检查配置文件或者Provider注解");
+        }
+        if (providers.containsKey(name)) {
+            throw new IllegalStateException("一个服务下一个别名不能存在两个服务提供者，请检查这类提供者如：" + name);
+        }
+        long start = System.nanoTime();
+        Object instance = clazz.newInstance();
+        Monitors.get().phase(ContainerMonitor.INSTANTIATION, clazz.getName(), System.nanoTime() - start);
+        instance = injection(instance);
+        providers.put(name, Lifecycle.initialize(instance).join());
+    }
+
+    /**
+     * 把全部装饰类叠加在服务提供者外面（每个服务提供者只叠加一次，结果缓存在别名的包装对象中），
+     * 调用经过N个装饰类就是N次直接调用；装饰类也进行依赖注入和初始化。
+     * 上下文中注册的依旧是原始的服务提供者，依赖注入查询到的不经过装饰类
+     *
+     * @param provider 已经完成依赖注入和初始化的服务提供者
+     * @return 最外层的装饰类，没有装饰类时就是服务提供者本身
+     */
+    private Object decorate(Object provider) {
+        if (provider == null) {
+            return null;
+        }
+        // 异步初始化完成后可能在其他线程上调用，依赖注入在这个加载工厂的上下文中进行
+        BeanContext previous = BeanCacheFactory.bindContext(context);
+        try {
+            if (!providersLoaded) {
+                // 服务提供者由其他途径注册（如父上下文），还没有读取过这个服务的装饰类
+                try {
+                    loadAllProviders();
+                } catch (IllegalStateException e) {
+                    // 没有新的服务提供者
+                }
+            }
+            Constructor<?>[] chain = decorators;
+            Object current = provider;
+            for (int i = chain.length - 1; i >= 0; i--) {
+                long start = System.nanoTime();
+                Object decorator = chain[i].newInstance(current);
+                Monitors.get().phase(ContainerMonitor.INSTANTIATION, chain[i].getName(), System.nanoTime() - start);
+                current = Lifecycle.initialize(injection(decorator)).join();
+            }
+            return current;
+        } catch (Throwable e) {
+            logger.error("装饰服务提供者失败：" + provider.getClass().getName());
+            throw new IllegalStateException("装饰服务提供者失败：" + provider.getClass().getName(), e);
+        } finally {
+            BeanCacheFactory.bindContext(previous);
+        }
+    }
+
+    /**
+     * 添加装饰类，按 Order 注解（没有为0）和全类名排序
+     *
+     * @param clazz
+     */
+    private synchronized void addDecorator(Class<?> clazz) {
+        List<Constructor<?>> chain = new ArrayList<Constructor<?>>(Arrays.asList(decorators));
+        for (Constructor<?> constructor : chain) {
+            if (constructor.getDeclaringClass() == clazz) {
+                return;
+            }
+        }
+        try {
+            chain.add(clazz.getConstructor(this.service.get()));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("装饰类" + clazz.getName() + "没有参数是服务接口"
+                    + this.service.get().getName() + "的public构造函数", e);
+        }
+        chain.sort(Comparator.<Constructor<?>>comparingInt(c -> order(c.getDeclaringClass()))
+                .thenComparing(c -> c.getDeclaringClass().getName()));
+        decorators = chain.toArray(new Constructor<?>[0]);
+    }
+
+    private static int order(Class<?> clazz) {
+        return clazz.isAnnotationPresent(Order.class) ? clazz.getAnnotation(Order.class).value() : 0;
+    }
+
+    /**
+     * 判断一个服务提供者是否是装饰类：标记了 Decorator 注解（每个类只判断一次）
+     *
+     * @param clazz
+     * @return
+     */
+    private static boolean isDecoratorClass(Class<?> clazz) {
+        return DECORATOR_CLASSES.get(clazz);
+    }
+
+    private static void closeQuietly(URLClassLoader loader) {
+        try {
+            loader.close();
+        } catch (Throwable e) {
+            logger.error("关闭热加载的类加载器失败");
+        }
+    }
+
+    /**
+     * 热加载使用的类加载器：配置文件只在自己的jar / 目录中查找（findResources），
+     * 服务提供者所在的包先在自己的jar / 目录中加载（child-first），找不到再委托父类加载器；服务接口始终委托父类加载器
+     */
+    private static final class ReloadClassLoader extends URLClassLoader {
+
+        private final String service;
+        // child-first 的包名
+        private final Set<String> packages = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        private ReloadClassLoader(URL[] urls, ClassLoader parent, String service) {
+            super(urls, parent);
+            this.service = service;
+        }
+
+        // 服务提供者所在的包改为 child-first
+        private void addPackage(String className) {
+            int dot = className.lastIndexOf('.');
+            if (dot > 0) {
+                packages.add(className.substring(0, dot));
+            }
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            int dot = name.lastIndexOf('.');
+            if (name.equals(service) || name.startsWith("java.") || dot < 0
+                    || !packages.contains(name.substring(0, dot))) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null) {
                     try {
-                        instance = injection(clazz.newInstance());
-                        if (instance == null) {
-                            logger.error("没有这个实现Provider类，别名为：" + name);
-                            throw new IllegalStateException("没有这个实现Provider类，别名为：" + name);
-                        }
-                        // 添加实例化缓存
-                        BeanCacheFactory.addInstanceToCacheIfAbsent(aliasName, instance);
-                    } catch (Throwable e) {
-                        logger.error(name + "别名的对象实例化失败");
+                        clazz = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        return super.loadClass(name, resolve);
                     }
                 }
+                if (resolve) {
+                    resolveClass(clazz);
+                }
+                return clazz;
             }
         }
-        return (T) instance;
     }
 
     /**
@@ -398,7 +1406,11 @@ public class ServiceLoaderFactory<T> {
      * @return
      */
     public T getExistProvider(String name) {
-        return (T) BeanCacheFactory.getLoadedInstance(getAliasName(name));
+        Holder<Object> holder = cachedInstances.get(name);
+        if (holder != null && holder.get() != null) {
+            return (T) holder.get();
+        }
+        return (T) context.getLoadedInstance(getAliasName(name));
     }
 
     /**
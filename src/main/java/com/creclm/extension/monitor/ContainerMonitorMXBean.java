@@ -0,0 +1,33 @@
+package com.creclm.extension.monitor;
+
+import java.util.Map;
+
+/**
+ *      容器监控的 JMX 视图（ObjectName 见 InMemoryContainerMonitor.OBJECT_NAME）
+ */
+public interface ContainerMonitorMXBean {
+
+    // 阶段 --> 次数
+    Map<String, Long> getPhaseCounts();
+
+    // 阶段 --> 总耗时（毫秒）
+    Map<String, Long> getPhaseMillis();
+
+    // 实例化 + 依赖注入总耗时最长的Bean：Bean别名/类名 --> 耗时（微秒）
+    Map<String, Long> getSlowestBeans();
+
+    long getProviderHits();
+
+    long getProviderMisses();
+
+    double getProviderHitRatio();
+
+    long getBeanHits();
+
+    long getBeanMisses();
+
+    double getBeanHitRatio();
+
+    // 清空所有统计
+    void reset();
+}
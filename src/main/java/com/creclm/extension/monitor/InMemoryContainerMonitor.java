@@ -0,0 +1,148 @@
+package com.creclm.extension.monitor;
+
+import com.creclm.service.ContainerMonitor;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *      默认的容器监控：内存中累加（LongAdder，不加锁），同时注册为 JMX MXBean
+ */
+public class InMemoryContainerMonitor implements ContainerMonitor, ContainerMonitorMXBean {
+
+    public static final String OBJECT_NAME = "com.creclm:type=ContainerMonitor";
+
+    // JMX 视图中最慢Bean的数量
+    private static final int SLOWEST_BEANS = 20;
+
+    // 阶段 --> 统计
+    private final ConcurrentMap<String, Stats> phases = new ConcurrentHashMap<String, Stats>();
+    // Bean（实例化 + 依赖注入）  -->  总耗时
+    private final ConcurrentMap<String, LongAdder> beans = new ConcurrentHashMap<String, LongAdder>();
+
+    private final LongAdder providerHits = new LongAdder();
+    private final LongAdder providerMisses = new LongAdder();
+    private final LongAdder beanHits = new LongAdder();
+    private final LongAdder beanMisses = new LongAdder();
+
+    public InMemoryContainerMonitor() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // 已经有一个监控注册过了
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void phase(String phase, String target, long nanos) {
+        Stats stats = phases.get(phase);
+        if (stats == null) {
+            phases.putIfAbsent(phase, new Stats());
+            stats = phases.get(phase);
+        }
+        stats.count.increment();
+        stats.nanos.add(nanos);
+        if (target != null && (INSTANTIATION.equals(phase) || INJECTION.equals(phase) || INIT.equals(phase))) {
+            LongAdder total = beans.get(target);
+            if (total == null) {
+                beans.putIfAbsent(target, new LongAdder());
+                total = beans.get(target);
+            }
+            total.add(nanos);
+        }
+    }
+
+    public void lookup(String kind, String name, boolean hit) {
+        if (PROVIDER_LOOKUP.equals(kind)) {
+            (hit ? providerHits : providerMisses).increment();
+        } else if (BEAN_LOOKUP.equals(kind)) {
+            (hit ? beanHits : beanMisses).increment();
+        }
+    }
+
+    public Map<String, Long> getPhaseCounts() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, Stats> entry : phases.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().count.sum());
+        }
+        return result;
+    }
+
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, Stats> entry : phases.entrySet()) {
+            result.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().nanos.sum()));
+        }
+        return result;
+    }
+
+    public Map<String, Long> getSlowestBeans() {
+        List<Map.Entry<String, Long>> totals = new ArrayList<Map.Entry<String, Long>>();
+        for (Map.Entry<String, LongAdder> entry : beans.entrySet()) {
+            totals.add(new AbstractMap.SimpleEntry<String, Long>(entry.getKey(), entry.getValue().sum()));
+        }
+        Collections.sort(totals, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < totals.size() && i < SLOWEST_BEANS; i++) {
+            result.put(totals.get(i).getKey(), TimeUnit.NANOSECONDS.toMicros(totals.get(i).getValue()));
+        }
+        return result;
+    }
+
+    public long getProviderHits() {
+        return providerHits.sum();
+    }
+
+    public long getProviderMisses() {
+        return providerMisses.sum();
+    }
+
+    public double getProviderHitRatio() {
+        return ratio(providerHits.sum(), providerMisses.sum());
+    }
+
+    public long getBeanHits() {
+        return beanHits.sum();
+    }
+
+    public long getBeanMisses() {
+        return beanMisses.sum();
+    }
+
+    public double getBeanHitRatio() {
+        return ratio(beanHits.sum(), beanMisses.sum());
+    }
+
+    public void reset() {
+        phases.clear();
+        beans.clear();
+        providerHits.reset();
+        providerMisses.reset();
+        beanHits.reset();
+        beanMisses.reset();
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    private static final class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+    }
+}
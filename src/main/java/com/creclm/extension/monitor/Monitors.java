@@ -0,0 +1,73 @@
+package com.creclm.extension.monitor;
+
+import com.creclm.extension.cache.BeanCacheFactory;
+import com.creclm.extension.cache.BeanContext;
+import com.creclm.extension.loader.ServiceLoaderFactory;
+import com.creclm.service.ContainerMonitor;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ *      容器监控的全局入口
+ *
+ *      第一次创建服务加载工厂时在根上下文中通过 ServiceLoaderFactory 加载监控服务提供者；加载之前、加载期间
+ *      以及加载失败后使用不做任何事情的 NOOP，避免加载监控时的查询又去加载监控
+ */
+public final class Monitors {
+
+    public static final String MONITOR_PROPERTY = "creclm.monitor";
+
+    public static final ContainerMonitor NOOP = new ContainerMonitor() {
+        public void phase(String phase, String target, long nanos) {
+        }
+
+        public void lookup(String kind, String name, boolean hit) {
+        }
+    };
+
+    private static volatile ContainerMonitor monitor;
+
+    private static final AtomicBoolean initializing = new AtomicBoolean();
+
+    private Monitors() {
+    }
+
+    /**
+     *      当前的监控，还没有加载时返回 NOOP（这里不加载，避免在服务提供者加载的中途重入加载）
+     */
+    public static ContainerMonitor get() {
+        ContainerMonitor current = monitor;
+        return current != null ? current : NOOP;
+    }
+
+    /**
+     *      加载监控服务提供者（只加载一次），由 ServiceLoaderFactory.providersLoader 在创建加载工厂之前调用
+     */
+    public static void init() {
+        if (monitor != null || !initializing.compareAndSet(false, true)) {
+            return;
+        }
+        String name = System.getProperty(MONITOR_PROPERTY, "memory");
+        ContainerMonitor current = null;
+        BeanContext previous = BeanCacheFactory.bindContext(BeanCacheFactory.getRootContext());
+        try {
+            current = "none".equals(name) ? NOOP
+                    : ServiceLoaderFactory.providersLoader(ContainerMonitor.class).getProvider(name);
+        } catch (Throwable e) {
+            e.printStackTrace();
+        } finally {
+            BeanCacheFactory.bindContext(previous);
+        }
+        monitor = current != null ? current : NOOP;
+    }
+
+    /**
+     *      替换监控（null 表示下次创建服务加载工厂时重新加载）
+     */
+    public static void set(ContainerMonitor containerMonitor) {
+        monitor = containerMonitor;
+        if (containerMonitor == null) {
+            initializing.set(false);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.creclm.extension.select;
+
+import com.creclm.service.SelectStrategy;
+
+/**
+ *      按key一致性hash：同一个key总是选择同一个服务提供者，服务提供者增减时只有少部分key改变选择
+ *      每个服务提供者按权重分配虚拟节点（权重100时160个）；key为null时退化为加权随机
+ */
+public class ConsistentHashStrategy implements SelectStrategy {
+
+    public int select(ProviderGroup<?> group, String key) {
+        if (key == null) {
+            return RandomStrategy.select(group);
+        }
+        return group.indexOfHash(ProviderGroup.hash(key));
+    }
+}
@@ -0,0 +1,45 @@
+package com.creclm.extension.select;
+
+import com.creclm.service.SelectStrategy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *      最少在途请求：在途请求数最少的服务提供者中按权重随机选择一个，选中后在途请求数加一
+ *      调用方在请求完成后需要调用 ServiceLoaderFactory.release，否则在途请求数只增不减
+ */
+public class LeastActiveStrategy implements SelectStrategy {
+
+    public int select(ProviderGroup<?> group, String key) {
+        int size = group.size();
+        // 第一遍：最少的在途请求数，以及这些服务提供者的权重和
+        int least = Integer.MAX_VALUE;
+        int leastWeight = 0;
+        int leastIndex = 0;
+        for (int i = 0; i < size; i++) {
+            int active = group.getActive(i);
+            if (active < least) {
+                least = active;
+                leastWeight = group.getWeight(i);
+                leastIndex = i;
+            } else if (active == least) {
+                leastWeight += group.getWeight(i);
+            }
+        }
+        // 第二遍：多个最少的服务提供者时按权重随机（在途请求数在两遍之间变化时，取第一个）
+        if (leastWeight > group.getWeight(leastIndex)) {
+            int offset = ThreadLocalRandom.current().nextInt(leastWeight);
+            for (int i = leastIndex; i < size; i++) {
+                if (group.getActive(i) == least) {
+                    offset -= group.getWeight(i);
+                    if (offset < 0) {
+                        leastIndex = i;
+                        break;
+                    }
+                }
+            }
+        }
+        group.acquire(leastIndex);
+        return leastIndex;
+    }
+}
@@ -0,0 +1,280 @@
+package com.creclm.extension.select;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *      一个服务参与选择的全部服务提供者（按别名排序），以及选择策略共用的状态
+ *
+ *      服务提供者、权重和权重前缀和在创建时确定，之后只读；轮询序号和在途请求数是原子变量，
+ *      平滑加权轮询的顺序和一致性hash环第一次使用时创建；热加载之后 ServiceLoaderFactory 重新创建一个
+ */
+public final class ProviderGroup<T> {
+
+    // 一致性hash环上权重为100的服务提供者的虚拟节点数
+    private static final int REPLICAS = 160;
+    // 平滑加权轮询顺序的最大长度（权重约分后总和超过时按比例缩小）
+    private static final int MAX_SCHEDULE = 1 << 16;
+
+    private final String[] names;
+    private final Object[] providers;
+    private final int[] weights;
+    // 权重前缀和：cumulative[i] = weights[0] + ... + weights[i]
+    private final int[] cumulative;
+    private final int totalWeight;
+    private final boolean sameWeight;
+    // 服务提供者（按引用比较）  -->  下标
+    private final Map<Object, Integer> indexes = new IdentityHashMap<Object, Integer>();
+
+    // 轮询序号
+    private final AtomicLong sequence = new AtomicLong();
+    // 在途请求数
+    private final AtomicIntegerArray active;
+
+    // 一致性hash环：虚拟节点的hash（升序） --> 服务提供者下标
+    private volatile Ring ring;
+    // 平滑加权轮询一轮的顺序：第 i 次选择的服务提供者下标
+    private volatile int[] schedule;
+
+    public ProviderGroup(String[] names, Object[] providers, int[] weights) {
+        if (names.length == 0 || names.length != providers.length || names.length != weights.length) {
+            throw new IllegalArgumentException("没有可以选择的服务提供者");
+        }
+        this.names = names.clone();
+        this.providers = providers.clone();
+        this.weights = weights.clone();
+        this.cumulative = new int[weights.length];
+        int total = 0;
+        boolean same = true;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] <= 0) {
+                throw new IllegalArgumentException("服务提供者的权重必须大于0：" + names[i]);
+            }
+            total = Math.addExact(total, weights[i]);
+            cumulative[i] = total;
+            same &= weights[i] == weights[0];
+        }
+        this.totalWeight = total;
+        this.sameWeight = same;
+        this.active = new AtomicIntegerArray(names.length);
+        for (int i = providers.length - 1; i >= 0; i--) {
+            // 同一个对象出现多次时取第一个
+            indexes.put(providers[i], i);
+        }
+    }
+
+    public int size() {
+        return providers.length;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public T getProvider(int index) {
+        return (T) providers[index];
+    }
+
+    public int getWeight(int index) {
+        return weights[index];
+    }
+
+    public int getTotalWeight() {
+        return totalWeight;
+    }
+
+    // 所有服务提供者的权重是否相同（相同时不用按权重查找）
+    public boolean isSameWeight() {
+        return sameWeight;
+    }
+
+    /**
+     *      按权重查找：offset 落在哪个服务提供者的权重区间内
+     * @param offset [0, totalWeight)
+     * @return 服务提供者下标
+     */
+    public int indexOfWeight(int offset) {
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     *      平滑加权轮询（nginx）：第 sequence 次选择的服务提供者，权重 {5,1,1} 的一轮是 A A B A C A A
+     * @param sequence 轮询序号（非负）
+     * @return 服务提供者下标
+     */
+    public int indexOfSchedule(long sequence) {
+        int[] current = schedule;
+        if (current == null) {
+            current = buildSchedule();
+        }
+        return current[(int) (sequence % current.length)];
+    }
+
+    // 下一个轮询序号（非负）
+    public long nextSequence() {
+        return sequence.getAndIncrement() & Long.MAX_VALUE;
+    }
+
+    public int getActive(int index) {
+        return active.get(index);
+    }
+
+    // 开始一个请求
+    public void acquire(int index) {
+        active.incrementAndGet(index);
+    }
+
+    // 结束一个请求（不会小于0）
+    public void release(int index) {
+        int current;
+        do {
+            current = active.get(index);
+        } while (current > 0 && !active.compareAndSet(index, current, current - 1));
+    }
+
+    /**
+     *      服务提供者的下标（按引用比较，一次Map查询）
+     * @param provider
+     * @return 不在这个分组中返回-1
+     */
+    public int indexOf(Object provider) {
+        Integer index = indexes.get(provider);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     *      一致性hash：hash 顺时针方向的第一个虚拟节点对应的服务提供者
+     * @param hash
+     * @return 服务提供者下标
+     */
+    public int indexOfHash(int hash) {
+        Ring current = ring;
+        if (current == null) {
+            current = buildRing();
+        }
+        int index = Arrays.binarySearch(current.hashes, hash);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == current.hashes.length) {
+                index = 0;
+            }
+        }
+        return current.owners[index];
+    }
+
+    /**
+     *      字符串的hash（String.hashCode 缓存在字符串中，再打散一次）
+     */
+    public static int hash(String key) {
+        int h = key.hashCode();
+        // murmur3 fmix32
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private synchronized Ring buildRing() {
+        if (ring != null) {
+            return ring;
+        }
+        int count = 0;
+        int[] replicas = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            replicas[i] = Math.max(1, (int) ((long) REPLICAS * weights[i] / 100));
+            count += replicas[i];
+        }
+        long[] nodes = new long[count];
+        int n = 0;
+        for (int i = 0; i < names.length; i++) {
+            for (int j = 0; j < replicas[i]; j++) {
+                // 高32位是hash（有符号比较），低32位是服务提供者下标
+                nodes[n++] = ((long) hash(names[i] + "#" + j) << 32) | i;
+            }
+        }
+        Arrays.sort(nodes);
+        int[] hashes = new int[count];
+        int[] owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = (int) (nodes[i] >> 32);
+            owners[i] = (int) nodes[i];
+        }
+        ring = new Ring(hashes, owners);
+        return ring;
+    }
+
+    /**
+     *      一轮平滑加权轮询：每次所有服务提供者的当前权重加上自己的权重，选择当前权重最大的，再减去总权重
+     */
+    private synchronized int[] buildSchedule() {
+        if (schedule != null) {
+            return schedule;
+        }
+        int divisor = 0;
+        for (int weight : weights) {
+            divisor = gcd(divisor, weight);
+        }
+        int[] reduced = new int[weights.length];
+        long total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            reduced[i] = weights[i] / divisor;
+            total += reduced[i];
+        }
+        if (total > MAX_SCHEDULE) {
+            total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                reduced[i] = Math.max(1, (int) ((long) weights[i] * MAX_SCHEDULE / totalWeight));
+                total += reduced[i];
+            }
+        }
+        int[] order = new int[(int) total];
+        long[] current = new long[weights.length];
+        for (int n = 0; n < order.length; n++) {
+            int best = 0;
+            for (int i = 0; i < reduced.length; i++) {
+                current[i] += reduced[i];
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            order[n] = best;
+        }
+        schedule = order;
+        return order;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static final class Ring {
+        private final int[] hashes;
+        private final int[] owners;
+
+        private Ring(int[] hashes, int[] owners) {
+            this.hashes = hashes;
+            this.owners = owners;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.creclm.extension.select;
+
+import com.creclm.service.SelectStrategy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *      加权随机
+ */
+public class RandomStrategy implements SelectStrategy {
+
+    public int select(ProviderGroup<?> group, String key) {
+        return select(group);
+    }
+
+    static int select(ProviderGroup<?> group) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (group.isSameWeight()) {
+            return random.nextInt(group.size());
+        }
+        return group.indexOfWeight(random.nextInt(group.getTotalWeight()));
+    }
+}
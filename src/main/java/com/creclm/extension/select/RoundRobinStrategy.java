@@ -0,0 +1,18 @@
+package com.creclm.extension.select;
+
+import com.creclm.service.SelectStrategy;
+
+/**
+ *      加权轮询：一个原子序号，权重不同时按平滑加权轮询的顺序（见 ProviderGroup.indexOfSchedule）选择，
+ *      权重大的服务提供者分散在一轮中，而不是连续被选中
+ */
+public class RoundRobinStrategy implements SelectStrategy {
+
+    public int select(ProviderGroup<?> group, String key) {
+        long sequence = group.nextSequence();
+        if (group.isSameWeight()) {
+            return (int) (sequence % group.size());
+        }
+        return group.indexOfSchedule(sequence);
+    }
+}
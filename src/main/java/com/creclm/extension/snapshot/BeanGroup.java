@@ -0,0 +1,40 @@
+package com.creclm.extension.snapshot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *      一次包扫描得到的Bean装配计划（不包含实例）
+ *
+ *      beans：所有Bean注解类  Bean别名 --> Class对象（按扫描顺序）
+ *      waves：单例Bean（包括懒加载的）按依赖关系分批，同一批的Bean互不依赖
+ *      cyclic：存在循环依赖的单例Bean
+ *      services：扫描到的SPI服务接口
+ *
+ *      启动时按Bean注解和懒加载模式决定哪些Bean需要立即实例化，分批时跳过其他Bean
+ */
+public final class BeanGroup {
+
+    private final Map<String, Class<?>> beans = new LinkedHashMap<String, Class<?>>();
+    private final List<List<String>> waves = new ArrayList<List<String>>();
+    private final List<String> cyclic = new ArrayList<String>();
+    private final List<Class<?>> services = new ArrayList<Class<?>>();
+
+    public Map<String, Class<?>> getBeans() {
+        return beans;
+    }
+
+    public List<List<String>> getWaves() {
+        return waves;
+    }
+
+    public List<String> getCyclic() {
+        return cyclic;
+    }
+
+    public List<Class<?>> getServices() {
+        return services;
+    }
+}
@@ -0,0 +1,418 @@
+package com.creclm.extension.snapshot;
+
+import com.sun.org.slf4j.internal.Logger;
+import com.sun.org.slf4j.internal.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ *      构建期生成的容器快照（由 SnapshotGenerator 生成）
+ *
+ *      快照记录了一次完整启动的解析结果：包扫描得到的Bean、服务提供者的别名和每个类的注入点，
+ *      启动时直接按快照加载Class对象并装配，不再扫描类路径、读取 META-INF 配置文件和遍历方法/成员变量
+ *
+ *      META-INF/creclm.snapshot 资源为文本格式，每行一条记录：
+ *          anchor com.foo.Main                                启动类，之后的 group 属于这个启动类
+ *          group                                              一次包扫描
+ *          bean userService com.foo.UserService 0              Bean别名 全类名 批次（-1 非单例，-2 循环依赖）
+ *          service com.foo.Greeter                            扫描到的SPI服务接口
+ *          provider com.foo.Greeter hello com.foo.HelloGreeter 服务 外部别名 服务提供者
+ *          inject com.foo.UserService setter setName java.lang.String
+ *          inject com.foo.UserService field greeter com.foo.Greeter
+ *          inject com.foo.Dao                                 没有注入点的类
+ *          fingerprint 9f86d0...                              输入的指纹（最后一行）
+ *
+ *      快照是构建产物，类有改动后需要重新生成；-Dcreclm.snapshot=false 关闭快照回到扫描。
+ *      启动时按同样的方法重新计算指纹，不一致（或者没有指纹）的快照资源整个忽略，回到扫描和读取配置文件。
+ *      指纹包括：快照中服务的 META-INF 配置文件（url + 内容）；快照中类的class文件，
+ *      jar中的取jar的 路径 + 大小 + 修改时间，目录中的取 大小 + 修改时间 + 所在目录的修改时间（包中增删类）。
+ *      只有快照记录的类和服务参与计算，不遍历类路径
+ */
+public final class ContainerSnapshot {
+
+    // 快照资源路径
+    public static final String SNAPSHOT_RESOURCE = "META-INF/creclm.snapshot";
+
+    // 关闭快照的系统属性
+    public static final String SNAPSHOT_PROPERTY = "creclm.snapshot";
+
+    private static final Logger logger = LoggerFactory.getLogger(ContainerSnapshot.class);
+
+    private static final String FINGERPRINT = "fingerprint";
+
+    // 服务配置文件目录（和 ServiceLoaderFactory 一致）
+    private static final String[] DIRECTORIES = {
+            "META-INF/creclm/internal/", "META-INF/creclm/", "META-INF/creclm/test/", "META-INF/services/"};
+
+    // 不存在快照资源的类加载器共用
+    private static final ContainerSnapshot EMPTY = new ContainerSnapshot();
+
+    // 类加载器 --> 快照（弱引用，不阻止类加载器被回收）
+    private static final Map<ClassLoader, ContainerSnapshot> SNAPSHOTS =
+            Collections.synchronizedMap(new WeakHashMap<ClassLoader, ContainerSnapshot>());
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    static {
+        for (Class<?> primitive : new Class<?>[]{boolean.class, byte.class, char.class, short.class,
+                int.class, long.class, float.class, double.class, void.class}) {
+            PRIMITIVES.put(primitive.getName(), primitive);
+        }
+    }
+
+    // 启动类全类名 --> 每次包扫描的Bean记录 [别名, 全类名, 批次] 和服务接口
+    private final Map<String, List<RawGroup>> groups = new HashMap<String, List<RawGroup>>();
+
+    // 服务全类名 --> [外部别名, 服务提供者全类名]
+    private final Map<String, List<String[]>> providers = new HashMap<String, List<String[]>>();
+
+    // 全类名 --> 注入点
+    private final Map<String, List<Point>> points = new HashMap<String, List<Point>>();
+
+    private ContainerSnapshot() {
+    }
+
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(SNAPSHOT_PROPERTY));
+    }
+
+    /**
+     *      获取类加载器对应的快照，不存在就解析一次并缓存
+     * @param classLoader 为null时使用系统类加载器的资源
+     * @return 没有快照资源返回空快照
+     */
+    public static ContainerSnapshot getSnapshot(ClassLoader classLoader) {
+        ContainerSnapshot snapshot = SNAPSHOTS.get(classLoader);
+        if (snapshot == null) {
+            synchronized (SNAPSHOTS) {
+                snapshot = SNAPSHOTS.get(classLoader);
+                if (snapshot == null) {
+                    snapshot = new ContainerSnapshot();
+                    snapshot.load(classLoader);
+                    if (snapshot.isEmpty()) {
+                        snapshot = EMPTY;
+                    }
+                    SNAPSHOTS.put(classLoader, snapshot);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     *      启动类对应的Bean装配计划
+     * @param anchor 启动类
+     * @return 快照中没有这个启动类或者Class对象加载失败返回null（回到包扫描）
+     */
+    public static List<BeanGroup> getGroups(Class<?> anchor) {
+        if (!isEnabled()) {
+            return null;
+        }
+        ClassLoader classLoader = anchor.getClassLoader();
+        List<RawGroup> rawGroups = getSnapshot(classLoader).groups.get(anchor.getName());
+        if (rawGroups == null) {
+            return null;
+        }
+        try {
+            List<BeanGroup> result = new ArrayList<BeanGroup>();
+            for (RawGroup rawGroup : rawGroups) {
+                BeanGroup group = new BeanGroup();
+                TreeMap<Integer, List<String>> waves = new TreeMap<Integer, List<String>>();
+                for (String[] bean : rawGroup.beans) {
+                    group.getBeans().put(bean[0], Class.forName(bean[1], false, classLoader));
+                    int wave = Integer.parseInt(bean[2]);
+                    if (wave >= 0) {
+                        List<String> names = waves.get(wave);
+                        if (names == null) {
+                            names = new ArrayList<String>();
+                            waves.put(wave, names);
+                        }
+                        names.add(bean[0]);
+                    } else if (wave == -2) {
+                        group.getCyclic().add(bean[0]);
+                    }
+                }
+                group.getWaves().addAll(waves.values());
+                for (String service : rawGroup.services) {
+                    group.getServices().add(Class.forName(service, false, classLoader));
+                }
+                result.add(group);
+            }
+            return result;
+        } catch (Throwable e) {
+            // 快照已经和类路径不一致，回到包扫描
+            return null;
+        }
+    }
+
+    /**
+     *      服务的提供者记录
+     * @param classLoader 加载服务提供者的类加载器
+     * @param service     服务全类名
+     * @return [外部别名, 服务提供者全类名]，快照中没有这个服务返回null
+     */
+    public static List<String[]> getProviders(ClassLoader classLoader, String service) {
+        if (!isEnabled()) {
+            return null;
+        }
+        return getSnapshot(classLoader).providers.get(service);
+    }
+
+    /**
+     *      类的注入点记录
+     * @param clazz
+     * @return 快照中没有这个类返回null，没有注入点返回空集合
+     */
+    public static List<Point> getInjectionPoints(Class<?> clazz) {
+        if (!isEnabled() || clazz.getClassLoader() == null) {
+            return null;
+        }
+        return getSnapshot(clazz.getClassLoader()).points.get(clazz.getName());
+    }
+
+    /**
+     *      按全类名加载Class对象（支持基本类型）
+     * @param name
+     * @param classLoader
+     * @return
+     * @throws ClassNotFoundException
+     */
+    public static Class<?> forName(String name, ClassLoader classLoader) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVES.get(name);
+        return primitive != null ? primitive : Class.forName(name, false, classLoader);
+    }
+
+    private boolean isEmpty() {
+        return groups.isEmpty() && providers.isEmpty() && points.isEmpty();
+    }
+
+    private void load(ClassLoader classLoader) {
+        try {
+            Enumeration<URL> urls = classLoader != null ? classLoader.getResources(SNAPSHOT_RESOURCE)
+                    : ClassLoader.getSystemResources(SNAPSHOT_RESOURCE);
+            while (urls.hasMoreElements()) {
+                loadSnapshotResource(urls.nextElement(), classLoader);
+            }
+        } catch (Throwable e) {
+            // 快照只是加速手段，读取失败时全部回到扫描
+            groups.clear();
+            providers.clear();
+            points.clear();
+        }
+    }
+
+    /**
+     *      快照输入的指纹
+     * @param lines       快照记录（不包括指纹行）
+     * @param classLoader 加载快照中类和配置文件的类加载器
+     */
+    public static String fingerprint(List<String> lines, ClassLoader classLoader) throws IOException {
+        Set<String> classes = new LinkedHashSet<String>();
+        Set<String> services = new LinkedHashSet<String>();
+        for (String line : lines) {
+            String[] parts = line.trim().split("\\s+");
+            if ("anchor".equals(parts[0]) || "inject".equals(parts[0])) {
+                classes.add(parts[1]);
+            } else if ("bean".equals(parts[0]) && parts.length > 2) {
+                classes.add(parts[2]);
+            } else if ("service".equals(parts[0])) {
+                classes.add(parts[1]);
+                services.add(parts[1]);
+            } else if ("provider".equals(parts[0]) && parts.length > 3) {
+                services.add(parts[1]);
+                classes.add(parts[3]);
+            }
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        for (String service : services) {
+            for (String directory : DIRECTORIES) {
+                Enumeration<URL> urls = classLoader != null ? classLoader.getResources(directory + service)
+                        : ClassLoader.getSystemResources(directory + service);
+                while (urls.hasMoreElements()) {
+                    URL url = urls.nextElement();
+                    update(digest, url.toExternalForm());
+                    InputStream in = url.openStream();
+                    try {
+                        byte[] buffer = new byte[4096];
+                        int n;
+                        while ((n = in.read(buffer)) != -1) {
+                            digest.update(buffer, 0, n);
+                        }
+                    } finally {
+                        in.close();
+                    }
+                }
+            }
+        }
+        // 同一个jar只统计一次
+        Map<String, String> jars = new HashMap<String, String>();
+        for (String className : classes) {
+            String resource = className.replace('.', '/') + ".class";
+            URL url = classLoader != null ? classLoader.getResource(resource) : ClassLoader.getSystemResource(resource);
+            update(digest, className + "=" + (url == null ? "" : stat(url, jars)));
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static String stat(URL url, Map<String, String> jars) throws IOException {
+        if ("jar".equals(url.getProtocol())) {
+            URL jarFileUrl = ((JarURLConnection) url.openConnection()).getJarFileURL();
+            String jar = jars.get(jarFileUrl.toExternalForm());
+            if (jar == null) {
+                jar = jarFileUrl.toExternalForm();
+                if ("file".equals(jarFileUrl.getProtocol())) {
+                    File file = toFile(jarFileUrl);
+                    jar += ":" + file.length() + ":" + file.lastModified();
+                }
+                jars.put(jarFileUrl.toExternalForm(), jar);
+            }
+            return jar;
+        }
+        if ("file".equals(url.getProtocol())) {
+            File file = toFile(url);
+            File directory = file.getParentFile();
+            return url.toExternalForm() + ":" + file.length() + ":" + file.lastModified()
+                    + ":" + (directory == null ? 0 : directory.lastModified());
+        }
+        return url.toExternalForm();
+    }
+
+    private static File toFile(URL url) throws IOException {
+        return new File(URLDecoder.decode(url.getFile(), "UTF-8"));
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes("UTF-8"));
+            digest.update((byte) '\n');
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     *      读取一个快照资源：指纹和当前的类路径一致时才合并到这个快照
+     */
+    private void loadSnapshotResource(URL url, ClassLoader classLoader) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        String fingerprint = null;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "utf-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                if (line.startsWith(FINGERPRINT + " ")) {
+                    fingerprint = line.substring(FINGERPRINT.length() + 1).trim();
+                } else {
+                    lines.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (fingerprint == null || !fingerprint.equals(fingerprint(lines, classLoader))) {
+            logger.warn("容器快照已经过期，需要重新生成：" + url);
+            return;
+        }
+        List<RawGroup> anchorGroups = null;
+        RawGroup group = null;
+        for (String line : lines) {
+            String[] parts = line.split("\\s+");
+            if ("anchor".equals(parts[0])) {
+                anchorGroups = groups.get(parts[1]);
+                if (anchorGroups == null) {
+                    anchorGroups = new ArrayList<RawGroup>();
+                    groups.put(parts[1], anchorGroups);
+                }
+                group = null;
+            } else if ("group".equals(parts[0]) && anchorGroups != null) {
+                group = new RawGroup();
+                anchorGroups.add(group);
+            } else if ("bean".equals(parts[0]) && group != null) {
+                group.beans.add(new String[]{parts[1], parts[2], parts[3]});
+            } else if ("service".equals(parts[0]) && group != null) {
+                group.services.add(parts[1]);
+            } else if ("provider".equals(parts[0])) {
+                List<String[]> entries = providers.get(parts[1]);
+                if (entries == null) {
+                    entries = new ArrayList<String[]>();
+                    providers.put(parts[1], entries);
+                }
+                entries.add(new String[]{parts[2], parts[3]});
+            } else if ("inject".equals(parts[0])) {
+                List<Point> classPoints = points.get(parts[1]);
+                if (classPoints == null) {
+                    classPoints = new ArrayList<Point>();
+                    points.put(parts[1], classPoints);
+                }
+                if (parts.length == 5) {
+                    classPoints.add(new Point("setter".equals(parts[2]), parts[3], parts[4]));
+                }
+            }
+        }
+    }
+
+    private static final class RawGroup {
+        private final List<String[]> beans = new ArrayList<String[]>();
+        private final List<String> services = new ArrayList<String>();
+    }
+
+    /**
+     *      快照中的注入点：setter方法名和参数类型，或者Autowired成员变量名和类型
+     */
+    public static final class Point {
+
+        private final boolean setter;
+        private final String member;
+        private final String typeName;
+
+        public Point(boolean setter, String member, String typeName) {
+            this.setter = setter;
+            this.member = member;
+            this.typeName = typeName;
+        }
+
+        public boolean isSetter() {
+            return setter;
+        }
+
+        public String getMember() {
+            return member;
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+    }
+}
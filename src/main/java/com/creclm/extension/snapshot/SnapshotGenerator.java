@@ -0,0 +1,172 @@
+package com.creclm.extension.snapshot;
+
+import com.creclm.ALLBeanApplication;
+import com.creclm.extension.injection.InjectionPlan;
+import com.creclm.extension.injection.InjectionPoint;
+import com.creclm.extension.loader.ServiceLoaderFactory;
+import com.creclm.service.ContainerMonitor;
+import com.creclm.service.InjectionServiceFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *      构建期生成容器快照：完整地解析一次启动（包扫描、服务提供者别名、注入点），不实例化任何Bean
+ *
+ *      用法（类路径与运行时一致）：
+ *          java com.creclm.extension.snapshot.SnapshotGenerator 启动类全类名 输出目录 [--native-image]
+ *
+ *      输出目录下生成 META-INF/creclm.snapshot，输出目录一般就是 target/classes；
+ *      --native-image 同时生成 GraalVM native-image 的反射和资源配置
+ */
+public final class SnapshotGenerator {
+
+    private static final String NATIVE_IMAGE_DIRECTORY = "META-INF/native-image/com.creclm/myspi_dubbo/";
+
+    private SnapshotGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("用法：SnapshotGenerator 启动类全类名 输出目录 [--native-image]");
+            System.exit(1);
+        }
+        // 生成快照时不能读取旧的快照
+        System.setProperty(ContainerSnapshot.SNAPSHOT_PROPERTY, "false");
+        Class<?> anchor = Class.forName(args[0], false, Thread.currentThread().getContextClassLoader());
+        File output = new File(args[1]);
+        boolean nativeImage = args.length > 2 && "--native-image".equals(args[2]);
+
+        List<BeanGroup> groups = ALLBeanApplication.resolve(anchor);
+        // 依赖注入和容器监控服务在启动时一定会加载，其他是扫描到的SPI服务
+        Set<Class<?>> services = new LinkedHashSet<Class<?>>();
+        services.add(InjectionServiceFactory.class);
+        services.add(ContainerMonitor.class);
+        for (BeanGroup group : groups) {
+            services.addAll(group.getServices());
+        }
+        Map<Class<?>, Map<String, Class<?>>> providers = new LinkedHashMap<Class<?>, Map<String, Class<?>>>();
+        for (Class<?> service : services) {
+            try {
+                providers.put(service, ServiceLoaderFactory.resolveProviders(service));
+            } catch (Throwable e) {
+                // 没有服务提供者的服务不记录，启动时依旧读取配置文件
+                System.err.println("跳过服务 " + service.getName() + "：" + e.getMessage());
+            }
+        }
+        // 需要记录注入点的类：所有Bean和服务提供者
+        Set<Class<?>> injected = new LinkedHashSet<Class<?>>();
+        for (BeanGroup group : groups) {
+            injected.addAll(group.getBeans().values());
+        }
+        for (Map<String, Class<?>> classes : providers.values()) {
+            injected.addAll(classes.values());
+        }
+
+        File snapshot = new File(output, ContainerSnapshot.SNAPSHOT_RESOURCE);
+        writeSnapshot(snapshot, anchor, groups, providers, injected);
+        System.out.println("生成容器快照 " + snapshot + "：" + injected.size() + " 个类");
+        if (nativeImage) {
+            Set<Class<?>> reflected = new LinkedHashSet<Class<?>>(services);
+            reflected.addAll(injected);
+            writeReflectConfig(new File(output, NATIVE_IMAGE_DIRECTORY + "reflect-config.json"), reflected);
+            writeResourceConfig(new File(output, NATIVE_IMAGE_DIRECTORY + "resource-config.json"));
+        }
+    }
+
+    private static void writeSnapshot(File file, Class<?> anchor, List<BeanGroup> groups,
+                                      Map<Class<?>, Map<String, Class<?>>> providers,
+                                      Set<Class<?>> injected) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        lines.add("# 由 SnapshotGenerator 生成，类有改动后需要重新生成（指纹不一致时启动会忽略这个快照）");
+        lines.add("anchor " + anchor.getName());
+        for (BeanGroup group : groups) {
+            lines.add("group");
+            Map<String, Integer> waves = new LinkedHashMap<String, Integer>();
+            for (int i = 0; i < group.getWaves().size(); i++) {
+                for (String name : group.getWaves().get(i)) {
+                    waves.put(name, i);
+                }
+            }
+            for (String name : group.getCyclic()) {
+                waves.put(name, -2);
+            }
+            for (Map.Entry<String, Class<?>> bean : group.getBeans().entrySet()) {
+                Integer wave = waves.get(bean.getKey());
+                lines.add("bean " + bean.getKey() + " " + bean.getValue().getName() + " " + (wave == null ? -1 : wave));
+            }
+            for (Class<?> service : group.getServices()) {
+                lines.add("service " + service.getName());
+            }
+        }
+        for (Map.Entry<Class<?>, Map<String, Class<?>>> service : providers.entrySet()) {
+            for (Map.Entry<String, Class<?>> provider : service.getValue().entrySet()) {
+                lines.add("provider " + service.getKey().getName() + " " + provider.getKey()
+                        + " " + provider.getValue().getName());
+            }
+        }
+        for (Class<?> clazz : injected) {
+            lines.add("inject " + clazz.getName());
+            for (InjectionPoint point : InjectionPlan.forClass(clazz).getPoints()) {
+                Member member = point.getMember();
+                if (member instanceof Method) {
+                    lines.add("inject " + clazz.getName() + " setter " + member.getName()
+                            + " " + ((Method) member).getParameterTypes()[0].getName());
+                } else if (member instanceof Field) {
+                    lines.add("inject " + clazz.getName() + " field " + member.getName()
+                            + " " + ((Field) member).getType().getName());
+                }
+            }
+        }
+        // 启动时重新计算，不一致就不使用这个快照
+        lines.add("fingerprint " + ContainerSnapshot.fingerprint(lines, anchor.getClassLoader()));
+        write(file, lines);
+    }
+
+    private static void writeReflectConfig(File file, Set<Class<?>> classes) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        lines.add("[");
+        int i = 0;
+        for (Class<?> clazz : classes) {
+            lines.add("  {\"name\": \"" + clazz.getName() + "\", \"allDeclaredConstructors\": true,"
+                    + " \"allPublicMethods\": true, \"allDeclaredFields\": true}"
+                    + (++i < classes.size() ? "," : ""));
+        }
+        lines.add("]");
+        write(file, lines);
+    }
+
+    private static void writeResourceConfig(File file) throws Exception {
+        List<String> lines = new ArrayList<String>();
+        lines.add("{\"resources\": {\"includes\": [");
+        lines.add("  {\"pattern\": \"\\\\Q" + ContainerSnapshot.SNAPSHOT_RESOURCE + "\\\\E\"},");
+        lines.add("  {\"pattern\": \"META-INF/creclm/.*\"},");
+        lines.add("  {\"pattern\": \"META-INF/services/.*\"}");
+        lines.add("]}}");
+        write(file, lines);
+    }
+
+    private static void write(File file, List<String> lines) throws Exception {
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.creclm.service;
+
+
+import com.creclm.annotation.SPI;
+
+/**
+ *      容器监控 的抽象扩展服务接口：接收启动各阶段的耗时和查询的命中情况
+ *
+ *      实现通过 ServiceLoaderFactory 加载（别名由 -Dcreclm.monitor 指定，默认 memory，none 表示关闭），
+ *      会在启动和查询的热路径上被调用，实现不能阻塞，也不能再查询Bean
+ */
+@SPI
+public interface ContainerMonitor {
+
+    // 阶段：读取SPI配置文件（包含其中服务提供者的类加载）
+    String RESOURCE_DISCOVERY = "resourceDiscovery";
+    // 阶段：加载一个类
+    String CLASS_LOADING = "classLoading";
+    // 阶段：一次包扫描
+    String SCAN = "scan";
+    // 阶段：实例化一个Bean / 服务提供者
+    String INSTANTIATION = "instantiation";
+    // 阶段：依赖注入一个对象
+    String INJECTION = "injection";
+    // 阶段：调用一个对象的初始化方法（异步初始化包含等待阶段完成的时间）
+    String INIT = "init";
+
+    // 查询：ServiceLoaderFactory.getProvider，命中表示服务提供者已经实例化过
+    String PROVIDER_LOOKUP = "provider";
+    // 查询：依赖注入适配器的 getBeanInstance，命中表示查询到了依赖
+    String BEAN_LOOKUP = "bean";
+
+    /**
+     *      一个阶段完成
+     * @param phase  阶段，见上面的常量
+     * @param target 阶段的对象：服务名、类名、包名、Bean别名
+     * @param nanos  耗时（纳秒）
+     */
+    void phase(String phase, String target, long nanos);
+
+    /**
+     *      一次查询
+     * @param kind 查询类型，见上面的常量
+     * @param name 查询的别名
+     * @param hit  是否命中
+     */
+    void lookup(String kind, String name, boolean hit);
+}
@@ -0,0 +1,32 @@
+package com.creclm.service;
+
+
+import com.creclm.annotation.SPI;
+import com.creclm.extension.select.ProviderGroup;
+
+/**
+ *      服务提供者选择策略 的抽象扩展服务接口：ServiceLoaderFactory.select 从一个服务的全部服务提供者中选择一个
+ *
+ *      默认的实现见 META-INF/creclm/internal 下的配置（roundrobin、random、leastactive、consistenthash），
+ *      会直接在请求分发的路径上调用，实现不能加锁，也不能分配对象
+ */
+@SPI
+public interface SelectStrategy {
+
+    // 加权轮询（默认）
+    String ROUND_ROBIN = "roundrobin";
+    // 加权随机
+    String RANDOM = "random";
+    // 最少在途请求（调用方在请求完成后需要调用 ServiceLoaderFactory.release）
+    String LEAST_ACTIVE = "leastactive";
+    // 按key一致性hash
+    String CONSISTENT_HASH = "consistenthash";
+
+    /**
+     *      选择一个服务提供者
+     * @param group 服务的全部服务提供者（不会为空）
+     * @param key   选择的key，一致性hash使用，可以为null
+     * @return 选中的服务提供者在 group 中的下标
+     */
+    int select(ProviderGroup<?> group, String key);
+}
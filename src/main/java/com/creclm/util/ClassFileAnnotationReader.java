@@ -0,0 +1,201 @@
+package com.creclm.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ *      最小的class文件解析器：只解析常量池和类级别的 RuntimeVisibleAnnotations 属性，
+ *      用来在不加载类（不执行静态初始化、不占用元空间）的情况下判断类上是否存在某些注解
+ */
+public final class ClassFileAnnotationReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = "RuntimeVisibleAnnotations".getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] bytes;
+
+    // 常量池中每一项的起始偏移（指向tag之后）
+    private int[] constantOffsets;
+
+    private int position;
+
+    private ClassFileAnnotationReader(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     *      将注解类转换为class文件中的类型描述符  com.aa.Bean --> Lcom/aa/Bean;
+     */
+    public static byte[] descriptorOf(Class<?> annotation) {
+        return ("L" + annotation.getName().replace('.', '/') + ";").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     *      判断class文件的类上是否存在任一注解
+     * @param bytes       class文件内容
+     * @param descriptors 注解的类型描述符，见 descriptorOf
+     * @return 不是合法的class文件时返回false
+     */
+    public static boolean isAnnotated(byte[] bytes, byte[][] descriptors) {
+        try {
+            return new ClassFileAnnotationReader(bytes).findAnnotation(descriptors);
+        } catch (RuntimeException e) {
+            // 截断或者格式错误的class文件
+            return false;
+        }
+    }
+
+    private boolean findAnnotation(byte[][] descriptors) {
+        if (readInt() != MAGIC) {
+            return false;
+        }
+        position += 4; // minor_version major_version
+        readConstantPool();
+        position += 6; // access_flags this_class super_class
+        int interfacesCount = readUnsignedShort();
+        position += 2 * interfacesCount; // interfaces
+        skipMembers(); // fields
+        skipMembers(); // methods
+        int attributesCount = readUnsignedShort();
+        for (int i = 0; i < attributesCount; i++) {
+            int nameIndex = readUnsignedShort();
+            int length = readInt();
+            int end = position + length;
+            if (utf8Equals(nameIndex, RUNTIME_VISIBLE_ANNOTATIONS)) {
+                int annotations = readUnsignedShort();
+                for (int j = 0; j < annotations; j++) {
+                    int typeIndex = readUnsignedShort();
+                    for (byte[] descriptor : descriptors) {
+                        if (utf8Equals(typeIndex, descriptor)) {
+                            return true;
+                        }
+                    }
+                    skipElementValuePairs();
+                }
+            }
+            position = end;
+        }
+        return false;
+    }
+
+    private void readConstantPool() {
+        int count = readUnsignedShort();
+        constantOffsets = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = bytes[position++] & 0xFF;
+            constantOffsets[i] = position;
+            switch (tag) {
+                case 1: // Utf8
+                    position += 2 + readUnsignedShort(position);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    position += 4;
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    position += 8;
+                    i++; // 占两个常量池位置
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    position += 2;
+                    break;
+                case 15: // MethodHandle
+                    position += 3;
+                    break;
+                default:
+                    throw new IllegalStateException("未知的常量池类型：" + tag);
+            }
+        }
+    }
+
+    private void skipMembers() {
+        int count = readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            position += 6; // access_flags name_index descriptor_index
+            int attributesCount = readUnsignedShort();
+            for (int j = 0; j < attributesCount; j++) {
+                position += 2; // attribute_name_index
+                int length = readInt();
+                position += length;
+            }
+        }
+    }
+
+    private void skipElementValuePairs() {
+        int pairs = readUnsignedShort();
+        for (int i = 0; i < pairs; i++) {
+            position += 2; // element_name_index
+            skipElementValue();
+        }
+    }
+
+    private void skipElementValue() {
+        int tag = bytes[position++] & 0xFF;
+        switch (tag) {
+            case 'e': // 枚举 type_name_index const_name_index
+                position += 4;
+                break;
+            case '@': // 嵌套注解
+                position += 2;
+                skipElementValuePairs();
+                break;
+            case '[': // 数组
+                int values = readUnsignedShort();
+                for (int i = 0; i < values; i++) {
+                    skipElementValue();
+                }
+                break;
+            default: // 基本类型、String、Class
+                position += 2;
+        }
+    }
+
+    private boolean utf8Equals(int index, byte[] expected) {
+        if (index <= 0 || index >= constantOffsets.length) {
+            return false;
+        }
+        int offset = constantOffsets[index];
+        if ((bytes[offset - 1] & 0xFF) != 1) {
+            return false;
+        }
+        int length = readUnsignedShort(offset);
+        if (length != expected.length) {
+            return false;
+        }
+        offset += 2;
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int readUnsignedShort() {
+        int value = readUnsignedShort(position);
+        position += 2;
+        return value;
+    }
+
+    private int readUnsignedShort(int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    private int readInt() {
+        int value = ((bytes[position] & 0xFF) << 24) | ((bytes[position + 1] & 0xFF) << 16)
+                | ((bytes[position + 2] & 0xFF) << 8) | (bytes[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+}
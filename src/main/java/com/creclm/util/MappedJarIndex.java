@@ -0,0 +1,248 @@
+package com.creclm.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ *      基于内存映射的jar包索引读取
+ *
+ *      只映射jar的中央目录，直接在映射的字节上遍历，按包名前缀比较条目名的字节，
+ *      只有匹配的 .class 条目才会创建字符串，不会像 JarFile.entries() 一样为每个条目创建 JarEntry；
+ *      条目内容通过文件通道按位置读取。用完需要 close：关闭文件并释放对映射的引用。
+ *      不支持 zip64 等格式时 open 抛出 IOException，由调用方回退到 JarFile
+ */
+public final class MappedJarIndex implements Closeable {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    // 注释最长 65535 字节
+    private static final int MAX_COMMENT = 0xFFFF;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final byte[] CLASS_SUFFIX = ".class".getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    // 中央目录的映射，close 之后为null
+    private volatile ByteBuffer central;
+    private final int entries;
+    // jar前面存在其他数据（如启动脚本）时，本地文件头偏移需要加上的位移
+    private final long shift;
+
+    private MappedJarIndex(FileChannel channel, ByteBuffer central, int entries, long shift) {
+        this.channel = channel;
+        this.central = central;
+        this.entries = entries;
+        this.shift = shift;
+    }
+
+    /**
+     *      打开jar文件并映射中央目录
+     */
+    public static MappedJarIndex open(File jar) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(jar, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            if (length < END_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("不支持的jar大小：" + jar);
+            }
+            // 只读取文件末尾查找中央目录结束标记
+            int tailLength = (int) Math.min(length, END_SIZE + MAX_COMMENT);
+            long tailStart = length - tailLength;
+            ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, tail, tailStart);
+            int end = findEnd(tail);
+            if (end < 0) {
+                throw new IOException("没有找到jar的中央目录：" + jar);
+            }
+            int entries = tail.getShort(end + 10) & 0xFFFF;
+            long size = tail.getInt(end + 12) & 0xFFFFFFFFL;
+            long offset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+            if (entries == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+                throw new IOException("不支持zip64格式：" + jar);
+            }
+            long centralOffset = tailStart + end - size;
+            if (centralOffset < 0) {
+                throw new IOException("jar的中央目录损坏：" + jar);
+            }
+            ByteBuffer central = channel.map(FileChannel.MapMode.READ_ONLY, centralOffset, size)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            MappedJarIndex index = new MappedJarIndex(channel, central, entries, centralOffset - offset);
+            file = null;
+            return index;
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     *      遍历 prefix 目录下的类（排除内部类）
+     * @param prefix  形如 com/aa/bb/ 的条目前缀
+     * @param visitor 匹配的条目
+     */
+    public void forEachClass(String prefix, Visitor visitor) throws IOException {
+        ByteBuffer buffer = buffer();
+        byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        int position = 0;
+        try {
+            for (int i = 0; i < entries; i++) {
+                if (buffer.getInt(position) != CENTRAL_SIGNATURE) {
+                    throw new IOException("jar的中央目录损坏");
+                }
+                int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+                int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+                int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+                int nameOffset = position + CENTRAL_HEADER_SIZE;
+                if (isClass(buffer, nameOffset, nameLength, prefixBytes)) {
+                    byte[] name = new byte[nameLength];
+                    for (int j = 0; j < nameLength; j++) {
+                        name[j] = buffer.get(nameOffset + j);
+                    }
+                    visitor.visit(new String(name, StandardCharsets.UTF_8), position);
+                }
+                position = nameOffset + nameLength + extraLength + commentLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("jar的中央目录损坏", e);
+        }
+    }
+
+    /**
+     *      读取条目内容（可以并发调用）
+     * @param entry forEachClass 中访问到的条目位置
+     */
+    public byte[] read(int entry) throws IOException {
+        ByteBuffer buffer = buffer();
+        int method = buffer.getShort(entry + 10) & 0xFFFF;
+        int compressedSize = buffer.getInt(entry + 20);
+        int size = buffer.getInt(entry + 24);
+        long local = (buffer.getInt(entry + 42) & 0xFFFFFFFFL) + shift;
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, local);
+        if (header.getInt(0) != LOCAL_SIGNATURE) {
+            throw new IOException("jar的本地文件头损坏");
+        }
+        long data = local + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        byte[] compressed = new byte[compressedSize];
+        readFully(channel, ByteBuffer.wrap(compressed), data);
+        if (method == STORED) {
+            return compressed;
+        }
+        if (method != DEFLATED) {
+            throw new IOException("不支持的压缩方式：" + method);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            byte[] bytes = new byte[size];
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int count = inflater.inflate(bytes, n, size - n);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += count;
+            }
+            if (n != size) {
+                throw new IOException("解压jar条目失败");
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     *      关闭文件，释放对中央目录映射的引用（映射在缓冲区被回收时解除）
+     */
+    @Override
+    public void close() throws IOException {
+        central = null;
+        channel.close();
+    }
+
+    private ByteBuffer buffer() throws IOException {
+        ByteBuffer buffer = central;
+        if (buffer == null) {
+            throw new IOException("jar索引已经关闭");
+        }
+        return buffer;
+    }
+
+    // 从 position 开始读满 buffer
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("jar文件不完整");
+            }
+            position += n;
+        }
+    }
+
+    // 前缀匹配、以 .class 结尾、不是内部类
+    private static boolean isClass(ByteBuffer buffer, int offset, int length, byte[] prefix) {
+        if (length < prefix.length + CLASS_SUFFIX.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        int suffix = offset + length - CLASS_SUFFIX.length;
+        for (int i = 0; i < CLASS_SUFFIX.length; i++) {
+            if (buffer.get(suffix + i) != CLASS_SUFFIX[i]) {
+                return false;
+            }
+        }
+        for (int i = offset + prefix.length; i < suffix; i++) {
+            if (buffer.get(i) == '$') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 从文件末尾向前查找中央目录结束标记
+    private static int findEnd(ByteBuffer buffer) {
+        int limit = Math.max(0, buffer.limit() - END_SIZE - MAX_COMMENT);
+        for (int i = buffer.limit() - END_SIZE; i >= limit; i--) {
+            if (buffer.getInt(i) == END_SIGNATURE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     *      匹配条目的访问者
+     */
+    public interface Visitor {
+        /**
+         * @param name  条目名  形如 com/aa/bb/Test.class
+         * @param entry 条目位置，用于 read
+         */
+        void visit(String name, int entry) throws IOException;
+    }
+}
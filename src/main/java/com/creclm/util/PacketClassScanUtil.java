@@ -1,26 +1,77 @@
 package com.creclm.util;
 
+import com.creclm.extension.executor.ContainerExecutors;
+import com.creclm.extension.monitor.Monitors;
+import com.creclm.service.ContainerMonitor;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.lang.annotation.Target;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
 import java.net.JarURLConnection;
 import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  *      包类扫描工具类
+ *
+ *      每个classpath根路径（目录或jar）作为一个任务提交到扫描执行器（默认见 ContainerExecutors）并行扫描，
+ *      目录按子目录继续拆分任务，jar中匹配的类按批次拆分任务加载（ForkJoin，扫描执行器不是 ForkJoinPool 时
+ *      拆分的任务在 ContainerExecutors 的扫描 ForkJoinPool 上执行，读取jar和目录的阻塞I/O不占用 commonPool），
+ *      结果汇总到并发队列中，返回前按类名排序（结果和注册Bean的顺序与并行调度无关）
+ *
+ *      指定了注解时，加载类之前先读取class文件判断类上是否存在这些注解（见 ClassFileAnnotationReader），
+ *      只有存在注解的类才会通过 Class.forName 加载（不初始化）
+ *
+ *      本地jar通过内存映射读取中央目录（见 MappedJarIndex），只为匹配的类条目创建对象
+ *
+ *      配置了扫描结果缓存时（见 ScanResultCache），指纹没有变化的根路径直接加载缓存的类名
  */
 public class PacketClassScanUtil {
 
-    private List<Class<?>> classSet = null;
-    private Map<String, ProtocolHandler> handlerMap = null;
+    // 单个任务加载类的数量阈值
+    private static final int LOAD_THRESHOLD = 64;
+
+    private final Queue<Class<?>> classSet;
+    private final Map<String, ProtocolHandler> handlerMap;
+    private final Executor pool;
+    // 需要存在的类注解描述符，为空时不过滤
+    private final byte[][] annotationDescriptors;
+    // 注解过滤条件（缓存key的一部分）
+    private final String annotationFilter;
+    // 扫描结果缓存，为null时不缓存
+    private volatile ScanResultCache scanCache = ScanResultCache.fromSystemProperty();
+
+    /**
+     * @param annotations 只扫描标记了其中任一注解的类，不传则扫描所有类
+     */
+    @SafeVarargs
+    public PacketClassScanUtil(Class<? extends Annotation>... annotations) {
+        this(ContainerExecutors.getScanExecutor(), annotations);
+    }
 
-    public PacketClassScanUtil() {
-        classSet = new ArrayList<>();
+    @SafeVarargs
+    public PacketClassScanUtil(Executor pool, Class<? extends Annotation>... annotations) {
+        this.pool = pool;
+        annotationDescriptors = new byte[annotations.length][];
+        StringBuilder filter = new StringBuilder();
+        for (int i = 0; i < annotations.length; i++) {
+            annotationDescriptors[i] = ClassFileAnnotationReader.descriptorOf(annotations[i]);
+            filter.append(i == 0 ? "" : ",").append(annotations[i].getName());
+        }
+        annotationFilter = filter.toString();
+        classSet = new ConcurrentLinkedQueue<>();
         handlerMap = new HashMap<>();
         //注册一个文件扫描器
         FileProtocolHandler fileProtocolHandler = new FileProtocolHandler();
@@ -30,7 +81,18 @@ public class PacketClassScanUtil {
         handlerMap.put(jarProtocolHandler.handleProtocol(), jarProtocolHandler);
     }
 
+    public ScanResultCache getScanCache() {
+        return scanCache;
+    }
+
+    public void setScanCache(ScanResultCache scanCache) {
+        this.scanCache = scanCache;
+    }
+
     public List<Class<?>> scan(ClassLoader classLoader, String... basePackages) {
+        long start = System.nanoTime();
+        ScanResultCache cache = scanCache;
+        List<CompletableFuture<?>> tasks = new ArrayList<>();
         for (String basePackage : basePackages) {
             //将com.aa.bb 替换成 com/aa/bb
             String resourceName;
@@ -57,26 +119,84 @@ public class PacketClassScanUtil {
                 if (protocolHandler == null) {
                     throw new RuntimeException("need support protocol [" + protocol + "]");
                 }
-                protocolHandler.handle(basePackage, url);
+                // 每个根路径一个任务
+                tasks.add(CompletableFuture.runAsync(() -> scanRoot(protocolHandler, basePackage, url, classLoader, cache), pool));
             }
         }
-        return classSet;
+        for (CompletableFuture<?> task : tasks) {
+            task.join();
+        }
+        if (cache != null) {
+            cache.save();
+        }
+        Monitors.get().phase(ContainerMonitor.SCAN, String.join(",", basePackages), System.nanoTime() - start);
+        List<Class<?>> classes = new ArrayList<>(classSet);
+        classes.sort(Comparator.comparing(Class::getName));
+        return classes;
+    }
+
+    /**
+     * 在扫描执行器（是 ForkJoinPool 时）或者扫描 ForkJoinPool 上执行拆分的任务
+     */
+    private void invoke(ForkJoinTask<?> task) {
+        ForkJoinPool forkJoinPool = pool instanceof ForkJoinPool ? (ForkJoinPool) pool
+                : ContainerExecutors.getScanForkJoinPool();
+        forkJoinPool.invoke(task);
+    }
+
+    /**
+     * 扫描一个根路径，缓存命中时只加载缓存的类名
+     */
+    private void scanRoot(ProtocolHandler protocolHandler, String basePackage, URL url,
+                          ClassLoader classLoader, ScanResultCache cache) {
+        if (cache == null) {
+            protocolHandler.handle(basePackage, url, classLoader, new ConcurrentLinkedQueue<>());
+            return;
+        }
+        String key = ScanResultCache.key(url, basePackage, annotationFilter);
+        String fingerprint = ScanResultCache.fingerprint(url);
+        List<String> cachedNames = cache.get(key, fingerprint);
+        if (cachedNames != null) {
+            List<Candidate> candidates = new ArrayList<>(cachedNames.size());
+            for (String className : cachedNames) {
+                // 缓存的类已经通过了注解过滤
+                candidates.add(new Candidate(className, null));
+            }
+            invoke(new LoadTask(candidates, classLoader, null, 0, candidates.size()));
+            return;
+        }
+        Queue<String> matched = new ConcurrentLinkedQueue<>();
+        protocolHandler.handle(basePackage, url, classLoader, matched);
+        cache.put(key, fingerprint, matched);
     }
 
     /**
      * 将class添加到结果中
      * @param classFullName 形如com.aa.bb.cc.Test.class的字符串
+     * @param classLoader   加载类使用的类加载器
+     * @param source        class文件内容（用于注解过滤），为null时表示已经过滤过了
+     * @param matched       记录加载成功的类名（用于缓存），可以为null
      */
-    private void addResult(String classFullName) {
+    private void addResult(String classFullName, ClassLoader classLoader, ClassBytes source, Queue<String> matched) {
         Class<?> aClass = null;
         try {
-            aClass = Class.forName(classFullName.substring(0, classFullName.length() - 6));
+            if (source != null && annotationDescriptors.length > 0
+                    && !ClassFileAnnotationReader.isAnnotated(source.read(), annotationDescriptors)) {
+                return;
+            }
+            long start = System.nanoTime();
+            String className = classFullName.substring(0, classFullName.length() - 6);
+            aClass = Class.forName(className, false, classLoader);
+            Monitors.get().phase(ContainerMonitor.CLASS_LOADING, className, System.nanoTime() - start);
         } catch (Throwable e) {
             // 无法加载的
 
         }
         if (aClass != null) {
             classSet.add(aClass);
+            if (matched != null) {
+                matched.add(classFullName);
+            }
         }
     }
 
@@ -95,6 +215,41 @@ public class PacketClassScanUtil {
         return fileName.indexOf('$') != -1;
     }
 
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     *  class文件内容（只在需要注解过滤时读取）
+     */
+    private interface ClassBytes {
+        byte[] read() throws IOException;
+    }
+
+    /**
+     *  待加载的类
+     */
+    private static class Candidate {
+        // 形如com.aa.bb.cc.Test.class的字符串
+        private final String classFullName;
+        private final ClassBytes source;
+
+        private Candidate(String classFullName, ClassBytes source) {
+            this.classFullName = classFullName;
+            this.source = source;
+        }
+    }
+
     /**
      *  协议处理器
      */
@@ -102,8 +257,44 @@ public class PacketClassScanUtil {
         // 适配的协议
         String handleProtocol();
 
-        // 处理url，最后需要调用 addResult(String) 将结果存储到result中
-        void handle(String basePackage, URL url);
+        // 处理url，最后需要调用 addResult 将结果存储到result中
+        void handle(String basePackage, URL url, ClassLoader classLoader, Queue<String> matched);
+    }
+
+    /**
+     * 分批并行加载类
+     */
+    private class LoadTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Candidate> candidates;
+        private final ClassLoader classLoader;
+        private final Queue<String> matched;
+        private final int from;
+        private final int to;
+
+        private LoadTask(List<Candidate> candidates, ClassLoader classLoader, Queue<String> matched, int from, int to) {
+            this.candidates = candidates;
+            this.classLoader = classLoader;
+            this.matched = matched;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LOAD_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    Candidate candidate = candidates.get(i);
+                    addResult(candidate.classFullName, classLoader, candidate.source, matched);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new LoadTask(candidates, classLoader, matched, from, middle),
+                    new LoadTask(candidates, classLoader, matched, middle, to));
+        }
     }
 
     /**
@@ -117,12 +308,20 @@ public class PacketClassScanUtil {
         }
 
         @Override
-        public void handle(String basePackage, URL url) {
+        public void handle(String basePackage, URL url, ClassLoader classLoader, Queue<String> matched) {
             try {
                 String resourceName = basePackage.replace('.', '/') + "/";
                 JarURLConnection conn = (JarURLConnection) url.openConnection();
+                // 本地jar文件优先使用内存映射直接读取中央目录
+                URL jarFileUrl = conn.getJarFileURL();
+                if ("file".equals(jarFileUrl.getProtocol())
+                        && handleMapped(new File(URLDecoder.decode(jarFileUrl.getFile(), "UTF-8")),
+                        resourceName, classLoader, matched)) {
+                    return;
+                }
                 JarFile jarFile = conn.getJarFile();
                 Enumeration<JarEntry> entries = jarFile.entries();
+                List<Candidate> candidates = new ArrayList<>();
                 while (entries.hasMoreElements()) {
                     // 遍历jar包中的所有项
                     JarEntry jarEntry = entries.nextElement();
@@ -133,15 +332,43 @@ public class PacketClassScanUtil {
                     if (checkIsNotClass(entryName)) {
                         continue;
                     }
-                    String classNameFullName = entryName.replace('/', '.');
-                    addResult(classNameFullName);
+                    candidates.add(new Candidate(entryName.replace('/', '.'),
+                            () -> readFully(jarFile.getInputStream(jarEntry))));
                 }
+                invoke(new LoadTask(candidates, classLoader, matched, 0, candidates.size()));
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
     }
 
+    /**
+     * 通过内存映射遍历jar，不支持时返回false（回退到 JarFile）
+     */
+    private boolean handleMapped(File jar, String resourceName, ClassLoader classLoader, Queue<String> matched) {
+        List<Candidate> candidates = new ArrayList<>();
+        MappedJarIndex index;
+        try {
+            index = MappedJarIndex.open(jar);
+        } catch (IOException e) {
+            return false;
+        }
+        try {
+            index.forEachClass(resourceName, (name, entry) ->
+                    candidates.add(new Candidate(name.replace('/', '.'), () -> index.read(entry))));
+            invoke(new LoadTask(candidates, classLoader, matched, 0, candidates.size()));
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try {
+                index.close();
+            } catch (IOException e) {
+                // 只读的文件，关闭失败可以忽略
+            }
+        }
+        return true;
+    }
+
     /**
      * 文件解析器
      */
@@ -153,51 +380,60 @@ public class PacketClassScanUtil {
         }
 
         @Override
-        public void handle(String basePackage, URL url) {
-            File rootFile = new File(url.getFile());
-            findClass(rootFile, File.separator + basePackage.replace('.', File.separatorChar) + File.separator);
-        }
-
-        /**
-         * 递归的方式查找class文件
-         * @param rootFile 当前文件
-         * @param subFilePath 子路径
-         */
-        private void findClass(File rootFile, String subFilePath) {
-            if (rootFile == null) {
-                return;
-            }
-            //如果是文件夹
-            if (rootFile.isDirectory()) {
-                File[] files = rootFile.listFiles();
-                if (files == null) {
-                    return;
-                }
-                for (File file : files) {
-                    findClass(file, subFilePath);
-                }
+        public void handle(String basePackage, URL url, ClassLoader classLoader, Queue<String> matched) {
+            File rootFile;
+            try {
+                rootFile = new File(URLDecoder.decode(url.getFile(), "UTF-8"));
+            } catch (IOException e) {
+                rootFile = new File(url.getFile());
             }
-            String fileName = rootFile.getName();
-            if (checkIsNotClass(fileName)) {
+            // url就是包对应的目录，类名 = 包名 + 相对这个目录的路径
+            String packagePrefix = "".equals(basePackage) ? "" : basePackage + ".";
+            invoke(new FindClassTask(rootFile, packagePrefix, classLoader, matched));
+        }
+    }
+
+    /**
+     * 递归的方式查找class文件，每个子目录拆分为一个任务
+     */
+    private class FindClassTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        // 当前目录
+        private final File directory;
+        // 当前目录对应的包名前缀 形如 com.aa.
+        private final String packagePrefix;
+        private final ClassLoader classLoader;
+        private final Queue<String> matched;
+
+        private FindClassTask(File directory, String packagePrefix, ClassLoader classLoader, Queue<String> matched) {
+            this.directory = directory;
+            this.packagePrefix = packagePrefix;
+            this.classLoader = classLoader;
+            this.matched = matched;
+        }
+
+        @Override
+        protected void compute() {
+            File[] files = directory.listFiles();
+            if (files == null) {
                 return;
             }
-            String path = rootFile.getPath();
-            String extractedString = null;
-            if(subFilePath.equals("\\\\")){
-                String regex = "target\\\\(.+?)\\\\(.*)";
-                Pattern pattern = Pattern.compile(regex);
-                Matcher matcher = pattern.matcher(path);
-                if (matcher.find()) {
-                    extractedString = matcher.group(2).replace("\\", ".");
+            List<FindClassTask> subTasks = new ArrayList<>();
+            for (File file : files) {
+                //如果是文件夹
+                if (file.isDirectory()) {
+                    subTasks.add(new FindClassTask(file, packagePrefix + file.getName() + ".", classLoader, matched));
+                    continue;
                 }
-            }else {
-                int i = path.indexOf(subFilePath);
-                if(i < 0){
-                    return;
+                String fileName = file.getName();
+                if (checkIsNotClass(fileName)) {
+                    continue;
                 }
-                extractedString = path.substring(i + 1).replace("\\", ".");
+                addResult(packagePrefix + fileName, classLoader, () -> Files.readAllBytes(file.toPath()), matched);
             }
-            addResult(extractedString);
+            invokeAll(subTasks);
         }
     }
 
@@ -0,0 +1,259 @@
+package com.creclm.util;
+
+import com.sun.org.slf4j.internal.Logger;
+import com.sun.org.slf4j.internal.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *      包扫描结果的持久化缓存
+ *
+ *      每个classpath根路径（jar或者目录）的扫描结果按 根路径url + 包名 + 注解过滤条件 保存到本地文件，
+ *      同时记录根路径的指纹（jar：路径 + 大小 + 修改时间；目录：文件数 + 总大小 + 最大修改时间），
+ *      重启后指纹没有变化的根路径直接使用缓存的类名，不用再遍历和读取class文件
+ *
+ *      目录的指纹要遍历包目录并对每个文件取一次 大小 和 修改时间（不读取文件内容），开销和文件数成正比；
+ *      不能只看目录的修改时间：原地重新编译的class文件不会改变目录的修改时间。jar只取一次
+ *
+ *      通过 -Dcreclm.scan.cache=缓存文件路径 开启
+ */
+public class ScanResultCache {
+
+    // 缓存文件路径的系统属性
+    public static final String CACHE_FILE_PROPERTY = "creclm.scan.cache";
+
+    private static final Logger logger = LoggerFactory.getLogger(ScanResultCache.class);
+
+    private static final String SEPARATOR = "\t";
+
+    private final File file;
+
+    // 缓存key --> 指纹 + 类名
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private volatile boolean dirty;
+
+    public ScanResultCache(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     *      根据系统属性创建缓存，没有配置返回null
+     */
+    public static ScanResultCache fromSystemProperty() {
+        String path = System.getProperty(CACHE_FILE_PROPERTY);
+        if (path == null || "".equals(path.trim())) {
+            return null;
+        }
+        return new ScanResultCache(new File(path.trim()));
+    }
+
+    /**
+     *      缓存key
+     * @param url         扫描的根路径
+     * @param basePackage 包名
+     * @param filter      注解过滤条件
+     */
+    public static String key(URL url, String basePackage, String filter) {
+        return url.toExternalForm() + "|" + basePackage + "|" + filter;
+    }
+
+    /**
+     *      计算根路径的指纹，无法计算（如嵌套jar）返回null，不进行缓存
+     */
+    public static String fingerprint(URL url) {
+        try {
+            if ("jar".equals(url.getProtocol())) {
+                URL jarFileUrl = ((JarURLConnection) url.openConnection()).getJarFileURL();
+                if (!"file".equals(jarFileUrl.getProtocol())) {
+                    return null;
+                }
+                File jar = toFile(jarFileUrl);
+                if (!jar.isFile()) {
+                    return null;
+                }
+                return "jar:" + jar.getAbsolutePath() + ":" + jar.length() + ":" + jar.lastModified();
+            }
+            if ("file".equals(url.getProtocol())) {
+                File directory = toFile(url);
+                if (!directory.isDirectory()) {
+                    return null;
+                }
+                long[] summary = new long[3];
+                summarize(directory, summary);
+                return "dir:" + summary[0] + ":" + summary[1] + ":" + summary[2];
+            }
+        } catch (Throwable e) {
+            // 不能计算指纹就不缓存
+        }
+        return null;
+    }
+
+    /**
+     *      查询缓存的类名，不存在或者指纹不一致返回null
+     */
+    public List<String> get(String key, String fingerprint) {
+        if (fingerprint == null) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+            return null;
+        }
+        return entry.classNames;
+    }
+
+    /**
+     *      更新一个根路径的扫描结果
+     */
+    public void put(String key, String fingerprint, Collection<String> classNames) {
+        if (fingerprint == null) {
+            return;
+        }
+        entries.put(key, new Entry(fingerprint, new ArrayList<String>(classNames)));
+        dirty = true;
+    }
+
+    /**
+     *      存在更新时写回缓存文件（先在同一目录下写一个唯一的临时文件再替换，多个进程同时保存不会互相覆盖临时文件）
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+            Path tmp = Files.createTempFile(parent == null ? new File(".").toPath() : parent.toPath(),
+                    file.getName(), ".tmp");
+            try {
+                BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+                try {
+                    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                        writer.write(entry.getKey() + SEPARATOR + entry.getValue().fingerprint + SEPARATOR
+                                + String.join(",", entry.getValue().classNames));
+                        writer.newLine();
+                    }
+                } finally {
+                    writer.close();
+                }
+                Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            dirty = false;
+        } catch (IOException e) {
+            logger.warn("保存包扫描缓存失败：" + file, e);
+        }
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(SEPARATOR, -1);
+                    if (parts.length != 3) {
+                        continue;
+                    }
+                    List<String> classNames = "".equals(parts[2]) ? Collections.<String>emptyList()
+                            : Arrays.asList(parts[2].split(","));
+                    entries.put(parts[0], new Entry(parts[1], classNames));
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            // 缓存文件损坏就全部重新扫描
+            entries.clear();
+            return;
+        }
+        prune();
+    }
+
+    // 删除根路径已经不存在的缓存（下次保存时写回）
+    private void prune() {
+        for (Iterator<String> iterator = entries.keySet().iterator(); iterator.hasNext(); ) {
+            if (!rootExists(iterator.next())) {
+                iterator.remove();
+                dirty = true;
+            }
+        }
+    }
+
+    private static boolean rootExists(String key) {
+        int end = key.indexOf('|');
+        if (end < 0) {
+            return false;
+        }
+        try {
+            URL url = new URL(key.substring(0, end));
+            if ("jar".equals(url.getProtocol())) {
+                String path = url.getPath();
+                int separator = path.indexOf("!/");
+                url = new URL(separator < 0 ? path : path.substring(0, separator));
+            }
+            // 不是本地文件的根路径（嵌套jar等）本来就不会缓存
+            return "file".equals(url.getProtocol()) && toFile(url).exists();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static File toFile(URL url) throws IOException {
+        return new File(URLDecoder.decode(url.getFile(), "UTF-8"));
+    }
+
+    // 统计目录下的 文件数、总大小、最大修改时间
+    private static void summarize(File directory, long[] summary) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                summarize(file, summary);
+                summary[2] = Math.max(summary[2], file.lastModified());
+                continue;
+            }
+            summary[0]++;
+            summary[1] += file.length();
+            summary[2] = Math.max(summary[2], file.lastModified());
+        }
+    }
+
+    private static class Entry {
+        private final String fingerprint;
+        private final List<String> classNames;
+
+        private Entry(String fingerprint, List<String> classNames) {
+            this.fingerprint = fingerprint;
+            this.classNames = classNames;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.creclm.extension.cache;
+
+import com.creclm.annotation.Init;
+import com.creclm.annotation.Scope;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BeanContextTest {
+
+    private final BeanContext context = new BeanContext();
+
+    @After
+    public void close() {
+        context.close();
+    }
+
+    @Test
+    public void nameFindsLazyBeanBeforeSuperType() {
+        FooA a = new FooA();
+        context.addInstanceToCacheIfAbsent("a", a);
+        context.registerLazyBean("c", LazyFoo.class);
+
+        Object c = context.getLoadedInstance("c", Foo.class);
+        assertTrue(c instanceof LazyFoo);
+        assertSame(c, context.getLoadedInstance("c", Foo.class));
+    }
+
+    @Test
+    public void nameFindsScopedBeanBeforeSuperType() {
+        context.addInstanceToCacheIfAbsent("a", new FooA());
+        context.registerScopedBean("d", ScopedFoo.class, Scope.PROTOTYPE, 0);
+
+        Object d1 = context.getLoadedInstance("d", Foo.class);
+        Object d2 = context.getLoadedInstance("d", Foo.class);
+        assertTrue(d1 instanceof ScopedFoo);
+        assertNotSame(d1, d2);
+    }
+
+    @Test
+    public void nameResolvesAmbiguousSuperType() {
+        FooA a = new FooA();
+        FooB b = new FooB();
+        context.addInstanceToCacheIfAbsent("a", a);
+        context.addInstanceToCacheIfAbsent("b", b);
+
+        assertSame(b, context.getLoadedInstance("b", Foo.class));
+        assertSame(a, context.getLoadedInstance("missing", FooA.class));
+        try {
+            context.getLoadedInstance("missing", Foo.class);
+            fail("两个Bean可以赋值给 Foo");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            context.getLoadedInstance(Foo.class);
+            fail("两个Bean可以赋值给 Foo");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void nameInParentBeforeAmbiguousSuperTypeInChild() {
+        FooA parentBean = new FooA();
+        context.addInstanceToCacheIfAbsent("p", parentBean);
+        BeanContext child = new BeanContext(context);
+        child.addInstanceToCacheIfAbsent("a", new FooA());
+        child.addInstanceToCacheIfAbsent("b", new FooB());
+
+        assertSame(parentBean, child.getLoadedInstance("p", Foo.class));
+    }
+
+    @Test
+    public void lazyAndScopedBeansInParentByName() {
+        context.registerLazyBean("lazy", LazyFoo.class);
+        context.registerScopedBean("thread", ScopedFoo.class, Scope.THREAD, 0);
+        BeanContext child = new BeanContext(context);
+        child.addInstanceToCacheIfAbsent("a", new FooA());
+        child.addInstanceToCacheIfAbsent("b", new FooB());
+
+        Object lazy = child.getLoadedInstance("lazy", Foo.class);
+        assertTrue(lazy instanceof LazyFoo);
+        assertSame(lazy, context.getLoadedInstance("lazy"));
+        Object thread = child.getLoadedInstance("thread", Foo.class);
+        assertTrue(thread instanceof ScopedFoo);
+        assertSame(thread, child.getLoadedInstance("thread", Foo.class));
+    }
+
+    @Test
+    public void typeLookupPrefersExactClassOverSuperType() {
+        FooA a = new FooA();
+        context.addInstanceToCacheIfAbsent("a", a);
+        context.addInstanceToCacheIfAbsent("b", new FooB());
+        context.registerLazyBean("lazy", LazyFoo.class);
+
+        assertSame(a, context.getLoadedInstance(FooA.class));
+        assertNotNull(context.getLoadedInstance(LazyFoo.class));
+        assertNull(context.getLoadedInstance("missing", String.class));
+        assertEquals(LazyFoo.class, context.getLoadedInstance("lazy").getClass());
+    }
+
+    @Test(timeout = 10000)
+    public void initWaitingOnLazyLookupFromOtherThread() {
+        WaitingInit.context = context;
+        context.registerLazyBean("waiting", WaitingInit.class);
+        context.registerLazyBean("other", LazyFoo.class);
+
+        WaitingInit waiting = (WaitingInit) context.getLoadedInstance("waiting");
+        assertTrue(waiting.other instanceof LazyFoo);
+        assertSame(waiting.other, context.getLoadedInstance("other"));
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentLookupsCreateOnce() throws Exception {
+        CountingInit.created.set(0);
+        CountingInit.release = new CountDownLatch(1);
+        context.registerLazyBean("counting", CountingInit.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] lookups = new Future<?>[8];
+            for (int i = 0; i < lookups.length; i++) {
+                lookups[i] = executor.submit(() -> context.getLoadedInstance("counting"));
+            }
+            // 初始化期间其他别名的懒加载Bean不需要等待
+            context.registerLazyBean("other", LazyFoo.class);
+            assertNotNull(context.getLoadedInstance("other"));
+            CountingInit.release.countDown();
+            Object first = lookups[0].get();
+            for (Future<?> lookup : lookups) {
+                assertSame(first, lookup.get());
+            }
+            assertEquals(1, CountingInit.created.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedLazyCreationIsRetried() {
+        FailingOnce.failures.set(1);
+        context.registerLazyBean("failing", FailingOnce.class);
+
+        assertNull(context.getLoadedInstance("failing"));
+        assertTrue(context.getLoadedInstance("failing") instanceof FailingOnce);
+    }
+
+    @Test
+    public void failedThreadScopeCreationIsNotCached() {
+        FailingOnce.failures.set(1);
+        context.registerScopedBean("thread", FailingOnce.class, Scope.THREAD, 0);
+
+        assertNull(context.getLoadedInstance("thread"));
+        Object instance = context.getLoadedInstance("thread");
+        assertTrue(instance instanceof FailingOnce);
+        assertSame(instance, context.getLoadedInstance("thread"));
+    }
+
+    @Test(timeout = 10000)
+    public void closeClearsThreadScopeInstancesOfAllThreads() throws Exception {
+        ScopedBean scopedBean = new ScopedBean(context, "thread", ScopedFoo.class, Scope.THREAD, 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Object before = executor.submit(scopedBean::get).get();
+            assertSame(before, executor.submit(scopedBean::get).get());
+            scopedBean.close();
+            // 其他线程的对象也被清空，关闭之后不再缓存
+            Object after = executor.submit(scopedBean::get).get();
+            assertNotSame(before, after);
+            assertNotSame(after, executor.submit(scopedBean::get).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public interface Foo {
+    }
+
+    public static class FooA implements Foo {
+    }
+
+    public static class FooB implements Foo {
+    }
+
+    public static class LazyFoo implements Foo {
+    }
+
+    public static class ScopedFoo implements Foo {
+    }
+
+    public static class WaitingInit {
+        static BeanContext context;
+        Object other;
+
+        // 初始化中等待其他线程查询另一个懒加载Bean
+        @Init
+        public void init() {
+            other = CompletableFuture.supplyAsync(() -> context.getLoadedInstance("other")).join();
+        }
+    }
+
+    public static class CountingInit {
+        static final AtomicInteger created = new AtomicInteger();
+        static volatile CountDownLatch release;
+
+        public CountingInit() {
+            created.incrementAndGet();
+        }
+
+        @Init
+        public void init() throws InterruptedException {
+            release.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    public static class FailingOnce {
+        static final AtomicInteger failures = new AtomicInteger();
+
+        public FailingOnce() {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("第一次实例化失败");
+            }
+        }
+    }
+}
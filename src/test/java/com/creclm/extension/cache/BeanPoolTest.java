@@ -0,0 +1,157 @@
+package com.creclm.extension.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BeanPoolTest {
+
+    @Test(timeout = 30000)
+    public void borrowAndReturnUnderContention() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        BeanPool pool = new BeanPool("pooled", 4, () -> {
+            created.incrementAndGet();
+            return new Object();
+        });
+        AtomicInteger lent = new AtomicInteger();
+        AtomicInteger maxLent = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 2000; j++) {
+                        Object bean = pool.borrow();
+                        int now = lent.incrementAndGet();
+                        maxLent.accumulateAndGet(now, Math::max);
+                        lent.decrementAndGet();
+                        pool.giveBack(bean);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(maxLent.get() <= 4);
+        assertTrue(created.get() <= 4);
+        assertEquals(created.get(), pool.getIdleCount());
+    }
+
+    @Test(timeout = 10000)
+    public void closeWakesBlockedAndTimedBorrowers() throws Exception {
+        BeanPool pool = new BeanPool("pooled", 1, Object::new);
+        pool.borrow();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CountDownLatch started = new CountDownLatch(4);
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < 4; i++) {
+                boolean timed = i % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    started.countDown();
+                    return timed ? pool.borrow(1, TimeUnit.HOURS) : pool.borrow();
+                }));
+            }
+            started.await();
+            Thread.sleep(50);
+            pool.close();
+            for (Future<?> future : futures) {
+                assertClosed(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void giveBackRacingCloseNeverStrandsWaiters() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                BeanPool pool = new BeanPool("pooled", 1, Object::new);
+                Object bean = pool.borrow();
+                List<Future<?>> waiters = new ArrayList<Future<?>>();
+                for (int j = 0; j < 2; j++) {
+                    waiters.add(executor.submit(() -> pool.borrow()));
+                }
+                CountDownLatch go = new CountDownLatch(1);
+                Future<?> giveBack = executor.submit(() -> {
+                    go.await();
+                    pool.giveBack(bean);
+                    return null;
+                });
+                Future<?> close = executor.submit(() -> {
+                    go.await();
+                    pool.close();
+                    return null;
+                });
+                go.countDown();
+                // 归还不会因为关闭抛出异常
+                giveBack.get();
+                close.get();
+                // 等待的线程要么借到归还的对象，要么被关闭标记唤醒，不会一直等待
+                for (Future<?> waiter : waiters) {
+                    try {
+                        waiter.get(5, TimeUnit.SECONDS);
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof IllegalStateException);
+                    }
+                }
+                try {
+                    pool.borrow();
+                    fail("对象池已经关闭");
+                } catch (IllegalStateException expected) {
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rejectsForeignAndDoubleReturns() throws Exception {
+        BeanPool pool = new BeanPool("pooled", 2, Object::new);
+        Object bean = pool.borrow();
+        assertNotNull(bean);
+        try {
+            pool.giveBack(new Object());
+            fail("不是对象池借出的对象");
+        } catch (IllegalArgumentException expected) {
+        }
+        pool.giveBack(bean);
+        try {
+            pool.giveBack(bean);
+            fail("已经归还过");
+        } catch (IllegalArgumentException expected) {
+        }
+        pool.close();
+        // 关闭之后归还直接丢弃
+        pool.giveBack(bean);
+    }
+
+    private static void assertClosed(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+            fail("对象池已经关闭");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
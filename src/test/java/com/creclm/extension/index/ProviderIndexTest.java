@@ -0,0 +1,110 @@
+package com.creclm.extension.index;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProviderIndexTest {
+
+    private static final String SERVICE = "demo.Shout";
+    private static final String CONFIG = "META-INF/creclm/" + SERVICE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File out;
+
+    // 使用索引生成器编译一个服务和它的服务提供者，输出目录中已经有配置文件
+    @Before
+    public void compile() throws Exception {
+        File src = folder.newFolder("src");
+        out = folder.newFolder("out");
+        write(new File(src, "demo/Shout.java"), "package demo;\n"
+                + "@com.creclm.annotation.SPI\npublic interface Shout {}\n");
+        write(new File(src, "demo/LoudShout.java"), "package demo;\n"
+                + "@com.creclm.annotation.Provider(\"loud\")\npublic class LoudShout implements Shout {}\n");
+        write(new File(out, CONFIG), "loud = demo.LoudShout\n");
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int result = compiler.run(null, null, null, "-d", out.getPath(),
+                "-classpath", System.getProperty("java.class.path"),
+                "-processor", ProviderIndexProcessor.class.getName(),
+                new File(src, "demo/Shout.java").getPath(), new File(src, "demo/LoudShout.java").getPath());
+        assertEquals(0, result);
+    }
+
+    @Test
+    public void unchangedConfigFilesAreCoveredByIndex() throws Exception {
+        String generated = read(new File(out, ProviderIndex.INDEX_RESOURCE));
+        assertTrue(generated.contains("[" + SERVICE + "]"));
+        assertTrue(generated.contains(ProviderIndex.INPUT_PREFIX + CONFIG + " = "));
+
+        ProviderIndex index = index();
+        assertTrue(index.isIndexed(config(), CONFIG, SERVICE));
+        List<ProviderIndex.Entry> providers = index.getProviders(SERVICE);
+        assertEquals(1, providers.size());
+        assertEquals("loud", providers.get(0).getName());
+    }
+
+    @Test
+    public void editedConfigFileIsReadAgain() throws Exception {
+        write(new File(out, CONFIG), "loud = demo.LoudShout\nquiet = demo.QuietShout\n");
+
+        ProviderIndex index = index();
+        assertFalse(index.isIndexed(config(), CONFIG, SERVICE));
+        // 过期分段的条目不再使用，全部来自配置文件
+        assertTrue(index.getProviders(SERVICE).isEmpty());
+    }
+
+    @Test
+    public void newConfigFileInOtherDirectoryIsRead() throws Exception {
+        write(new File(out, "META-INF/services/" + SERVICE), "demo.LoudShout\n");
+
+        assertFalse(index().isIndexed(config(), CONFIG, SERVICE));
+    }
+
+    @Test
+    public void fullSectionWithoutInputsOnlyAddsEntries() throws Exception {
+        write(new File(out, ProviderIndex.INDEX_RESOURCE), "[" + SERVICE + "]\n"
+                + "loud = demo.LoudShout\n"
+                + "[" + ProviderIndex.PARTIAL_PREFIX + "demo.Other]\n"
+                + "other = demo.OtherImpl\n");
+
+        // 旧版本生成的索引：条目依旧使用，配置文件也要读取
+        ProviderIndex index = index();
+        assertFalse(index.isIndexed(config(), CONFIG, SERVICE));
+        assertEquals(1, index.getProviders(SERVICE).size());
+        assertEquals(1, index.getProviders("demo.Other").size());
+    }
+
+    // 每次使用新的类加载器，重新解析索引
+    private ProviderIndex index() throws Exception {
+        return ProviderIndex.getIndex(new URLClassLoader(new URL[]{out.toURI().toURL()}, null));
+    }
+
+    private URL config() throws Exception {
+        return new File(out, CONFIG).toURI().toURL();
+    }
+
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,141 @@
+package com.creclm.extension.loader;
+
+import com.creclm.extension.cache.BeanCacheFactory;
+import com.creclm.extension.cache.BeanContext;
+import com.creclm.extension.loader.fixture.AuthFilter;
+import com.creclm.extension.loader.fixture.CacheFilter;
+import com.creclm.extension.loader.fixture.Filter;
+import com.creclm.extension.loader.fixture.ReloadedFilter;
+import com.creclm.extension.loader.fixture.TokenFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ActivateProvidersTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BeanContext context = new BeanContext();
+    private BeanContext previous;
+    private ServiceLoaderFactory<Filter> factory;
+
+    @Before
+    public void bind() {
+        previous = BeanCacheFactory.bindContext(context);
+        factory = ServiceLoaderFactory.providersLoader(Filter.class);
+    }
+
+    @After
+    public void unbind() {
+        BeanCacheFactory.bindContext(previous);
+        context.close();
+    }
+
+    @Test
+    public void activatesByGroupAndKeysInOrder() {
+        assertEquals(classes(AuthFilter.class), classes(factory.getActivateProviders("consumer")));
+        assertEquals(classes(TokenFilter.class, AuthFilter.class),
+                classes(factory.getActivateProviders("consumer", "token")));
+        assertEquals(classes(CacheFilter.class, AuthFilter.class),
+                classes(factory.getActivateProviders("provider", "cache")));
+        assertEquals(classes(TokenFilter.class, CacheFilter.class, AuthFilter.class),
+                classes(factory.getActivateProviders(null, "auth", "cache")));
+        assertEquals(classes(), classes(factory.getActivateProviders("unknown", "token")));
+    }
+
+    @Test
+    public void keyOrderAndDuplicatesShareOneEntry() {
+        List<Filter> providers = factory.getActivateProviders("consumer", "token", "auth");
+        assertSame(providers, factory.getActivateProviders("consumer", "auth", "token", "auth"));
+        try {
+            providers.add(null);
+            fail("激活列表不可修改");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void undeclaredKeysAndGroupsDoNotGrowTheCache() {
+        List<Filter> consumer = factory.getActivateProviders("consumer", "token");
+        List<Filter> unknownGroup = factory.getActivateProviders("unknown-0", "token");
+        for (int i = 0; i < 1000; i++) {
+            // 没有声明过的key被忽略，没有声明过的分组视为同一个
+            assertSame(consumer, factory.getActivateProviders("consumer", "token", "request-" + i));
+            assertSame(unknownGroup, factory.getActivateProviders("unknown-" + i, "token", "request-" + i));
+        }
+    }
+
+    @Test
+    public void callerArrayChangesDoNotAffectCachedKey() {
+        String[] keys = {"token"};
+        List<Filter> withToken = factory.getActivateProviders("consumer", keys);
+        keys[0] = "other";
+        assertSame(withToken, factory.getActivateProviders("consumer", "token"));
+        assertEquals(classes(AuthFilter.class), classes(factory.getActivateProviders("consumer", keys)));
+    }
+
+    @Test
+    public void reloadEvictsCachedLists() throws Exception {
+        List<Filter> before = factory.getActivateProviders("consumer", "trace");
+        assertEquals(classes(AuthFilter.class), classes(before));
+
+        factory.reload(reloadDirectory());
+        List<Filter> after = factory.getActivateProviders("consumer", "trace");
+        assertNotSame(before, after);
+        assertEquals(2, after.size());
+        assertSame(AuthFilter.class, after.get(0).getClass());
+        assertEquals(ReloadedFilter.class.getName(), after.get(1).getClass().getName());
+        // 热加载之后 trace 是声明过的key，和没有 trace 的查询不同
+        assertEquals(classes(AuthFilter.class), classes(factory.getActivateProviders("consumer")));
+    }
+
+    private static List<String> classes(Class<?>... classes) {
+        List<String> names = new ArrayList<String>();
+        for (Class<?> clazz : classes) {
+            names.add(clazz.getName());
+        }
+        return names;
+    }
+
+    private static List<String> classes(List<Filter> providers) {
+        List<String> names = new ArrayList<String>();
+        for (Filter provider : providers) {
+            names.add(provider.getClass().getName());
+        }
+        return names;
+    }
+
+    // 只包含 ReloadedFilter 的类文件和配置文件的目录
+    private java.net.URL reloadDirectory() throws Exception {
+        File root = folder.newFolder();
+        String classFile = ReloadedFilter.class.getName().replace('.', '/') + ".class";
+        File target = new File(root, classFile);
+        target.getParentFile().mkdirs();
+        InputStream in = ReloadedFilter.class.getClassLoader().getResourceAsStream(classFile);
+        try {
+            Files.copy(in, target.toPath());
+        } finally {
+            in.close();
+        }
+        File config = new File(root, "META-INF/creclm/" + Filter.class.getName());
+        config.getParentFile().mkdirs();
+        Files.write(config.toPath(), ("trace = " + ReloadedFilter.class.getName() + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        return root.toURI().toURL();
+    }
+}
@@ -0,0 +1,139 @@
+package com.creclm.extension.loader;
+
+import com.creclm.extension.cache.BeanCacheFactory;
+import com.creclm.extension.cache.BeanContext;
+import com.creclm.extension.loader.fixture.Greeter;
+import com.creclm.extension.loader.fixture.ReloadedGreeter;
+import com.creclm.extension.loader.fixture.SlowGreeter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ServiceLoaderReloadTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BeanContext context = new BeanContext();
+    private BeanContext previous;
+
+    @Before
+    public void bind() {
+        previous = BeanCacheFactory.bindContext(context);
+    }
+
+    @After
+    public void unbind() {
+        BeanCacheFactory.bindContext(previous);
+        context.close();
+    }
+
+    @Test
+    public void reloadSwapsProviderWithChildFirstClass() throws Exception {
+        ServiceLoaderFactory<Greeter> factory = ServiceLoaderFactory.providersLoader(Greeter.class);
+        assertEquals("hello x", factory.getProvider("hello").greet("x"));
+
+        Map<String, Greeter> reloaded = factory.reload(reloadDirectory("re"));
+        Greeter first = factory.getProvider("re");
+        assertSame(reloaded.get("re"), first);
+        assertEquals("reloaded x", first.greet("x"));
+        // 父类加载器中也有这个类，热加载的目录优先
+        assertNotSame(ReloadedGreeter.class, first.getClass());
+        assertSame(Greeter.class, first.getClass().getInterfaces()[0]);
+
+        factory.reload(reloadDirectory("re"));
+        Greeter second = factory.getProvider("re");
+        assertNotSame(first.getClass(), second.getClass());
+        assertSame(second, context.getLoadedInstance(Greeter.class.getName() + "#re"));
+        assertEquals("hello x", factory.getProvider("hello").greet("x"));
+    }
+
+    @Test
+    public void replacedProviderAndLoaderAreReleased() throws Exception {
+        ServiceLoaderFactory<Greeter> factory = ServiceLoaderFactory.providersLoader(Greeter.class);
+        factory.reload(reloadDirectory("re"));
+        WeakReference<Greeter> oldInstance = new WeakReference<Greeter>(factory.getProvider("re"));
+        WeakReference<ClassLoader> oldLoader =
+                new WeakReference<ClassLoader>(factory.getProvider("re").getClass().getClassLoader());
+
+        factory.reload(reloadDirectory("re"));
+        for (int i = 0; i < 20 && (oldInstance.get() != null || oldLoader.get() != null); i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNull(oldInstance.get());
+        assertNull(oldLoader.get());
+    }
+
+    @Test(timeout = 20000)
+    public void reloadSupersedesInFlightCreation() throws Exception {
+        SlowGreeter.started = new CountDownLatch(1);
+        SlowGreeter.release = new CountDownLatch(1);
+        try {
+            ServiceLoaderFactory<Greeter> factory = ServiceLoaderFactory.providersLoader(Greeter.class);
+            CompletableFuture<Greeter> creation = factory.getProviderAsync("slow");
+            assertTrue(SlowGreeter.started.await(10, TimeUnit.SECONDS));
+
+            Greeter reloaded = factory.reload(reloadDirectory("slow")).get("slow");
+            SlowGreeter.release.countDown();
+            // 进行中的创建完成后不会覆盖热加载的服务提供者
+            assertSame(reloaded, creation.get(10, TimeUnit.SECONDS));
+            assertSame(reloaded, factory.getProvider("slow"));
+            assertEquals("reloaded x", factory.getProvider("slow").greet("x"));
+        } finally {
+            SlowGreeter.release.countDown();
+        }
+    }
+
+    @Test
+    public void failedReloadKeepsProviders() throws Exception {
+        ServiceLoaderFactory<Greeter> factory = ServiceLoaderFactory.providersLoader(Greeter.class);
+        factory.reload(reloadDirectory("re"));
+        Greeter current = factory.getProvider("re");
+        try {
+            factory.reload(folder.newFolder("empty").toURI().toURL());
+            fail("没有服务提供者的热加载");
+        } catch (IllegalStateException expected) {
+        }
+        assertSame(current, factory.getProvider("re"));
+    }
+
+    // 只包含 ReloadedGreeter 的类文件和配置文件的目录
+    private URL reloadDirectory(String name) throws Exception {
+        File root = folder.newFolder();
+        String classFile = ReloadedGreeter.class.getName().replace('.', '/') + ".class";
+        File target = new File(root, classFile);
+        target.getParentFile().mkdirs();
+        InputStream in = ReloadedGreeter.class.getClassLoader().getResourceAsStream(classFile);
+        try {
+            Files.copy(in, target.toPath());
+        } finally {
+            in.close();
+        }
+        File config = new File(root, "META-INF/creclm/" + Greeter.class.getName());
+        config.getParentFile().mkdirs();
+        Files.write(config.toPath(), (name + " = " + ReloadedGreeter.class.getName() + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        return root.toURI().toURL();
+    }
+}
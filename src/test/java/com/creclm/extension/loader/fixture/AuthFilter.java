@@ -0,0 +1,7 @@
+package com.creclm.extension.loader.fixture;
+
+import com.creclm.annotation.Activate;
+
+@Activate(group = {"consumer", "provider"}, order = 1)
+public class AuthFilter implements Filter {
+}
@@ -0,0 +1,7 @@
+package com.creclm.extension.loader.fixture;
+
+import com.creclm.annotation.Activate;
+
+@Activate(group = "provider", value = "cache")
+public class CacheFilter implements Filter {
+}
@@ -0,0 +1,7 @@
+package com.creclm.extension.loader.fixture;
+
+import com.creclm.annotation.SPI;
+
+@SPI
+public interface Filter {
+}
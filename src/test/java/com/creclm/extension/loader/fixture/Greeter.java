@@ -0,0 +1,8 @@
+package com.creclm.extension.loader.fixture;
+
+import com.creclm.annotation.SPI;
+
+@SPI
+public interface Greeter {
+    String greet(String who);
+}
@@ -0,0 +1,7 @@
+package com.creclm.extension.loader.fixture;
+
+public class HelloGreeter implements Greeter {
+    public String greet(String who) {
+        return "hello " + who;
+    }
+}
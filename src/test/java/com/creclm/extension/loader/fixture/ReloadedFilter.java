@@ -0,0 +1,10 @@
+package com.creclm.extension.loader.fixture;
+
+import com.creclm.annotation.Activate;
+
+/**
+ *      热加载时加入的过滤器，声明了新的key
+ */
+@Activate(group = "consumer", value = "trace", order = 5)
+public class ReloadedFilter implements Filter {
+}
@@ -0,0 +1,10 @@
+package com.creclm.extension.loader.fixture;
+
+/**
+ *      热加载时从临时目录中复制的类文件加载（child-first），每次热加载都是新的Class对象
+ */
+public class ReloadedGreeter implements Greeter {
+    public String greet(String who) {
+        return "reloaded " + who;
+    }
+}
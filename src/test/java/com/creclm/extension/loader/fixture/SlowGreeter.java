@@ -0,0 +1,25 @@
+package com.creclm.extension.loader.fixture;
+
+import com.creclm.annotation.Init;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *      初始化等待 release，用来构造进行中的创建
+ */
+public class SlowGreeter implements Greeter {
+
+    public static volatile CountDownLatch started = new CountDownLatch(1);
+    public static volatile CountDownLatch release = new CountDownLatch(0);
+
+    @Init
+    public void init() throws InterruptedException {
+        started.countDown();
+        release.await(10, TimeUnit.SECONDS);
+    }
+
+    public String greet(String who) {
+        return "slow " + who;
+    }
+}
@@ -0,0 +1,7 @@
+package com.creclm.extension.loader.fixture;
+
+import com.creclm.annotation.Activate;
+
+@Activate(group = "consumer", value = {"token", "auth"}, order = -1)
+public class TokenFilter implements Filter {
+}
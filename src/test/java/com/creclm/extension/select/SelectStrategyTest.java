@@ -0,0 +1,113 @@
+package com.creclm.extension.select;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SelectStrategyTest {
+
+    @Test
+    public void roundRobinInterleavesWeights() {
+        ProviderGroup<String> group = group(5, 1, 1);
+        RoundRobinStrategy strategy = new RoundRobinStrategy();
+        int[] round = new int[7];
+        for (int i = 0; i < round.length; i++) {
+            round[i] = strategy.select(group, null);
+        }
+        assertArrayEquals(new int[]{0, 0, 1, 0, 2, 0, 0}, round);
+    }
+
+    @Test
+    public void roundRobinFollowsWeightsExactlyPerRound() {
+        ProviderGroup<String> group = group(300, 200, 100);
+        RoundRobinStrategy strategy = new RoundRobinStrategy();
+        int[] counts = new int[3];
+        int longestRun = 0;
+        int run = 0;
+        int previous = -1;
+        // 权重约分后一轮是 6 次
+        for (int i = 0; i < 600; i++) {
+            int index = strategy.select(group, null);
+            counts[index]++;
+            run = index == previous ? run + 1 : 1;
+            longestRun = Math.max(longestRun, run);
+            previous = index;
+        }
+        assertArrayEquals(new int[]{300, 200, 100}, counts);
+        assertTrue("连续选中同一个服务提供者 " + longestRun + " 次", longestRun <= 2);
+    }
+
+    @Test
+    public void roundRobinSameWeight() {
+        ProviderGroup<String> group = group(100, 100, 100);
+        RoundRobinStrategy strategy = new RoundRobinStrategy();
+        for (int i = 0; i < 9; i++) {
+            assertEquals(i % 3, strategy.select(group, null));
+        }
+    }
+
+    @Test
+    public void roundRobinLargeWeightsStayProportional() {
+        ProviderGroup<String> group = group(1000003, 1000033, 7);
+        RoundRobinStrategy strategy = new RoundRobinStrategy();
+        int[] counts = new int[3];
+        for (int i = 0; i < 100000; i++) {
+            counts[strategy.select(group, null)]++;
+        }
+        assertEquals(1.0, (double) counts[0] / counts[1], 0.01);
+        assertTrue(counts[2] > 0);
+    }
+
+    @Test
+    public void leastActiveFollowsWeightsWhenIdle() {
+        ProviderGroup<String> group = group(600, 300, 100);
+        LeastActiveStrategy strategy = new LeastActiveStrategy();
+        int[] counts = new int[3];
+        int samples = 100000;
+        for (int i = 0; i < samples; i++) {
+            int index = strategy.select(group, null);
+            counts[index]++;
+            group.release(index);
+        }
+        assertEquals(0.6, (double) counts[0] / samples, 0.02);
+        assertEquals(0.3, (double) counts[1] / samples, 0.02);
+        assertEquals(0.1, (double) counts[2] / samples, 0.02);
+    }
+
+    @Test
+    public void leastActivePrefersFewerActiveRequests() {
+        ProviderGroup<String> group = group(1000, 1, 1);
+        LeastActiveStrategy strategy = new LeastActiveStrategy();
+        group.acquire(0);
+        for (int i = 0; i < 100; i++) {
+            int index = strategy.select(group, null);
+            assertTrue(index != 0);
+            group.release(index);
+        }
+        group.release(0);
+        assertEquals(0, group.getActive(0));
+        // 不会小于0
+        group.release(0);
+        assertEquals(0, group.getActive(0));
+    }
+
+    @Test
+    public void indexOfComparesByReference() {
+        ProviderGroup<String> group = group(1, 1, 1);
+        assertEquals(2, group.indexOf(group.getProvider(2)));
+        assertEquals(-1, group.indexOf(new String("p0")));
+        assertEquals(-1, group.indexOf(null));
+    }
+
+    private static ProviderGroup<String> group(int... weights) {
+        String[] names = new String[weights.length];
+        Object[] providers = new Object[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            names[i] = "p" + i;
+            providers[i] = new String("p" + i);
+        }
+        return new ProviderGroup<String>(names, providers, weights);
+    }
+}
@@ -0,0 +1,213 @@
+package com.creclm.util;
+
+import com.creclm.annotation.Provider;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClassFileAnnotationReaderTest {
+
+    private static final byte[][] PROVIDER = {ClassFileAnnotationReader.descriptorOf(Provider.class)};
+    private static final byte[][] INVISIBLE = {ClassFileAnnotationReader.descriptorOf(Invisible.class)};
+
+    @Retention(RetentionPolicy.CLASS)
+    @interface Invisible {
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Complex {
+        int number();
+
+        String[] names();
+
+        ElementType type();
+
+        Retention nested();
+
+        Class<?> clazz();
+    }
+
+    @Provider("visible")
+    static class VisibleProvider {
+    }
+
+    @Invisible
+    static class InvisibleOnly {
+    }
+
+    @Complex(number = 1, names = {"a", "b"}, type = ElementType.TYPE,
+            nested = @Retention(RetentionPolicy.RUNTIME), clazz = String.class)
+    @Provider("second")
+    static class ProviderAfterComplex {
+        // 常量池中存在 Long / Double
+        static final long LONG = 1234567890123L;
+        static final double DOUBLE = 1.5;
+
+        long sum(long a, double b) {
+            return a + (long) b + LONG + (long) DOUBLE;
+        }
+    }
+
+    static class Plain {
+    }
+
+    @Test
+    public void compiledVisibleAnnotation() throws IOException {
+        assertTrue(ClassFileAnnotationReader.isAnnotated(bytesOf(VisibleProvider.class), PROVIDER));
+        assertFalse(ClassFileAnnotationReader.isAnnotated(bytesOf(Plain.class), PROVIDER));
+    }
+
+    @Test
+    public void compiledAnnotationAfterComplexElementValues() throws IOException {
+        assertTrue(ClassFileAnnotationReader.isAnnotated(bytesOf(ProviderAfterComplex.class), PROVIDER));
+    }
+
+    @Test
+    public void invisibleAnnotationIsNotReported() throws IOException {
+        // CLASS 保留的注解在 RuntimeInvisibleAnnotations 中，运行时不可见，不算存在
+        assertFalse(ClassFileAnnotationReader.isAnnotated(bytesOf(InvisibleOnly.class), INVISIBLE));
+        assertFalse(ClassFileAnnotationReader.isAnnotated(
+                new ClassBuilder().annotation("RuntimeInvisibleAnnotations", "Lcom/creclm/annotation/Provider;").build(),
+                PROVIDER));
+        assertTrue(ClassFileAnnotationReader.isAnnotated(
+                new ClassBuilder().annotation("RuntimeVisibleAnnotations", "Lcom/creclm/annotation/Provider;").build(),
+                PROVIDER));
+    }
+
+    @Test
+    public void everyConstantPoolTag() {
+        ClassBuilder builder = new ClassBuilder();
+        builder.utf8("text");
+        builder.constant(3, 4);   // Integer
+        builder.constant(4, 4);   // Float
+        builder.wide(5);          // Long
+        builder.wide(6);          // Double
+        builder.constant(8, 2);   // String
+        builder.constant(9, 4);   // Fieldref
+        builder.constant(10, 4);  // Methodref
+        builder.constant(11, 4);  // InterfaceMethodref
+        builder.constant(12, 4);  // NameAndType
+        builder.constant(15, 3);  // MethodHandle
+        builder.constant(16, 2);  // MethodType
+        builder.constant(17, 4);  // Dynamic
+        builder.constant(18, 4);  // InvokeDynamic
+        builder.constant(19, 2);  // Module
+        builder.constant(20, 2);  // Package
+        byte[] bytes = builder.annotation("RuntimeVisibleAnnotations", "Lcom/creclm/annotation/Provider;").build();
+        assertTrue(ClassFileAnnotationReader.isAnnotated(bytes, PROVIDER));
+    }
+
+    @Test
+    public void longAndDoubleTakeTwoSlots() {
+        // 描述符紧跟在 Long / Double 之后：下标必须跳过一个位置
+        ClassBuilder builder = new ClassBuilder();
+        builder.wide(5);
+        builder.wide(6);
+        byte[] bytes = builder.annotation("RuntimeVisibleAnnotations", "Lcom/creclm/annotation/Provider;").build();
+        assertTrue(ClassFileAnnotationReader.isAnnotated(bytes, PROVIDER));
+    }
+
+    @Test
+    public void malformedClassFiles() throws IOException {
+        byte[] bytes = bytesOf(VisibleProvider.class);
+        assertFalse(ClassFileAnnotationReader.isAnnotated(Arrays.copyOf(bytes, bytes.length / 2), PROVIDER));
+        assertFalse(ClassFileAnnotationReader.isAnnotated(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, PROVIDER));
+        assertFalse(ClassFileAnnotationReader.isAnnotated(new byte[0], PROVIDER));
+        ClassBuilder unknownTag = new ClassBuilder();
+        unknownTag.constant(2, 0);
+        assertFalse(ClassFileAnnotationReader.isAnnotated(
+                unknownTag.annotation("RuntimeVisibleAnnotations", "Lcom/creclm/annotation/Provider;").build(), PROVIDER));
+    }
+
+    private static byte[] bytesOf(Class<?> clazz) throws IOException {
+        String resource = clazz.getName().replace('.', '/') + ".class";
+        InputStream in = clazz.getClassLoader().getResourceAsStream(resource);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     *      手工拼接的class文件：常量池中的其他常量内容为0，只有类上的一个注解属性
+     */
+    private static final class ClassBuilder {
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(pool);
+        private int count = 1;
+        private int attributeName;
+        private int annotationType;
+
+        int utf8(String value) {
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return count++;
+        }
+
+        void constant(int tag, int length) {
+            pool.write(tag);
+            pool.write(new byte[length], 0, length);
+            count++;
+        }
+
+        void wide(int tag) {
+            constant(tag, 8);
+            count++;
+        }
+
+        ClassBuilder annotation(String attribute, String descriptor) {
+            attributeName = utf8(attribute);
+            annotationType = utf8(descriptor);
+            return this;
+        }
+
+        byte[] build() {
+            try {
+                int thisClass = utf8("p/Generated");
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream file = new DataOutputStream(bytes);
+                file.writeInt(0xCAFEBABE);
+                file.writeShort(0);
+                file.writeShort(52);
+                file.writeShort(count);
+                file.write(pool.toByteArray());
+                file.writeShort(0x0021);
+                file.writeShort(thisClass);
+                file.writeShort(0);
+                file.writeShort(0); // interfaces
+                file.writeShort(0); // fields
+                file.writeShort(0); // methods
+                file.writeShort(1);
+                file.writeShort(attributeName);
+                file.writeInt(6);
+                file.writeShort(1);
+                file.writeShort(annotationType);
+                file.writeShort(0);
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
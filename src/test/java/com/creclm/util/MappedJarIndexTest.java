@@ -0,0 +1,174 @@
+package com.creclm.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedJarIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void storedAndDeflatedEntries() throws IOException {
+        byte[] stored = "stored-content".getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = new byte[4096];
+        Arrays.fill(deflated, (byte) 'x');
+        File jar = folder.newFile("classes.jar");
+        write(jar, null, new byte[0], entry("com/aa/A.class", stored, true),
+                entry("com/aa/B.class", deflated, false),
+                entry("com/aa/B$Inner.class", deflated, false),
+                entry("com/aa/readme.txt", stored, false),
+                entry("com/bb/C.class", stored, false));
+
+        Map<String, byte[]> classes = read(jar, "com/aa/");
+        assertEquals(Arrays.asList("com/aa/A.class", "com/aa/B.class"), new ArrayList<String>(classes.keySet()));
+        assertArrayEquals(stored, classes.get("com/aa/A.class"));
+        assertArrayEquals(deflated, classes.get("com/aa/B.class"));
+        assertEquals(3, read(jar, "").size());
+    }
+
+    @Test
+    public void emptyJar() throws IOException {
+        File jar = folder.newFile("empty.jar");
+        write(jar, null, new byte[0]);
+        assertTrue(read(jar, "").isEmpty());
+    }
+
+    @Test
+    public void jarWithComment() throws IOException {
+        byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+        File jar = folder.newFile("comment.jar");
+        char[] comment = new char[1000];
+        Arrays.fill(comment, 'c');
+        write(jar, new String(comment), new byte[0], entry("p/A.class", content, false));
+        assertArrayEquals(content, read(jar, "p/").get("p/A.class"));
+    }
+
+    @Test
+    public void jarWithPrefixData() throws IOException {
+        // 可执行jar前面的启动脚本：本地文件头偏移需要加上位移
+        byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+        File jar = folder.newFile("prefixed.jar");
+        write(jar, null, "#!/bin/sh\nexec java -jar \"$0\"\n".getBytes(StandardCharsets.US_ASCII),
+                entry("p/A.class", content, false));
+        assertArrayEquals(content, read(jar, "p/").get("p/A.class"));
+    }
+
+    @Test
+    public void zip64FallsBack() throws IOException {
+        File jar = folder.newFile("zip64.jar");
+        ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(0x06054b50).putShort((short) 0).putShort((short) 0)
+                .putShort((short) 0xFFFF).putShort((short) 0xFFFF).putInt(-1).putInt(-1).putShort((short) 0);
+        OutputStream out = new FileOutputStream(jar);
+        try {
+            out.write(end.array());
+        } finally {
+            out.close();
+        }
+        assertOpenFails(jar);
+    }
+
+    @Test
+    public void notAJar() throws IOException {
+        File file = folder.newFile("plain.txt");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[100]);
+        } finally {
+            out.close();
+        }
+        assertOpenFails(file);
+        assertOpenFails(folder.newFile("tiny.jar"));
+    }
+
+    @Test
+    public void readAfterClose() throws IOException {
+        File jar = folder.newFile("closed.jar");
+        write(jar, null, new byte[0], entry("p/A.class", new byte[10], false));
+        MappedJarIndex index = MappedJarIndex.open(jar);
+        final int[] position = new int[1];
+        index.forEachClass("p/", (name, entry) -> position[0] = entry);
+        index.close();
+        try {
+            index.read(position[0]);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private static void assertOpenFails(File jar) {
+        try {
+            MappedJarIndex.open(jar).close();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private static Map<String, byte[]> read(File jar, String prefix) throws IOException {
+        final Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        final MappedJarIndex index = MappedJarIndex.open(jar);
+        try {
+            index.forEachClass(prefix, (name, entry) -> result.put(name, index.read(entry)));
+        } finally {
+            index.close();
+        }
+        return result;
+    }
+
+    private static Object[] entry(String name, byte[] content, boolean stored) {
+        return new Object[]{name, content, stored};
+    }
+
+    private static void write(File jar, String comment, byte[] prefix, Object[]... entries) throws IOException {
+        OutputStream file = new FileOutputStream(jar);
+        try {
+            file.write(prefix);
+            ZipOutputStream out = new ZipOutputStream(file);
+            if (comment != null) {
+                out.setComment(comment);
+            }
+            List<Object[]> list = Arrays.asList(entries);
+            for (Object[] item : list) {
+                byte[] content = (byte[]) item[1];
+                ZipEntry entry = new ZipEntry((String) item[0]);
+                if ((Boolean) item[2]) {
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCompressedSize(content.length);
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(content);
+                out.closeEntry();
+            }
+            out.finish();
+        } finally {
+            file.close();
+        }
+    }
+}